@@ -0,0 +1,55 @@
+package benchmarks;
+
+import agents.BatteryRules;
+import messages.BatteryState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** capacity bookkeeping of {@link agents.Battery} (updateCapacityInfo and getExcess) over synthetic batteries
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class BatteryBenchmark {
+
+    /** number of batteries */
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int batteries;
+
+    private double[] currentCapacity, totalCapacity;
+
+    @Setup
+    public void setup(){
+        Random random = new Random(42);
+        currentCapacity = new double[batteries];
+        totalCapacity = new double[batteries];
+        for(int i = 0; i < batteries; ++i){
+            currentCapacity[i] = random.nextDouble();
+            totalCapacity[i] = 20 + random.nextInt(100);
+        }
+    }
+
+    @Benchmark
+    public double updateCapacityInfo(){
+        double prices = 0;
+        for(double c : currentCapacity){
+            BatteryState state = BatteryRules.state(c);
+            prices += BatteryRules.priceLB(state) + BatteryRules.priceUB(state);
+        }
+        return prices;
+    }
+
+    @Benchmark
+    public double getExcess(){
+        double excess = 0;
+        for(int i = 0; i < batteries; ++i){
+            excess += BatteryRules.getExcess(BatteryRules.state(currentCapacity[i]), currentCapacity[i], totalCapacity[i]);
+        }
+        return excess;
+    }
+}
@@ -0,0 +1,142 @@
+package benchmarks;
+
+import agents.BuildingRules;
+import agents.DemandIndex;
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import messages.MessageCodec;
+import messages.OfferBook;
+import messages.StatusType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/** hot paths of building in single period - the same {@link BuildingRules} entry points {@link agents.Building} calls,
+ * with messages built but not sent (agent's send needs running platform), run over synthetic offer books
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class BuildingBenchmark {
+
+    /** number of consumer offers, building offers and reservations */
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int offers;
+
+    private ACLMessage[] binaryOffers, stringOffers;
+    private DemandIndex consumerDemands, savedDemands;
+    private OfferBook consumerOffers, buildingOffers, savedOffers;
+    private final Set<AID> forecastOffers = new HashSet<>();
+    private double[] demands;
+    private double actualProduction, totalDemand, reservedTotal;
+
+    @Setup
+    public void setup(){
+        Random random = new Random(42);
+        binaryOffers = new ACLMessage[offers];
+        stringOffers = new ACLMessage[offers];
+        consumerDemands = new DemandIndex();
+        consumerOffers = new OfferBook();
+        buildingOffers = new OfferBook();
+        savedOffers = new OfferBook();
+        savedDemands = new DemandIndex();
+        demands = new double[offers];
+        reservedTotal = 0;
+
+        for(int i = 0; i < offers; ++i){
+            AID consumer = new AID("konsument" + i, AID.ISGUID);
+            String provider = "dostawca" + random.nextInt(10);
+            double demand = random.nextDouble() * 20;
+
+            consumerOffers.add(consumer, provider, demand, 0.0);
+            demands[i] = demand;
+            totalDemand += demand;
+            consumerDemands.add(demand);
+
+            reservedTotal += random.nextDouble();
+            buildingOffers.add(new AID("budynek" + i, AID.ISGUID), null, random.nextDouble() * 20,
+                    random.nextDouble() * (BuildingRules.MAX_PRICE - BuildingRules.MIN_PRICE) + BuildingRules.MIN_PRICE);
+
+            binaryOffers[i] = new ACLMessage(ACLMessage.INFORM);
+            binaryOffers[i].setOntology(StatusType.OFFER.toString());
+            binaryOffers[i].setSender(consumer);
+            MessageCodec.setOffer(binaryOffers[i], provider, demand);
+
+            stringOffers[i] = new ACLMessage(ACLMessage.INFORM);
+            stringOffers[i].setOntology(StatusType.OFFER.toString());
+            stringOffers[i].setSender(consumer);
+            stringOffers[i].setContent(provider + ";" + demand);
+        }
+
+        actualProduction = totalDemand * 0.8; // building is short, so it selects offers of neighbours
+    }
+
+    /** excess from running aggregates of building (demands sorted once, before first measured call) */
+    @Benchmark
+    public double getExcess(){
+        return BuildingRules.getExcess(actualProduction, offers, consumerDemands, reservedTotal);
+    }
+
+    /** rows are sorted by price in each invocation, like in agent */
+    @Benchmark
+    public double selectOffers(Blackhole bh){
+        return BuildingRules.selectOffers(buildingOffers, actualProduction, totalDemand, (o, kept, returned) -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.addReceiver(buildingOffers.aid(o));
+            msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
+            MessageCodec.setMedium(msg, returned, true, 0);
+            bh.consume(msg);
+        });
+    }
+
+    /** supply lowers demands of offers, so they are restored after each invocation (part of measured time) */
+    @Benchmark
+    public double sendMedium(Blackhole bh){
+        double excessiveProduction = BuildingRules.supplyConsumers(consumerOffers, actualProduction, offers, (co, supply) -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology(StatusType.SUPPLY.toString());
+            MessageCodec.addReceiver(msg, consumerOffers.aid(co));
+            MessageCodec.setQuantity(msg, supply);
+            bh.consume(msg);
+        });
+        for(int co = 0; co < demands.length; ++co){
+            consumerOffers.setDemand(co, demands[co]);
+        }
+        return excessiveProduction;
+    }
+
+    @Benchmark
+    public Map<String, Double> informProviders(){
+        return BuildingRules.demandPerProvider(consumerOffers);
+    }
+
+    @Benchmark
+    public double saveOfferBinary(){
+        return saveOffers(binaryOffers);
+    }
+
+    @Benchmark
+    public double saveOfferString(){
+        return saveOffers(stringOffers);
+    }
+
+    /** offers of one period saved to book of building, book is cleared first (arrays and handles are reused) */
+    private double saveOffers(ACLMessage[] messages){
+        savedOffers.clear();
+        savedDemands.clear();
+        double saved = 0;
+        for(ACLMessage msg : messages){
+            saved += BuildingRules.saveOffer(savedOffers, savedDemands, forecastOffers, MessageCodec.sender(msg),
+                    MessageCodec.provider(msg), MessageCodec.quantity(msg));
+        }
+        return saved;
+    }
+}
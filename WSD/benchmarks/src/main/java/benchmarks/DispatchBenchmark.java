@@ -0,0 +1,50 @@
+package benchmarks;
+
+import agents.BatteryDispatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** setpoints of whole fleet counted by {@link agents.Dispatcher} once per period, over synthetic city (10 buildings per
+ * estate, three of four buildings have battery)
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class DispatchBenchmark {
+
+    /** number of buildings */
+    @Param({"100", "1000", "10000", "100000"})
+    public int buildings;
+
+    private final BatteryDispatch dispatch = new BatteryDispatch();
+    private double[] net, charge, capacity;
+
+    @Setup
+    public void setup(){
+        Random random = new Random(42);
+        net = new double[buildings];
+        charge = new double[buildings];
+        capacity = new double[buildings];
+        for(int i = 0; i < buildings; ++i){
+            net[i] = random.nextGaussian() * 10 - 2;
+            charge[i] = random.nextDouble();
+            capacity[i] = random.nextInt(4) == 0 ? 0 : 20 + random.nextInt(80);
+        }
+    }
+
+    /** reports are added again in each invocation, as dispatcher does in each period */
+    @Benchmark
+    public double solve(){
+        dispatch.clear();
+        for(int i = 0; i < buildings; ++i){
+            dispatch.add(i / 10, net[i], charge[i], capacity[i]);
+        }
+        dispatch.solve();
+        return dispatch.getUnmet() + dispatch.setpoint(0);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import agents.Clock;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.ContainerController;
+import jade.wrapper.StaleProxyException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** end-to-end period - whole city (scenario from resources or -Dwsd.scenario) runs on in-process JADE platform,
+ * each invocation waits for clock to start next period, so it measures time from PREDICT to PREDICT of next period
+ * (phases advance as soon as all buildings report them finished, deadlines only bound the slowest period)
+ * */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configuration=log4j-benchmark.properties")
+public class PeriodBenchmark {
+
+    /** port of benchmark platform, different from default one so it can run next to jade.Boot */
+    private static final String PORT = "1199";
+
+    private ContainerController container;
+
+    @Setup
+    public void setup() throws StaleProxyException {
+        Runtime.instance().setCloseVM(false);
+        Profile profile = new ProfileImpl(null, Integer.parseInt(PORT), null);
+        profile.setParameter(Profile.LOCAL_PORT, PORT);
+        container = Runtime.instance().createMainContainer(profile);
+
+        container.createNewAgent("city", "utils.AgentCreator", null).start();
+        container.createNewAgent("pomiar", PeriodProbe.class.getName(), null).start();
+    }
+
+    /** drop periods started during setup, warmup and pauses between iterations, then wait for a fresh PREDICT, so that
+     * each invocation waits for a whole period (start of platform and creation of agents isn't measured either)*/
+    @Setup(Level.Iteration)
+    public void startIteration() throws InterruptedException {
+        PeriodProbe.periods.clear();
+        nextPeriod();
+    }
+
+    @Benchmark
+    public long period() throws InterruptedException {
+        return nextPeriod();
+    }
+
+    @TearDown
+    public void tearDown() throws StaleProxyException {
+        container.kill();
+        Runtime.instance().shutDown();
+    }
+
+    private static long nextPeriod() throws InterruptedException {
+        Long period = PeriodProbe.periods.poll(20 * (long) (Clock.PERIOD / Clock.TIME_SCALE) + 60000, TimeUnit.MILLISECONDS);
+        if(period == null){
+            throw new IllegalStateException("clock didn't start next period");
+        }
+        return period;
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import agents.Clock;
+import jade.core.Agent;
+import jade.core.behaviours.WakerBehaviour;
+import messages.Phase;
+import messages.ServiceType;
+import messages.StatusType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.OntologyDispatcher;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/** listens to clock (as consumer, so clock doesn't wait for it) and passes number of each started period to benchmark
+ * */
+public class PeriodProbe extends Agent {
+
+    /** periods started since probe subscribed */
+    static final BlockingQueue<Long> periods = new LinkedBlockingQueue<>();
+
+    @Override
+    protected void setup() {
+        Logger logger = LoggerFactory.getLogger(getLocalName());
+
+        OntologyDispatcher dispatcher = new OntologyDispatcher(this, logger);
+        dispatcher.on(StatusType.PHASE, msg -> {
+            String[] phase = msg.getContent().split(";");
+            if(Phase.valueOf(phase[0]) == Phase.PREDICT){
+                periods.offer(Long.parseLong(phase[1]));
+            }
+        });
+        addBehaviour(dispatcher);
+
+        /* clock is created by agent creator, wait for it before subscribing */
+        addBehaviour(new WakerBehaviour(this, 1000) {
+            @Override
+            protected void onWake() {
+                Clock.subscribe(myAgent, ServiceType.CONSUMER);
+            }
+        });
+    }
+}
@@ -0,0 +1,65 @@
+package actors;
+
+import jade.lang.acl.ACLMessage;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+
+/** lightweight actor - tasks (mostly received messages) wait in it's mailbox and run one at a time on thread of
+ * {@link ActorPool}, so that state of actor needs no locks, actor gives thread back after {@link #BATCH} tasks
+ * */
+public abstract class Actor {
+
+    private static final int BATCH = 64;
+
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ActorPool pool;
+    protected final Logger logger;
+
+    /** @param pool threads running actor
+     * @param logger logger of actor (usually shared by actors of one bridge)*/
+    protected Actor(ActorPool pool, Logger logger){
+        this.pool = pool;
+        this.logger = logger;
+    }
+
+    /** @param msg message for actor (it may be passed to many actors, so it is only read)*/
+    public void tell(ACLMessage msg){
+        post(() -> receive(msg));
+    }
+
+    /** @param task task run by actor after tasks that are already in mailbox*/
+    public void post(Runnable task){
+        mailbox.add(task);
+        if(scheduled.compareAndSet(false, true)){
+            pool.execute(this::run);
+        }
+    }
+
+    /** handle message
+     * @param msg received message*/
+    protected abstract void receive(ACLMessage msg);
+
+    private void run(){
+        for(int i = 0; i < BATCH; ++i){
+            Runnable task = mailbox.poll();
+            if(task == null){
+                break;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                logger.warn("actor task failed", ex);
+            }
+        }
+
+        scheduled.set(false);
+        if(!mailbox.isEmpty() && scheduled.compareAndSet(false, true)){ // tasks added after last poll
+            pool.execute(this::run);
+        }
+    }
+}
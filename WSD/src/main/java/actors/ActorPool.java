@@ -0,0 +1,36 @@
+package actors;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** fixed pool of daemon threads shared by all lightweight actors of JVM (wsd.actorThreads, default number of
+ * processors), tens of thousands of actors need only few threads instead of one thread per agent
+ * */
+public final class ActorPool implements Executor {
+
+    private static final ActorPool shared = new ActorPool(Integer.getInteger("wsd.actorThreads", Runtime.getRuntime().availableProcessors()));
+
+    private final ExecutorService executor;
+
+    /** @param threads number of threads*/
+    public ActorPool(int threads){
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+            Thread thread = new Thread(task, "actor-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** @return pool shared by all actors of this JVM*/
+    public static ActorPool shared(){
+        return shared;
+    }
+
+    @Override
+    public void execute(Runnable task){
+        executor.execute(task);
+    }
+}
@@ -0,0 +1,148 @@
+package actors;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.util.function.Consumer;
+
+import agents.ConsumerLogic;
+import journal.Event;
+import journal.EventLog;
+import messages.*;
+import metrics.ConsumerMetrics;
+import utils.OntologyDispatcher;
+
+import org.slf4j.Logger;
+
+/** consumer running as lightweight actor of {@link agents.ConsumerBridge} - decisions are made by
+ * {@link ConsumerLogic} as in {@link agents.Consumer} agent, messages go out through bridge with name of consumer,
+ * building and battery are addressed by their local names
+ * */
+public class LightConsumer extends Actor implements ConsumerLogic.Outbox {
+
+    private final String name, buildingName;
+    private final Consumer<ACLMessage> outbox;
+    private final ConsumerLogic logic;
+    private AID buildingId, batteryId;
+    private final EventLog log;
+
+    private static final ConsumerMetrics metrics = ConsumerMetrics.shared();
+
+    /** @param parts consumer name, building name, provider, demand (line of consumers.txt)
+     * @param pool threads running consumer
+     * @param outbox sends message through bridge
+     * @param logger logger of bridge*/
+    public LightConsumer(String[] parts, ActorPool pool, Consumer<ACLMessage> outbox, Logger logger){
+        super(pool, logger);
+        this.outbox = outbox;
+        name = parts[0];
+        buildingName = parts[1];
+        log = new EventLog(name, logger);
+        logic = new ConsumerLogic(name, parts[2], Double.parseDouble(parts[3]), log, this);
+    }
+
+    /** @return name of consumer*/
+    public String getName(){
+        return name;
+    }
+
+    /** find building and ask it for battery (building is known by it's local name)
+     * */
+    public void start(){
+        post(() -> {
+            buildingId = new AID(buildingName, AID.ISLOCALNAME);
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology(StatusType.GET_BATTERY.toString());
+            msg.addReceiver(buildingId);
+            send(msg);
+        });
+    }
+
+    /** @return message informing building that consumer stops (sent by bridge itself when it is taken down)*/
+    public ACLMessage cancel(){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology(StatusType.CANCEL_CONSUMER.toString());
+        msg.addReceiver(new AID(buildingName, AID.ISLOCALNAME));
+        MessageCodec.setActor(msg, name);
+        return metrics.sent(msg);
+    }
+
+    @Override
+    protected void receive(ACLMessage msg){
+        StatusType st = msg.getOntology() == null ? null : OntologyDispatcher.ontology(msg.getOntology());
+        if(st == null){
+            return;
+        }
+        metrics.received(st);
+
+        switch (st){
+            case PHASE:
+                String[] phase = msg.getContent().split(";");
+                logic.phase(Phase.valueOf(phase[0]), Long.parseLong(phase[1]), buildingId != null);
+                break;
+            case UPDATE_PROVIDER:
+                logic.setProviderId(msg.getContent());
+                ACLMessage update = new ACLMessage(ACLMessage.INFORM);
+                update.setOntology(StatusType.UPDATE_PROVIDER.toString());
+                update.addReceiver(buildingId);
+                update.setContent(logic.getProviderId());
+                send(update);
+                break;
+            case SUPPLY:
+                logic.supplied(MessageCodec.period(msg, 0), MessageCodec.quantity(msg));
+                break;
+            case GET_BATTERY:
+                if(msg.getContent() != null){
+                    batteryId = new AID(msg.getContent(), AID.ISLOCALNAME);
+                    log.event(Event.BATTERY_FOUND, batteryId);
+
+                    ACLMessage subscribe = new ACLMessage(ACLMessage.INFORM);
+                    subscribe.addReceiver(batteryId);
+                    subscribe.setOntology(StatusType.GET_PRICE.toString());
+                    send(subscribe);
+                }
+                break;
+            case GET_PRICE:
+                logic.curve(MessageCodec.curve(msg));
+                break;
+            case REQUEST_MEDIUM:
+                if(msg.getPerformative() == ACLMessage.REFUSE){ // request priced by old curve, battery sent current one
+                    logic.refused(MessageCodec.curve(msg));
+                } else {
+                    logic.mediumReceived(MessageCodec.quantity(msg));
+                }
+                break;
+            case CONSUMER_CHARGING:
+                logic.charging(Double.parseDouble(msg.getContent()));
+                break;
+            default:
+                logger.info("message " + st + " not understood by " + name);
+        }
+    }
+
+    @Override
+    public void offer(long period, String provider, double demand){
+        ACLMessage offer = new ACLMessage(ACLMessage.INFORM);
+        MessageCodec.setOffer(offer, provider, demand);
+        MessageCodec.setPeriod(offer, period);
+        offer.setOntology(StatusType.OFFER.toString());
+        offer.addReceiver(buildingId);
+        send(offer);
+    }
+
+    @Override
+    public void requestMedium(long period, double quantity, double price, long version){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(batteryId);
+        msg.setOntology(StatusType.REQUEST_MEDIUM.toString());
+        MessageCodec.setRequest(msg, quantity, price);
+        MessageCodec.setVersion(msg, version);
+        MessageCodec.setPeriod(msg, period);
+        send(msg);
+    }
+
+    private void send(ACLMessage msg){
+        MessageCodec.setActor(msg, name);
+        outbox.accept(metrics.sent(msg));
+    }
+}
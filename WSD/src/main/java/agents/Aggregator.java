@@ -0,0 +1,134 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import messages.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
+
+/** aggregator of period summaries - estate aggregator nets summaries of buildings whose first estate it is and sends
+ * residual to city aggregator, city aggregator nets estates and reports demand of each provider, so that building
+ * sends one summary per period whatever the size of estate,
+ * summary goes up when all members reported or (for missing members) at CLEANUP phase (estate) or CLEANUP of next
+ * period (city), summaries are kept by period, so that periods of pipelined clock aren't merged
+ * */
+public class Aggregator extends Agent {
+
+    /** local name of city aggregator */
+    public static final String CITY = "agregator";
+
+    private String estateId;
+    private int membersCount;
+    private final TreeMap<Long, Round> rounds = new TreeMap<>(); // periods being summed (two when clock is pipelined)
+    private final Set<Long> reported = new HashSet<>(); // periods reported before clock closed them
+    private long closedPeriod; // latest period closed by clock, summaries of it are late
+
+    /** summary of one period */
+    private static class Round {
+        final Summary summary;
+        int reported;
+
+        Round(long period){
+            summary = new Summary(period);
+        }
+    }
+
+    private Logger logger;
+
+    /** @param estateId estate id
+     * @return local name of estate aggregator*/
+    public static String estateName(String estateId){
+        return CITY + "-" + estateId;
+    }
+
+    @Override
+    protected void setup() {
+
+        logger = LoggerFactory.getLogger(getLocalName());
+        logger.info("started");
+
+        Object[] args = getArguments();
+        ServiceType st = (ServiceType) args[0];
+        String[] parts = (String[]) args[1];
+        estateId = parts[1].isEmpty() ? null : parts[1]; // parts[0] - aggregator name used to create agent, no estate for city
+        membersCount = Integer.parseInt(parts[2]); // buildings of estate or estates of city
+
+        OntologyDispatcher dispatcher = new OntologyDispatcher(this, logger);
+        dispatcher.on(StatusType.SUMMARY, msg -> saveSummary(MessageCodec.summary(msg)));
+        dispatcher.on(StatusType.PHASE, msg -> {
+            String[] phase = msg.getContent().split(";");
+            long period = Long.parseLong(phase[1]);
+
+            /* estates report at cleanup, city waits for late estates until cleanup of next period */
+            if(Phase.valueOf(phase[0]) == Phase.CLEANUP){
+                close(estateId != null ? period : period - 1);
+            }
+        });
+        addBehaviour(dispatcher);
+
+        Clock.subscribe(this, st);
+    }
+
+    /** net summary of member, report when all members sent theirs
+     * @param s summary of building or estate*/
+    private void saveSummary(Summary s){
+        if(s.getPeriod() <= closedPeriod || reported.contains(s.getPeriod())){
+            logger.info("late summary of period " + s.getPeriod());
+            return;
+        }
+
+        Round round = rounds.computeIfAbsent(s.getPeriod(), Round::new);
+        round.summary.add(s);
+        if(++round.reported >= membersCount){
+            report(round);
+        }
+    }
+
+    /** report periods up to given one, members that didn't report them are missing
+     * @param period latest closed period*/
+    private void close(long period){
+        while(!rounds.isEmpty() && rounds.firstKey() <= period){
+            report(rounds.firstEntry().getValue());
+        }
+        closedPeriod = Math.max(closedPeriod, period);
+        reported.removeIf(p -> p <= closedPeriod);
+    }
+
+    /** send residual of estate to city aggregator or report city summary
+     * @param round summed period*/
+    private void report(Round round){
+        Summary summary = round.summary;
+        if(estateId != null){
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology(StatusType.SUMMARY.toString());
+            msg.addReceiver(new AID(CITY, AID.ISLOCALNAME));
+            MessageCodec.setSummary(msg, summary);
+            LocalTransport.send(this, msg);
+        } else {
+            logger.info("period " + summary.getPeriod() + " - net " + summary.getNet() + ", battery headroom " + summary.getHeadroom());
+            for(Map.Entry<String, Double> d : summary.getProviderDemand().entrySet()){
+                logger.info("demand of provider " + d.getKey() + " - " + d.getValue());
+            }
+        }
+
+        rounds.remove(summary.getPeriod());
+        reported.add(summary.getPeriod());
+    }
+
+    /** actions before agent (sometimes unexpected) termination
+     * */
+    @Override
+    protected void takeDown() {
+        LocalTransport.deregister(this);
+        logger.warn("stopping");
+    }
+}
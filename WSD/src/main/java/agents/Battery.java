@@ -2,7 +2,6 @@ package agents;
 
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
 import jade.core.behaviours.WakerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
@@ -10,10 +9,22 @@ import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.ACLMessage;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
+import checkpoint.Checkpoint;
+import forecast.HoltWinters;
+import journal.Event;
+import journal.EventLog;
 import messages.*;
+import metrics.BatteryMetrics;
+import utils.DirectoryCache;
+import settlement.SettlementJournal;
+import settlement.Transfer;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,17 +35,38 @@ public class Battery extends Agent {
     private int totalCapacity;
     private final String regex = ";";
     private double currentCapacity, priceLB, priceUB;
+    private long firstPeriod = Long.MAX_VALUE; // first period started by battery, draws of earlier ones are partial
+    private final HoltWinters drawForecast = new HoltWinters();
     private BatteryState batteryState;
+    private PriceCurve curve; // current price curve, new version when state band changes
+    private final Set<AID> subscribers = new LinkedHashSet<>(); // consumers (or their bridges) receiving price curve
     private String buildingName;
-    private List<Offer> reservedMedium;
+    private final Map<Long, PeriodState> periods = new HashMap<>(); // periods in progress (two when clock is pipelined)
+    private long period;
+    private OntologyDispatcher dispatcher;
+    private static final BatteryMetrics metrics = BatteryMetrics.shared();
 
     private Logger logger;
+    private EventLog log;
+
+    /** reservations and setpoint of one period (next period reserves medium while previous one settles) */
+    private static class PeriodState {
+        final long period;
+        final OfferBook reservedMedium = new OfferBook();
+        double setpoint = Double.NaN; // medium to store (positive) or send (negative) set by dispatcher, NaN - follow state
+        double draw; // medium drawn by consumers for shortages of period
+
+        PeriodState(long period){
+            this.period = period;
+        }
+    }
 
     @Override
     protected void setup() {
 
         logger = LoggerFactory.getLogger(getLocalName());
         logger.debug("started");
+        log = new EventLog(getLocalName(), logger);
 
         Object[] args = getArguments();
 
@@ -47,6 +79,11 @@ public class Battery extends Agent {
         totalCapacity = Integer.parseInt(parts[2]); // for tests
         //currentCapacity = ThreadLocalRandom.current().nextDouble(0.4, 1.0); // percentage
         currentCapacity = 0.7; // for tests
+        double[] snapshot = Checkpoint.restore(getLocalName());
+        if(snapshot != null){ // charge at the end of last saved period
+            currentCapacity = snapshot[0];
+        }
+        updateCapacityInfo(); // first price curve
         buildingName = parts[1]; // parts[0] - batteryId used to create agent
 
         /* find building id */
@@ -57,136 +94,174 @@ public class Battery extends Agent {
             }
         });
 
-        addBehaviour(new CyclicBehaviour() {
-            @Override
-            public void action() {
-                ACLMessage msg = receive();
-                if(msg != null){
-                    if(msg.getOntology().equals(StatusType.BATTERY_CAPACITY.toString())){
-                        reservedMedium = null; // clear list
-                        predictCapacity();
-                        informBuilding();
-                        logger.info("informing " + msg.getSender().getLocalName() + " of state and capacity");
-                    }
-                    else if(msg.getOntology().equals(StatusType.CHARGE_BATTERY.toString())){
-
-                        currentCapacity += Double.parseDouble(msg.getContent())/totalCapacity;
-                        updateCapacityInfo();
-                        logger.info("charging up - " + Double.parseDouble(msg.getContent())/totalCapacity);
-                    }
-                    else if(msg.getOntology().equals(StatusType.GET_PRICE.toString())){
-
-                        sendPrice(msg.getSender());
-                    }
-                    else if(msg.getOntology().equals(StatusType.REQUEST_MEDIUM.toString())){
-
-                        String[] parts = msg.getContent().split(regex);
-                        Double mediumQuanitity = Double.parseDouble(parts[0]);
-
-                        // parts[1] - price for medium determined in GET_PRICE negotiations, price might have changed since then but consumer accepted old price
-                        ACLMessage message = new ACLMessage(ACLMessage.INFORM);
-                        message.addReceiver(msg.getSender());
-                        message.setOntology(StatusType.REQUEST_MEDIUM.toString());
-
-                        if(mediumQuanitity <= 0.05*totalCapacity){
-                            currentCapacity -= mediumQuanitity/totalCapacity;
-                            message.setContent(parts[0]);
-                        }else{
-                            currentCapacity -= 0.05;
-                            Double quantity = 0.05*totalCapacity;
-                            message.setContent(quantity.toString());
-                        }
-
-                        send(message);
-
-                        updateCapacityInfo();
-
-                    }
-                    else if(msg.getOntology().equals(StatusType.MEDIUM_NEEDED.toString())){
-                        if(msg.getSender().equals(buildingId)){
-                            if(msg.getContent() == null){
-                                logger.info("reserving medium for my building");
-                                reserveMedium(false);
-                            } else if(msg.getContent().equals(regex)){
-                                logger.info("reserving medium for other building");
-                                reserveMedium(true);
-                            } else {
-                                receiveMedium(msg);
-                            }
-                        } else{
-                            logger.warn(msg.getSender().getLocalName() + " won't get anything from me");
-                        }
-
-                    }
-                    else{
-                        logger.info("message from" + msg.getSender() + " not understood");
-                        msg.setPerformative(ACLMessage.NOT_UNDERSTOOD);
-                        msg.addReceiver(msg.getSender());
-                        msg.setContent(msg.getContent());
-                        // send(msg);
-                    }
-                } else block();
+        dispatcher = new OntologyDispatcher(this, logger).setMetrics(metrics);
+        dispatcher.on(StatusType.PHASE, msg -> {
+            long p = Long.parseLong(msg.getContent().split(regex)[1]);
+            metrics.period(p);
+            if(msg.getContent().startsWith(Phase.CLEANUP.toString())){ // end of period
+                PeriodState ps = periods.remove(p);
+                periods.keySet().removeIf(k -> k < p); // requests that came after their period was cleaned up
+                if(p >= firstPeriod){ // shortages of period are settled, next period may have started already
+                    metrics.forecastError.add(drawForecast.observe(ps != null ? ps.draw : 0));
+                }
+                Checkpoint.save(Checkpoint.BATTERY, p, getLocalName(), currentCapacity);
+            } else if(msg.getContent().startsWith(Phase.PREDICT.toString())){ // new period
+                period = Math.max(period, p);
+                firstPeriod = Math.min(firstPeriod, p);
+                predictCapacity();
+                updateCapacityInfo();
+                publishCurve();
+            }
+        });
+        dispatcher.on(StatusType.BATTERY_CAPACITY, msg -> {
+            informBuilding(MessageCodec.period(msg, period));
+            log.event(Event.INFORMING_BUILDING, msg.getSender());
+        });
+        dispatcher.on(StatusType.CHARGE_BATTERY, msg -> {
+            double quantity = MessageCodec.quantity(msg);
+            currentCapacity += quantity/totalCapacity;
+            updateCapacityInfo();
+            log.event(Event.CHARGING, quantity/totalCapacity);
+        });
+        dispatcher.on(StatusType.DISPATCH, msg -> {
+            PeriodState ps = stateOf(msg);
+            ps.setpoint = MessageCodec.quantity(msg);
+            log.event(Event.SETPOINT_RECEIVED, ps.setpoint);
+        });
+        dispatcher.on(StatusType.GET_PRICE, msg -> {
+            subscribers.add(msg.getSender()); // bridge gets one curve for all it's consumers
+            sendCurve(MessageCodec.sender(msg));
+        });
+        dispatcher.on(StatusType.CANCEL_CONSUMER, msg -> subscribers.remove(msg.getSender())); // consumer (or all consumers of bridge) stopped
+        dispatcher.on(StatusType.REQUEST_MEDIUM, this::sendMedium);
+        dispatcher.on(StatusType.MEDIUM_NEEDED, msg -> {
+            if(msg.getSender().equals(buildingId)){
+                if(!MessageCodec.hasContent(msg)){
+                    log.event(Event.RESERVING_FOR_BUILDING);
+                    reserveMedium(stateOf(msg), false);
+                } else if(regex.equals(msg.getContent())){
+                    log.event(Event.RESERVING_FOR_OTHER);
+                    reserveMedium(stateOf(msg), true);
+                } else {
+                    receiveMedium(periods.get(MessageCodec.period(msg, period)), msg);
+                }
+            } else{
+                log.event(Event.REFUSED, msg.getSender());
             }
         });
+        addBehaviour(dispatcher);
+
+        Clock.subscribe(this, st);
+
+
+    }
+
+    /** send medium requested by consumer (no more than {@link BatteryRules#maxDraw(double)}), request priced by old
+     * version of price curve is refused with current curve
+     * @param msg request containing medium quantity, price and period of shortage*/
+    private void sendMedium(ACLMessage msg){
+        double mediumQuanitity = MessageCodec.quantity(msg);
+
+        ACLMessage message = new ACLMessage(ACLMessage.INFORM);
+        MessageCodec.addReceiver(message, MessageCodec.sender(msg));
+        message.setOntology(StatusType.REQUEST_MEDIUM.toString());
+
+        long version = MessageCodec.version(msg);
+        if(version >= 0 && version != curve.getVersion()){ // state band changed since consumer got it's curve
+            logger.debug("request of {} priced by old curve {}", MessageCodec.sender(msg), version);
+            message.setPerformative(ACLMessage.REFUSE);
+            MessageCodec.setCurve(message, curve);
+            LocalTransport.send(this, metrics.sent(message));
+            return;
+        }
+
+        PeriodState ps = stateOf(msg);
+        if(mediumQuanitity <= BatteryRules.maxDraw(totalCapacity)){
+            currentCapacity -= mediumQuanitity/totalCapacity;
+            ps.draw += mediumQuanitity;
+            MessageCodec.setQuantity(message, mediumQuanitity);
+        }else{
+            currentCapacity -= 0.05;
+            ps.draw += BatteryRules.maxDraw(totalCapacity);
+            MessageCodec.setQuantity(message, BatteryRules.maxDraw(totalCapacity));
+        }
 
+        LocalTransport.send(this, metrics.sent(message));
+        SettlementJournal.record(Transfer.BATTERY, ps.period, getLocalName(), MessageCodec.sender(msg).getLocalName(),
+                Math.min(mediumQuanitity, BatteryRules.maxDraw(totalCapacity)), MessageCodec.price(msg));
 
+        updateCapacityInfo();
     }
 
     /** predict capacity for next period (assumption that battery capacity can change without other agents knowledge/actions)
      * */
     private void predictCapacity(){
-        if(System.currentTimeMillis() % 2 == 0){
+        if(ThreadLocalRandom.current().nextBoolean()){
             currentCapacity += ThreadLocalRandom.current().nextDouble(0, 0.05);
         }else{
             currentCapacity -= ThreadLocalRandom.current().nextDouble(0, 0.05);
         }
     }
 
-    /** update capacity info, i.e. set current battery state and price for medium
+    /** update capacity info, i.e. set current battery state and price for medium (called after each change of
+     * capacity, so that price curve is always current)
      * */
     private void updateCapacityInfo(){
-        if(currentCapacity < 0.1){
-            batteryState = BatteryState.REQUEST_MEDIUM;
-            priceLB = 10000;
-            priceUB = 10000;
-        } else if(currentCapacity >= 0.1 && currentCapacity < 0.5){
-            batteryState = BatteryState.STORE_MEDIUM;
-            priceLB = 0.4;
-            priceUB = 1;
-        } else if (currentCapacity >= 0.5 && currentCapacity < 0.9){
-            batteryState = BatteryState.SEND_MEDIUM;
-            priceLB = 0.1;
-            priceUB = 0.5;
-        } else {
-            batteryState = BatteryState.EXCESS_MEDIUM;
-            priceLB = 0.01;
-            priceUB = 0.1;
+        BatteryState previousState = batteryState;
+        batteryState = BatteryRules.state(currentCapacity);
+        metrics.stateChanged(previousState, batteryState);
+        priceLB = BatteryRules.priceLB(batteryState);
+        priceUB = BatteryRules.priceUB(batteryState);
+        if(batteryState != previousState){
+            curve = new PriceCurve(curve == null ? 0 : curve.getVersion() + 1, batteryState, priceLB, priceUB,
+                    BatteryRules.maxDraw(totalCapacity));
         }
     }
 
-    /** inform about current price for medium
-     * @param sender who to inform*/
-    private void sendPrice(AID sender){
-        updateCapacityInfo();
+    /** send current price curve to consumer that subscribed
+     * @param receiver consumer*/
+    private void sendCurve(AID receiver){
         ACLMessage message = new ACLMessage(ACLMessage.INFORM);
-        message.addReceiver(sender);
+        MessageCodec.addReceiver(message, receiver);
         message.setOntology(StatusType.GET_PRICE.toString());
-        message.setContent(String.valueOf(ThreadLocalRandom.current().nextDouble(priceLB, priceUB)));
-        send(message);
+        MessageCodec.setCurve(message, curve);
+        LocalTransport.send(this, metrics.sent(message));
     }
 
-    /** send building current capacity and state
+    /** send price curve of new period to all subscribed consumers in one message
      * */
-    private void informBuilding(){
+    private void publishCurve(){
+        if(subscribers.isEmpty()){
+            return;
+        }
+        ACLMessage message = new ACLMessage(ACLMessage.INFORM);
+        for(AID s : subscribers){
+            message.addReceiver(s);
+        }
+        message.setOntology(StatusType.GET_PRICE.toString());
+        MessageCodec.setCurve(message, curve);
+        LocalTransport.send(this, metrics.sent(message));
+    }
+
+    /** @param msg received message (period is taken from conversation id, latest period when it's missing)
+     * @return state of period of message*/
+    private PeriodState stateOf(ACLMessage msg){
+        return periods.computeIfAbsent(MessageCodec.period(msg, period), PeriodState::new);
+    }
+
+    /** send building current capacity and state
+     * @param p period building asked for*/
+    private void informBuilding(long p){
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.addReceiver(buildingId);
         msg.setContent(String.valueOf(currentCapacity));
         msg.setOntology(StatusType.BATTERY_CAPACITY.toString());
+        MessageCodec.setPeriod(msg, p);
 
         updateCapacityInfo();
         msg.setLanguage(batteryState.toString());
 
-        send(msg);
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
     /** register service in DF
@@ -209,24 +284,14 @@ public class Battery extends Agent {
      * @param buildingName building name obtained from initial battery arguments
      * */
     private void findBuilding(String buildingName){
-        DFAgentDescription template = new DFAgentDescription();
-        ServiceDescription sd = new ServiceDescription();
-        sd.setType(ServiceType.BUILDING.toString()); // find all agents that provide 'building' service
-        sd.setName(buildingName);   // one of those agents is my building
-        template.addServices(sd);
-
         try {
-            DFAgentDescription[] result = DFService.search(this, template);
-
-            for(DFAgentDescription dfd : result){
-                buildingId = dfd.getName();
-            }
+            buildingId = DirectoryCache.shared().find(this, ServiceType.BUILDING.toString(), buildingName); // one of agents that provide 'building' service is my building
 
             ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
             msg.setOntology(StatusType.DECLARE_BATTERY.toString());
             msg.setContent(String.valueOf(totalCapacity));
             msg.addReceiver(buildingId);
-            send(msg);
+            LocalTransport.send(this, metrics.sent(msg));
 
         }
         catch (FIPAException ex) {
@@ -235,69 +300,60 @@ public class Battery extends Agent {
     }
 
     /** reserve medium for building (default or other building somewhere)
+     * @param ps state of period of request
      * @param otherBuilding flag indicating if medium is being reserved for other building than battery's default */
-    private void reserveMedium(boolean otherBuilding){
-        if(reservedMedium == null){
-            reservedMedium = new LinkedList<>();
-        }
-
+    private void reserveMedium(PeriodState ps, boolean otherBuilding){
         double price = 0;
-        double excess = getExcess();
+        double excess = getExcess(ps);
 
         if(otherBuilding){ // reserve medium for other building
             price = ThreadLocalRandom.current().nextDouble(priceLB, priceUB);
         }
-        reservedMedium.add(new Offer(buildingId, null, excess, price));
+        ps.reservedMedium.add(buildingId, null, excess, price);
 
         currentCapacity -= (excess/totalCapacity);
+        updateCapacityInfo();
 
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.addReceiver(buildingId);
         msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
-        msg.setContent(String.valueOf(excess) + regex + false + regex + price);
-        send(msg);
+        MessageCodec.setMedium(msg, excess, false, price);
+        MessageCodec.setPeriod(msg, ps.period);
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
-    /** get excessive amount of medium based on battery state
+    /** get excessive amount of medium based on battery state (keeping medium consumers are expected to draw)
+     * or setpoint of dispatcher (each reservation lowers it)
+     * @param ps state of period of request
      * @return amount of medium*/
-    private double getExcess(){
-        double percent = 0;
+    private double getExcess(PeriodState ps){
         updateCapacityInfo();
-
-        if(batteryState.equals(BatteryState.REQUEST_MEDIUM)){
-            percent = 0.01;
-        } else if( batteryState.equals(BatteryState.STORE_MEDIUM)){
-            percent = 0.02;
-        } else if (batteryState.equals(BatteryState.SEND_MEDIUM)){
-            percent = 0.05;
-        } else {
-            percent = 0.1;
-        }
-
-        if(currentCapacity > percent){
-            return totalCapacity*percent;
-        } else{
-            return 0;
+        if(!Double.isNaN(ps.setpoint)){
+            double excess = BatteryRules.dispatchedExcess(ps.setpoint, currentCapacity, totalCapacity);
+            ps.setpoint += excess;
+            return excess;
         }
+        return BatteryRules.keepForConsumers(BatteryRules.getExcess(batteryState, currentCapacity, totalCapacity),
+                currentCapacity, totalCapacity, drawForecast.forecast(0));
     }
 
     /** sender returns excess of medium previously reserved
+     * @param ps state of period of reservation (null when period is already cleaned up)
      * @param message message containing information of medium*/
-    private void receiveMedium(ACLMessage message){
-        String[] parts = message.getContent().split(regex);
+    private void receiveMedium(PeriodState ps, ACLMessage message){
+        double quantity = MessageCodec.quantity(message);
 
-        logger.info(message.getSender().getLocalName() + " returned medium - " + Double.parseDouble(parts[0]));
+        log.event(Event.MEDIUM_RETURNED, message.getSender(), quantity);
 
-        if(Boolean.valueOf(parts[1]) == true){
-            currentCapacity += (Double.parseDouble(parts[0])/totalCapacity);
+        if(MessageCodec.isReturned(message)){
+            currentCapacity += (quantity/totalCapacity);
+            updateCapacityInfo();
         }
 
-        logger.info("capacity increased by " + Double.parseDouble(parts[0])/totalCapacity);
+        log.event(Event.CAPACITY_INCREASED, quantity/totalCapacity);
 
-        for(Offer o : reservedMedium){
-            if(o.getAid().equals(message.getSender())){
-                reservedMedium.remove(o);
-            }
+        if(ps != null){
+            ps.reservedMedium.remove(message.getSender());
         }
     }
 
@@ -307,6 +363,7 @@ public class Battery extends Agent {
     @Override
     protected void takeDown()
     {
+        LocalTransport.deregister(this);
         logger.warn("stopping");
         try { DFService.deregister(this); }
         catch (Exception e) {
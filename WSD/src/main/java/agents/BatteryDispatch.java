@@ -0,0 +1,168 @@
+package agents;
+
+import java.util.Arrays;
+
+/** fleet-wide dispatch of batteries for one period - greedy solution of single period problem: net load of city (sum of
+ * predicted net load of buildings) is stored by charging batteries when positive or covered by discharging them when
+ * negative, never both, so that no battery is charged while other one sends medium,
+ * medium of fuller battery is cheaper ({@link BatteryRules#priceLB(messages.BatteryState)}), so fuller batteries
+ * discharge first and emptier ones charge first, each group (estate) first uses it's own batteries for it's share of
+ * net load of city, the rest goes to batteries of any group,
+ * battery moves at most {@link #RATE} of it's capacity per period and isn't discharged below {@link #MIN_CHARGE},
+ * rows are kept in primitive arrays reused between periods (up to 2^21 batteries and 2^22 groups)
+ * */
+public final class BatteryDispatch {
+
+    /** battery below this charge requests medium, so it isn't discharged more */
+    public static final double MIN_CHARGE = 0.1;
+    /** part of capacity that battery can charge or discharge in one period (largest part it offers by itself) */
+    public static final double RATE = 0.1;
+
+    private static final int INDEX_BITS = 21, CHARGE_BITS = 20;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1, CHARGE_SCALE = (1L << CHARGE_BITS) - 1;
+
+    private int size, groups;
+    private int[] group = new int[64];
+    private double[] net = new double[64], charge = new double[64], capacity = new double[64], setpoint = new double[64];
+    private double[] groupNet = new double[16];
+    private long[] byGroup = new long[64], byCharge = new long[64];
+    private double unmet, spilled;
+
+    /** add building (and it's battery) to dispatch of period
+     * @param group group of building (estate index), not negative
+     * @param net predicted net load of building (production minus demand)
+     * @param charge current charge of battery (part of capacity)
+     * @param capacity total capacity of battery, 0 if building has no battery
+     * @return row of building*/
+    public int add(int group, double net, double charge, double capacity){
+        if(size == this.group.length){
+            int rows = size * 2;
+            this.group = Arrays.copyOf(this.group, rows);
+            this.net = Arrays.copyOf(this.net, rows);
+            this.charge = Arrays.copyOf(this.charge, rows);
+            this.capacity = Arrays.copyOf(this.capacity, rows);
+            setpoint = Arrays.copyOf(setpoint, rows);
+            byGroup = Arrays.copyOf(byGroup, rows);
+            byCharge = Arrays.copyOf(byCharge, rows);
+        }
+        if(group >= groupNet.length){
+            groupNet = Arrays.copyOf(groupNet, Math.max(group + 1, groupNet.length * 2));
+        }
+
+        this.group[size] = group;
+        this.net[size] = net;
+        this.charge[size] = charge;
+        this.capacity[size] = capacity;
+        setpoint[size] = 0;
+        groups = Math.max(groups, group + 1);
+        return size++;
+    }
+
+    /** remove all rows (next period) */
+    public void clear(){
+        size = 0;
+        groups = 0;
+        unmet = 0;
+        spilled = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /** @param row row of building
+     * @return medium that battery of building should store (positive) or send (negative) in this period*/
+    public double setpoint(int row){
+        return setpoint[row];
+    }
+
+    /** @param row row of building
+     * @return true if building has battery*/
+    public boolean hasBattery(int row){
+        return capacity[row] > 0;
+    }
+
+    /** @return deficit of city that batteries can't cover*/
+    public double getUnmet(){
+        return unmet;
+    }
+
+    /** @return surplus of city that batteries can't store*/
+    public double getSpilled(){
+        return spilled;
+    }
+
+    /** count setpoints of all batteries */
+    public void solve(){
+        Arrays.fill(groupNet, 0, groups, 0);
+        double cityNet = 0;
+        int batteries = 0;
+
+        for(int i = 0; i < size; ++i){
+            setpoint[i] = 0;
+            cityNet += net[i];
+            groupNet[group[i]] += net[i];
+
+            if(capacity[i] > 0){
+                long c = (long) (Math.max(0, Math.min(1, charge[i])) * CHARGE_SCALE);
+                byGroup[batteries] = ((long) group[i] << (CHARGE_BITS + INDEX_BITS)) | (c << INDEX_BITS) | i;
+                byCharge[batteries] = (c << INDEX_BITS) | i;
+                ++batteries;
+            }
+        }
+
+        unmet = 0;
+        spilled = 0;
+        if(cityNet == 0){
+            return;
+        }
+
+        double sign = cityNet < 0 ? -1 : 1; // discharge or charge
+        double need = Math.abs(cityNet), sameSign = 0;
+        for(int g = 0; g < groups; ++g){
+            sameSign += Math.max(0, sign * groupNet[g]);
+        }
+        double share = need / sameSign; // part of group net load that goes to batteries (medium flows between groups)
+
+        Arrays.sort(byGroup, 0, batteries);
+        Arrays.sort(byCharge, 0, batteries);
+
+        /* own batteries of group */
+        for(int start = 0, end; start < batteries; start = end){
+            int g = (int) (byGroup[start] >>> (CHARGE_BITS + INDEX_BITS));
+            end = start + 1;
+            while(end < batteries && (int) (byGroup[end] >>> (CHARGE_BITS + INDEX_BITS)) == g){
+                ++end;
+            }
+
+            double target = Math.max(0, sign * groupNet[g]) * share;
+            for(int k = 0; k < end - start && target > 0; ++k){
+                int i = (int) (byGroup[sign < 0 ? end - 1 - k : start + k] & INDEX_MASK);
+                double taken = Math.min(target, room(i, sign));
+                setpoint[i] += sign * taken;
+                target -= taken;
+                need -= taken;
+            }
+        }
+
+        /* rest by charge of any battery */
+        for(int k = 0; k < batteries && need > 0; ++k){
+            int i = (int) (byCharge[sign < 0 ? batteries - 1 - k : k] & INDEX_MASK);
+            double taken = Math.min(need, room(i, sign));
+            setpoint[i] += sign * taken;
+            need -= taken;
+        }
+
+        if(sign < 0){
+            unmet = Math.max(0, need);
+        } else {
+            spilled = Math.max(0, need);
+        }
+    }
+
+    /** medium that battery can still charge (sign 1) or discharge (sign -1) in this period */
+    private double room(int i, double sign){
+        double limit = sign < 0 ? Math.max(0, charge[i] - MIN_CHARGE) : Math.max(0, 1 - charge[i]);
+        return Math.max(0, Math.min(RATE, limit) * capacity[i] - Math.abs(setpoint[i]));
+    }
+}
@@ -0,0 +1,97 @@
+package agents;
+
+import messages.*;
+
+/** decision logic of battery that doesn't depend on agent platform, shared by {@link Battery} and headless simulation
+ * */
+public final class BatteryRules {
+
+    private BatteryRules(){}
+
+    /** battery state based on current capacity
+     * @param currentCapacity current capacity (percentage)
+     * @return battery state*/
+    public static BatteryState state(double currentCapacity){
+        if(currentCapacity < 0.1){
+            return BatteryState.REQUEST_MEDIUM;
+        } else if(currentCapacity >= 0.1 && currentCapacity < 0.5){
+            return BatteryState.STORE_MEDIUM;
+        } else if (currentCapacity >= 0.5 && currentCapacity < 0.9){
+            return BatteryState.SEND_MEDIUM;
+        } else {
+            return BatteryState.EXCESS_MEDIUM;
+        }
+    }
+
+    /** @param batteryState battery state
+     * @return lower bound of medium price in given state*/
+    public static double priceLB(BatteryState batteryState){
+        switch (batteryState){
+            case REQUEST_MEDIUM: return 10000;
+            case STORE_MEDIUM: return 0.4;
+            case SEND_MEDIUM: return 0.1;
+            default: return 0.01;
+        }
+    }
+
+    /** @param batteryState battery state
+     * @return upper bound of medium price in given state*/
+    public static double priceUB(BatteryState batteryState){
+        switch (batteryState){
+            case REQUEST_MEDIUM: return 10000;
+            case STORE_MEDIUM: return 1;
+            case SEND_MEDIUM: return 0.5;
+            default: return 0.1;
+        }
+    }
+
+    /** get excessive amount of medium based on battery state
+     * @param batteryState battery state
+     * @param currentCapacity current capacity (percentage)
+     * @param totalCapacity total capacity of battery
+     * @return amount of medium*/
+    public static double getExcess(BatteryState batteryState, double currentCapacity, double totalCapacity){
+        double percent;
+
+        if(batteryState.equals(BatteryState.REQUEST_MEDIUM)){
+            percent = 0.01;
+        } else if( batteryState.equals(BatteryState.STORE_MEDIUM)){
+            percent = 0.02;
+        } else if (batteryState.equals(BatteryState.SEND_MEDIUM)){
+            percent = 0.05;
+        } else {
+            percent = 0.1;
+        }
+
+        if(currentCapacity > percent){
+            return totalCapacity*percent;
+        } else{
+            return 0;
+        }
+    }
+
+    /** limit excess, so that battery keeps medium consumers are expected to draw in this period
+     * @param excess amount of medium based on battery state
+     * @param currentCapacity current capacity (percentage)
+     * @param totalCapacity total capacity of battery
+     * @param expectedDraw forecast of medium drawn by consumers
+     * @return amount of medium*/
+    public static double keepForConsumers(double excess, double currentCapacity, double totalCapacity, double expectedDraw){
+        return Math.max(0, Math.min(excess, currentCapacity * totalCapacity - expectedDraw));
+    }
+
+    /** amount of medium battery offers when dispatcher set it's setpoint (instead of percentage of state)
+     * @param setpoint medium to store (positive) or send (negative) in this period
+     * @param currentCapacity current capacity (percentage)
+     * @param totalCapacity total capacity of battery
+     * @return amount of medium*/
+    public static double dispatchedExcess(double setpoint, double currentCapacity, double totalCapacity){
+        return setpoint < 0 ? Math.min(-setpoint, Math.max(0, currentCapacity) * totalCapacity) : 0;
+    }
+
+    /** @param totalCapacity total capacity of battery
+     * @return maximum medium consumer can draw at once*/
+    public static double maxDraw(double totalCapacity){
+        return 0.05*totalCapacity;
+    }
+}
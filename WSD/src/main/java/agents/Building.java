@@ -2,7 +2,7 @@ package agents;
 
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.*;
+import jade.core.behaviours.WakerBehaviour;
 import jade.domain.DFService;
 import jade.domain.FIPAAgentManagement.DFAgentDescription;
 import jade.domain.FIPAAgentManagement.ServiceDescription;
@@ -15,21 +15,55 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
+import checkpoint.Checkpoint;
+import forecast.HoltWinters;
+import forecast.QuantileSketch;
+import journal.Event;
+import journal.EventLog;
 import messages.*;
+import metrics.BuildingMetrics;
+import utils.DirectoryCache;
+import settlement.SettlementJournal;
+import settlement.Transfer;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
 
 public class Building extends Agent {
 
     private AID batteryId;
-    private double predictedProduction, actualProduction, totalDemand, batteryCapacity, batteryTotalCapacity, excessiveProduction;
-    private int consumersCount, offersCount, neighboursCount;
-    private List<Offer> consumerOffers, buildingOffers, reservedMedium;
+    private double predictedProduction, batteryTotalCapacity;
+    private final HoltWinters demandForecast = new HoltWinters(); // total demand of consumers
+    private int consumersCount;
     private final String regex = ";";
     private List<String> estateIds, services;
-    private BatteryState batteryState;
-    private boolean negotiationsStarted = false, supplyPlanNotStarted = true;
-    private long startTime;
+    private final Map<Long, PeriodState> periods = new HashMap<>(); // periods in progress (two when clock is pipelined)
+    private final Deque<PeriodState> spare = new ArrayDeque<>(); // states of cleaned periods reused by next ones
+    private long period, cleanedPeriod; // latest started and latest cleaned period
+    private OntologyDispatcher dispatcher;
+    private static final BuildingMetrics metrics = BuildingMetrics.shared();
+
+    /** quantile of offer arrival times that closes offer window (wsd.offerQuantile, default 0.99) */
+    private static final double OFFER_QUANTILE = Double.parseDouble(System.getProperty("wsd.offerQuantile", "0.99"));
+    private final QuantileSketch offerArrival = new QuantileSketch(OFFER_QUANTILE);
+    private final ConsumerForecasts consumerForecasts = new ConsumerForecasts(); // used when offer doesn't come in time
+
+    /** state of one period - offers, negotiations and settlement of period N+1 can go on while period N settles */
+    private static class PeriodState {
+        long period, periodStart, firstOffer, negotiationStart;
+        double actualProduction, totalDemand, excessiveProduction, reservedTotal, batteryCapacity;
+        double setpoint = Double.NaN; // setpoint of battery from dispatcher, NaN - battery follows it's state
+        BatteryState batteryState;
+        int offersCount, neighboursCount;
+        final Map<AID, Double> marketOrders = new HashMap<>();
+        final DemandIndex consumerDemands = new DemandIndex();
+        final OfferBook consumerOffers = new OfferBook(), buildingOffers = new OfferBook(), reservedMedium = new OfferBook();
+        final Set<AID> forecastOffers = new HashSet<>(); // consumers whose forecast is used as offer in this period
+        boolean negotiationsStarted = false, supplyPlanNotStarted = true, predicted = false, planReported = false, offersClosed;
+        WakerBehaviour offerWindow;
+    }
 
     private Logger logger;
+    private EventLog log;
 
 
     @Override
@@ -37,13 +71,17 @@ public class Building extends Agent {
 
         logger = LoggerFactory.getLogger(getLocalName());
         logger.info("started");
+        log = new EventLog(getLocalName(), logger);
 
         Object[] args = getArguments();
         ServiceType st = (ServiceType) args[0];
         String[] parts = (String[]) args[1]; // other properties
 
         predictedProduction = Double.parseDouble(parts[1]); // parts[0] - buildingId used to create agent
-        actualProduction = predictedProduction; // just for initialization
+        double[] snapshot = Checkpoint.restore(getLocalName());
+        if(snapshot != null){ // demand of last saved period starts forecast
+            demandForecast.observe(snapshot[0]);
+        }
 
         services = new LinkedList<>();
         services.add(st.toString());
@@ -56,423 +94,524 @@ public class Building extends Agent {
 
         registerServices(services);
 
-        offersCount = 0;
         consumersCount = 0;
-
-        consumerOffers = new LinkedList<>();
-        buildingOffers = new LinkedList<>();
-        reservedMedium = new LinkedList<>();
+        cleanedPeriod = Checkpoint.restoredPeriod();
 
 
         /* reactions for incoming messages */
-        addBehaviour(new CyclicBehaviour() {
-            @Override
-            public void action() {
-                ACLMessage msg = receive();
-                if(msg != null){
-                    if (msg.getOntology().equals(StatusType.CANCEL_CONSUMER.toString())){
-                        logger.info("canceling consumer - " + msg.getSender().getLocalName());
-                        --consumersCount;
-                    }
-                    else if(msg.getOntology().equals(StatusType.OFFER.toString())){
-                        logger.info("received offer from " + msg.getSender().getLocalName() + " - " + msg.getContent());
-                        saveOffer(msg.getSender(), msg.getContent());
-                    }
-                    else if(msg.getOntology().equals(StatusType.DECLARE_BATTERY.toString())){
-                        batteryId = msg.getSender();
-                        batteryTotalCapacity = Double.parseDouble(msg.getContent());
-                        logger.info("registering battery - " + batteryId.getLocalName());
-                    }
-                    else if(msg.getOntology().equals(StatusType.BATTERY_CAPACITY.toString())){
-                        batteryCapacity = Double.parseDouble(msg.getContent());
-                        batteryState = BatteryState.valueOf(msg.getLanguage());
-                        logger.info("current battery capacity - " + batteryCapacity + " (" + batteryState + ")");
-                    }
-                    else if(msg.getOntology().equals(StatusType.GET_BATTERY.toString())){
-                        logger.info("accepting consumer - " + msg.getSender().getLocalName());
-                        ++consumersCount;
-
-                        ACLMessage message = new ACLMessage(ACLMessage.INFORM);
-                        message.setOntology(StatusType.GET_BATTERY.toString());
-                        if(batteryId != null) {
-                            message.setContent(batteryId.getLocalName());
-                        }
-                        message.addReceiver(msg.getSender());
-                        send(message);
-                    }
-                    else if(msg.getOntology().equals(StatusType.MEDIUM_NEEDED.toString())){
-                        if(msg.getContent()!=null){
-                            receiveMedium(msg);
-                        } else {
-                            reserveMedium(msg.getSender());
-                        }
-                    }
-                    else{
-                        logger.info("message from" + msg.getSender() + " not understood");
-                        msg.setPerformative(ACLMessage.NOT_UNDERSTOOD);
-                        msg.addReceiver(msg.getSender());
-                        msg.setContent(msg.getContent());
-                        send(msg);
-                    }
-
-                }else block();
+        dispatcher = new OntologyDispatcher(this, logger).replyNotUnderstood(true).setMetrics(metrics);
+        dispatcher.on(StatusType.CANCEL_CONSUMER, msg -> {
+            log.event(Event.CONSUMER_CANCELED, MessageCodec.sender(msg));
+            consumerForecasts.remove(MessageCodec.sender(msg));
+            --consumersCount;
+        });
+        dispatcher.on(StatusType.OFFER, msg -> {
+            PeriodState ps = stateOf(msg);
+            if(ps != null){
+                saveOffer(ps, MessageCodec.sender(msg), msg); // consumer agent or lightweight consumer of bridge
             }
         });
+        dispatcher.on(StatusType.DECLARE_BATTERY, msg -> {
+            batteryId = msg.getSender();
+            batteryTotalCapacity = Double.parseDouble(msg.getContent());
+            log.event(Event.BATTERY_REGISTERED, batteryId);
+        });
+        dispatcher.on(StatusType.BATTERY_CAPACITY, msg -> {
+            PeriodState ps = stateOf(msg);
+            if(ps == null){
+                return;
+            }
+            ps.batteryCapacity = Double.parseDouble(msg.getContent());
+            ps.batteryState = BatteryState.valueOf(msg.getLanguage());
+            log.event(Event.BATTERY_CAPACITY, null, ps.batteryState.toString(), ps.batteryCapacity, 0);
+
+            if(Dispatcher.ENABLED){ // wait for setpoint
+                reportState(ps);
+            } else {
+                predictionDone(ps);
+            }
+        });
+        dispatcher.on(StatusType.DISPATCH, msg -> {
+            PeriodState ps = stateOf(msg);
+            if(ps == null){
+                return;
+            }
+            ps.setpoint = MessageCodec.quantity(msg);
+            log.event(Event.SETPOINT_RECEIVED, ps.setpoint);
 
+            ACLMessage message = new ACLMessage(ACLMessage.INFORM);
+            message.setOntology(StatusType.DISPATCH.toString());
+            message.addReceiver(batteryId);
+            MessageCodec.setQuantity(message, ps.setpoint);
+            MessageCodec.setPeriod(message, ps.period);
+            LocalTransport.send(this, metrics.sent(message));
 
-        startTime = System.currentTimeMillis();
-
-        SequentialBehaviour behaviour = new SequentialBehaviour(this){
-            @Override
-            public int onEnd(){
-                reset();    // cyclic behaviour
-                getAgent().addBehaviour(this); // add this sequence
-                return super.onEnd();
+            predictionDone(ps);
+        });
+        dispatcher.on(StatusType.GET_BATTERY, msg -> {
+            log.event(Event.CONSUMER_ACCEPTED, MessageCodec.sender(msg));
+            ++consumersCount;
+
+            ACLMessage message = new ACLMessage(ACLMessage.INFORM);
+            message.setOntology(StatusType.GET_BATTERY.toString());
+            if(batteryId != null) {
+                message.setContent(batteryId.getLocalName());
             }
-        };
-
-        /* get parameters and create some agent state*/
-        behaviour.addSubBehaviour(new WakerBehaviour(this, 1000) {
-            @Override
-            protected void onWake() {
-                predictProduction();
-                getBatteryState();
+            MessageCodec.addReceiver(message, MessageCodec.sender(msg));
+            LocalTransport.send(this, metrics.sent(message));
+        });
+        dispatcher.on(StatusType.MARKET_ALLOCATION, msg -> {
+            PeriodState ps = stateOf(msg);
+            if(ps != null){
+                receiveAllocation(ps, msg);
             }
         });
+        dispatcher.on(StatusType.MEDIUM_NEEDED, msg -> {
+            PeriodState ps = stateOf(msg);
+            if(ps == null){
+                return;
+            }
+            if(MessageCodec.hasContent(msg)){
+                receiveMedium(ps, msg);
+            } else {
+                reserveMedium(ps, msg.getSender());
+            }
+        });
+        dispatcher.on(StatusType.PHASE, msg -> {
+            String[] phase = msg.getContent().split(regex);
+            long p = Long.parseLong(phase[1]);
+            period = Math.max(period, p);
+            metrics.period(p);
+            PeriodState ps = state(p);
+            if(ps == null){ // phase of period that is already cleaned up
+                return;
+            }
 
-        /* check if all consumers sent offers, start creating supply plan regardless */
-        behaviour.addSubBehaviour(new WakerBehaviour(this, 2500) {
-            @Override
-            protected void onWake() {
-                if(supplyPlanNotStarted){
-                    createSupplyPlan();
-                }
+            switch (Phase.valueOf(phase[0])){
+                case PREDICT: /* get parameters and create some agent state*/
+                    ps.periodStart = System.currentTimeMillis();
+                    openOfferWindow(ps);
+                    predictProduction(ps);
+                    if(batteryId != null){
+                        getBatteryState(ps);
+                    } else {
+                        if(Dispatcher.ENABLED){ // production of building counts in net load of city
+                            reportState(ps);
+                        }
+                        predictionDone(ps);
+                    }
+                    break;
+                case OFFERS_DUE: /* start creating supply plan regardless of missing offers */
+                    if(ps.supplyPlanNotStarted){
+                        forecastMissingOffers(ps);
+                        createSupplyPlan(ps);
+                    }
+                    break;
+                case SETTLE:
+                    settle(ps);
+                    Clock.phaseDone(this, Phase.SETTLE, p);
+                    break;
+                case CLEANUP:
+                    cleanUp(ps);
+                    Clock.phaseDone(this, Phase.CLEANUP, p);
+                    break;
             }
         });
+        addBehaviour(dispatcher);
 
-        /* before the end of period send medium to consumers, give excessive production to battery,
-        inform providers of maximum demand they can expect and clean agent state before next period */
-        behaviour.addSubBehaviour(new WakerBehaviour(this, 4000) {
-            @Override
-            protected void onWake() {
-                sendMedium();
-                logger.info("medium sent to consumers");
 
-                //excessiveProduction = getExcess();
+        Clock.subscribe(this, st); // periods are driven by clock phases
 
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.addReceiver(batteryId);
-                msg.setContent(String.valueOf(excessiveProduction));
-                msg.setOntology(StatusType.CHARGE_BATTERY.toString());
-                send(msg);
+    }
 
-                informProviders();
-                cleanUp();
-            }
-        });
+    /** state of period, created when first message or phase of it comes
+     * @param p period
+     * @return state of period, null if period is already cleaned up*/
+    private PeriodState state(long p){
+        PeriodState ps = periods.get(p);
+        if(ps == null && p > cleanedPeriod){
+            ps = spare.isEmpty() ? new PeriodState() : spare.pop();
+            ps.period = p;
+            periods.put(p, ps);
+        }
+        return ps;
+    }
 
-        behaviour.addSubBehaviour(new TickerBehaviour(this, 200) {
-            @Override
-            protected void onTick() {
-                long currentTime = System.currentTimeMillis();
-                if(currentTime - startTime >= 10000){   // busy waiting
-                    stop();
-                }
-            }
-        });
+    /** @param msg received message (period is taken from conversation id, latest period when it's missing)
+     * @return state of period of message, null if message came after period was cleaned up*/
+    private PeriodState stateOf(ACLMessage msg){
+        long p = MessageCodec.period(msg, period);
+        PeriodState ps = state(p);
+        if(ps == null){
+            logger.debug("late {} of period {}", msg.getOntology(), p);
+        }
+        return ps;
+    }
 
-        addBehaviour(new WakerBehaviour(this, 8000) {
-            @Override
-            protected void onWake() {
-                addBehaviour(behaviour); // start sequence with delay
-            }
-        });
+    /** send medium to consumers, give excessive production to battery and inform providers of maximum demand they can expect
+     * @param ps state of settled period*/
+    private void settle(PeriodState ps){
+        sendMedium(ps);
+        log.event(Event.MEDIUM_SENT);
+
+        //excessiveProduction = getExcess();
 
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(batteryId);
+        MessageCodec.setQuantity(msg, ps.excessiveProduction);
+        MessageCodec.setPeriod(msg, ps.period);
+        msg.setOntology(StatusType.CHARGE_BATTERY.toString());
+        LocalTransport.send(this, metrics.sent(msg));
+        if(batteryId != null){
+            SettlementJournal.record(Transfer.CHARGE, ps.period, getLocalName(), batteryId.getLocalName(), ps.excessiveProduction, 0);
+        }
+
+        informProviders(ps);
     }
 
     /** store each consumer offer and start preparing supply plan (if each registered consumer sent offer)
+     * @param ps state of period of offer
      * @param aid agent identifier
-     * @param offer demand of consumer stored as offer*/
-    private void saveOffer (AID aid, String offer){
+     * @param offer message containing consumer's provider and demand*/
+    private void saveOffer (PeriodState ps, AID aid, ACLMessage offer){
 
-        if(consumerOffers == null){
-            consumerOffers = new LinkedList<>();
-        }
+        String provider = MessageCodec.provider(offer);
+        double demand = MessageCodec.quantity(offer);
+        log.event(Event.OFFER_RECEIVED, aid, provider, demand, 0);
+
+        consumerForecasts.observe(aid, provider, demand);
 
-        String[] parts = offer.split(regex);
-        consumerOffers.add(new Offer(aid, parts[0], Double.parseDouble(parts[1]), 0.0));
+        long now = System.currentTimeMillis();
+        if(ps.periodStart > 0){
+            metrics.offerLatency.record(now - ps.periodStart);
+            offerArrival.add(now - ps.periodStart);
+        }
+        if(ps.firstOffer == 0){
+            ps.firstOffer = now;
+        }
 
-        totalDemand += consumerOffers.get(consumerOffers.size()-1).getDemand();
+        int rows = ps.consumerOffers.size();
+        double added = BuildingRules.saveOffer(ps.consumerOffers, ps.consumerDemands, ps.forecastOffers, aid, provider, demand);
+        if(Double.isNaN(added)){ // forecast of consumer was already settled, offer is too late
+            logger.debug("offer of {} came after settlement of period {}", aid, ps.period);
+            return;
+        }
+        ps.totalDemand += added;
+        if(ps.consumerOffers.size() == rows){ // offer came after it's forecast was used, medium isn't sent yet
+            return;
+        }
 
-        ++offersCount;
+        ++ps.offersCount;
 
-        if(offersCount == consumersCount){ // no need to wait for more offers
-            createSupplyPlan();
+        if(ps.offersCount == consumersCount && ps.predicted){ // no need to wait for more offers
+            createSupplyPlan(ps);
         }
 
     }
 
     /** called each time agents try to create supply plan, main steps: starting negotiations if medium is needed,
      * storing some medium in battery depending on it's state, selecting offers of other buildings
-     * */
-    private void createSupplyPlan(){
-        if(supplyPlanNotStarted){ // all consumers send their offers or reached timeout (preparing supply plan for consumers that sent offers)
-            logger.info("preparing supply plan");
-            supplyPlanNotStarted = false;
+     * @param ps state of planned period*/
+    private void createSupplyPlan(PeriodState ps){
+        if(ps.supplyPlanNotStarted){ // all consumers send their offers or reached timeout (preparing supply plan for consumers that sent offers)
+            log.event(Event.SUPPLY_PLAN);
+            ps.supplyPlanNotStarted = false;
+            Clock.phaseDone(this, Phase.PREDICT, ps.period);
+            if(ps.firstOffer > 0){
+                metrics.supplyPlanDelay.record(System.currentTimeMillis() - ps.firstOffer);
+            }
         }
 
-        if(negotiationsStarted){
-            logger.info("negotiations in progress");
-            if(neighboursCount == 0){
-                selectOffers();
+        if(ps.negotiationsStarted){
+            log.event(Event.NEGOTIATIONS_IN_PROGRESS);
+            if(ps.neighboursCount == 0){
+                selectOffers(ps);
+                planDone(ps);
             }
 
         } else {
-            if(batteryId != null) { // battery needs some priority in medium production
-                logger.info("checking battery state");
-                checkBatteryState(); // based on actual production
+            if(batteryId != null && ps.batteryState != null) { // battery needs some priority in medium production
+                log.event(Event.BATTERY_CHECK);
+                checkBatteryState(ps); // based on actual production
             }
 
             //double excessiveProduction = getExcess();
             //logger.info("excessiveProduction: " + excessiveProduction);
-            if(actualProduction < totalDemand && !negotiationsStarted){
-                logger.info("starting negotiations");
-                negotiationsStarted = true;
-                startNegotiations();
+            if(Market.ENABLED){ // every building trades, so that markets know when all orders arrived
+                log.event(Event.ORDERS_SENT);
+                ps.negotiationsStarted = true;
+                ps.negotiationStart = System.currentTimeMillis();
+                startTrading(ps);
             }
+            else if(ps.actualProduction < ps.totalDemand && !ps.negotiationsStarted){
+                log.event(Event.NEGOTIATIONS_STARTED);
+                ps.negotiationsStarted = true;
+                ps.negotiationStart = System.currentTimeMillis();
+                startNegotiations(ps);
+            }
+
+            if(!ps.negotiationsStarted){ // no need to negotiate
+                planDone(ps);
+            } else if(ps.neighboursCount == 0){ // nobody to negotiate with
+                selectOffers(ps);
+                planDone(ps);
+            }
+        }
+
+    }
+
+    /** production and battery state (or setpoint) are known, start supply plan if all offers came before
+     * @param ps state of predicted period*/
+    private void predictionDone(PeriodState ps){
+        ps.predicted = true;
+        if(ps.supplyPlanNotStarted && (ps.offersClosed || ps.offersCount > 0 && ps.offersCount == consumersCount)){ // offers came before battery state
+            createSupplyPlan(ps);
+        }
+    }
+
+    /** close offer window at quantile of arrival times of offers in previous periods (unless all offers come earlier),
+     * clock closes it at OFFERS_DUE anyway
+     * @param ps state of started period*/
+    private void openOfferWindow(PeriodState ps){
+        if(!offerArrival.isReady()){
+            return;
         }
 
+        long windowPeriod = ps.period;
+        ps.offerWindow = new WakerBehaviour(this, Math.max(1, (long) Math.ceil(offerArrival.getQuantile()))) {
+            @Override
+            protected void onWake() {
+                if(ps.period == windowPeriod && periods.get(windowPeriod) == ps){
+                    ps.offerWindow = null;
+                    if(ps.supplyPlanNotStarted){
+                        ps.offersClosed = true;
+                        forecastMissingOffers(ps);
+                        if(ps.predicted){
+                            createSupplyPlan(ps);
+                        }
+                    }
+                }
+            }
+        };
+        addBehaviour(ps.offerWindow);
+    }
+
+    /** consumers that sent offers in previous periods, but not in this one, get their forecast demand
+     * (offer that comes later replaces it until medium is sent)
+     * @param ps state of planned period*/
+    private void forecastMissingOffers(PeriodState ps){
+        int forecast = consumerForecasts.forecastMissing(ps.consumerOffers, ps.consumerDemands, ps.forecastOffers, (aid, demand) -> {
+            log.event(Event.OFFER_FORECAST, aid, demand);
+            ps.totalDemand += demand;
+            ++ps.offersCount;
+        });
+        metrics.forecastOffers.add(forecast); // window and OFFERS_DUE may both forecast, each offer is counted once
+    }
+
+    /** send dispatcher predicted net load (production minus forecast of consumers' demand) and battery state
+     * @param ps state of predicted period*/
+    private void reportState(PeriodState ps){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology(StatusType.DISPATCH.toString());
+        msg.addReceiver(new AID(Dispatcher.NAME, AID.ISLOCALNAME));
+        MessageCodec.setReport(msg, new BatteryReport(ps.period, estateIds.get(0), predictedProduction - demandForecast.forecast(0),
+                ps.batteryCapacity, batteryId != null ? batteryTotalCapacity : 0));
+        LocalTransport.send(this, metrics.sent(msg));
+    }
+
+    /** inform clock that supply plan is ready (only once per period)
+     * @param ps state of planned period*/
+    private void planDone(PeriodState ps){
+        if(!ps.planReported){
+            ps.planReported = true;
+            Clock.phaseDone(this, Phase.OFFERS_DUE, ps.period);
+        }
     }
 
     /** if building produces energy, battery can be charged when it is in REQUEST_MEDIUM or STORE_MEDIUM state,
      * this sets priority that battery gets medium before consumers only in these two states
-     * */
-    private void checkBatteryState(){
-        if(actualProduction > 0) {
+     * @param ps state of planned period*/
+    private void checkBatteryState(PeriodState ps){
+        double quantity = BuildingRules.batteryCharge(ps.batteryState, ps.setpoint, ps.actualProduction, batteryTotalCapacity);
+        if(quantity > 0) {
+            ps.actualProduction -= quantity;
+
             ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
             msg.addReceiver(batteryId);
             msg.setOntology(StatusType.CHARGE_BATTERY.toString());
-
-            if (batteryState.equals(BatteryState.REQUEST_MEDIUM)) {
-
-                if (actualProduction > batteryTotalCapacity * 0.1) {
-                    actualProduction -= batteryTotalCapacity * 0.1;
-                    msg.setContent(String.valueOf(batteryTotalCapacity * 0.1));
-                } else {
-                    msg.setContent(String.valueOf(actualProduction));
-                    actualProduction = 0;
-                }
-                send(msg);
-            }
-            else if (batteryState.equals(BatteryState.STORE_MEDIUM)) {
-                double quantity = actualProduction * 0.05;
-                actualProduction -= quantity;
-                msg.setContent(String.valueOf(quantity));
-                send(msg);
-            }
+            MessageCodec.setQuantity(msg, quantity);
+            MessageCodec.setPeriod(msg, ps.period);
+            LocalTransport.send(this, metrics.sent(msg));
+            SettlementJournal.record(Transfer.CHARGE, ps.period, getLocalName(), batteryId.getLocalName(), quantity, 0);
         }
     }
 
     /** called when other building asks for medium, count excessive amount of medium that can be send and do it
+     * @param ps state of period of request
      * @param sender building asking for medium*/
-    private void reserveMedium(AID sender){
-        double excessiveProd = getExcess();
+    private void reserveMedium(PeriodState ps, AID sender){
+        double excessiveProd = getExcess(ps);
         if(excessiveProd <= 0){
             excessiveProd = 0;
         }
-        logger.info("reserving medium for " + sender.getLocalName() + " - " + excessiveProd);
-        actualProduction -= excessiveProd;
+        log.event(Event.MEDIUM_RESERVED, sender, excessiveProd);
+        ps.actualProduction -= excessiveProd;
 
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.addReceiver(sender);
         msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
 
-        if(reservedMedium == null){
-            reservedMedium = new LinkedList<>();
-        }
-
-        double price = ThreadLocalRandom.current().nextDouble(0.01, 1);
-        reservedMedium.add(new Offer(sender, null, excessiveProd, price));
+        double price = ThreadLocalRandom.current().nextDouble(BuildingRules.MIN_PRICE, BuildingRules.MAX_PRICE);
+        ps.reservedMedium.add(sender, null, excessiveProd, price);
+        ps.reservedTotal += excessiveProd;
 
-        msg.setContent(String.valueOf(excessiveProd) + regex + false + regex + price); // mediumAmount;isThisMediumBeingReturned;price
-        send(msg);
+        MessageCodec.setMedium(msg, excessiveProd, false, price);
+        MessageCodec.setPeriod(msg, ps.period);
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
     /** building receiving medium can get two king of messages: 1. other building offers medium  or 2. other building returns excess of medium
+     * @param ps state of period of medium
      * @param message message containing information of medium*/
-    private void receiveMedium(ACLMessage message){
-        String[] parts = message.getContent().split(regex);
-
-        if(buildingOffers == null){
-            buildingOffers = new LinkedList<>();
-        }
-
-        boolean isMediumReturned = Boolean.valueOf(parts[1]);
+    private void receiveMedium(PeriodState ps, ACLMessage message){
+        boolean isMediumReturned = MessageCodec.isReturned(message);
+        double mediumQuantity = MessageCodec.quantity(message);
 
         if(!isMediumReturned){ // building got medium from another building
 
-            double mediumQuantity = Double.parseDouble(parts[0]);
             if(mediumQuantity > 0){ // store only meaningful offers (also exclude offer from myself)
-                logger.info(message.getSender().getLocalName() + " send medium - " + mediumQuantity + ", price - " + Double.parseDouble(parts[2]));
-                buildingOffers.add(new Offer(message.getSender(), null, mediumQuantity, Double.parseDouble(parts[2]) ));
+                double price = MessageCodec.price(message);
+                log.event(Event.MEDIUM_OFFERED, message.getSender(), mediumQuantity, price);
+                ps.buildingOffers.add(message.getSender(), null, mediumQuantity, price);
             }
-            --neighboursCount;
+            --ps.neighboursCount;
         } else { // other building returned excessive amount of medium
 
-            int i = 0;
-            for(Offer rm : reservedMedium){
-                if(rm.getAid().equals(message.getSender())){
-                    rm.setDemand(rm.getDemand() - Double.parseDouble(parts[0]) );
-                    logger.info(rm.getAid().getLocalName() + " reserved medium - " + rm.getDemand());
-                    if(rm.getDemand() == 0 ){
-                        reservedMedium.remove(i);
-                    }
-                    break;
+            int rm = ps.reservedMedium.find(message.getSender());
+            if(rm >= 0){
+                ps.reservedMedium.setDemand(rm, ps.reservedMedium.demand(rm) - mediumQuantity);
+                ps.reservedTotal -= mediumQuantity;
+                log.event(Event.RESERVATION_LEFT, message.getSender(), ps.reservedMedium.demand(rm));
+                if(ps.reservedMedium.demand(rm) == 0 ){
+                    ps.reservedMedium.remove(rm);
                 }
-                ++i;
             }
 
-            Double returnedMediumQuantity = Double.parseDouble(parts[0]);
-            logger.info(message.getSender().getLocalName() + " returned medium - " + returnedMediumQuantity);
-            actualProduction += returnedMediumQuantity;
+            log.event(Event.MEDIUM_RETURNED, message.getSender(), mediumQuantity);
+            ps.actualProduction += mediumQuantity;
         }
 
-        createSupplyPlan(); // check if supply plan can be created now
+        createSupplyPlan(ps); // check if supply plan can be created now
 
     }
 
     /** when all building neighbours send their offers, select the best ones
-     * */
-    private void selectOffers(){
-        logger.info("selecting offers");
+     * @param ps state of planned period*/
+    private void selectOffers(PeriodState ps){
+        log.event(Event.OFFERS_SELECTED);
 
-        if(buildingOffers != null) {
-            buildingOffers.sort(Comparator.comparingDouble(Offer::getPrice)); // sort offers by price
-
-            for (Offer o : buildingOffers) {
+        if(ps.negotiationStart > 0){ // all neighbours (or markets) answered
+            metrics.negotiationRoundTrip.record(System.currentTimeMillis() - ps.negotiationStart);
+            ps.negotiationStart = 0;
+        }
 
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.addReceiver(o.getAid());
-                msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
+        OfferBook buildingOffers = ps.buildingOffers;
+        ps.actualProduction = BuildingRules.selectOffers(buildingOffers, ps.actualProduction, ps.totalDemand, (o, kept, returned) -> {
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.addReceiver(buildingOffers.aid(o));
+            msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
 
-                if (actualProduction + o.getDemand() <= totalDemand) { // still not enough medium
-                    actualProduction += o.getDemand();
-                    msg.setContent(String.valueOf(0) + regex + true + regex + 0);
-                } else { // more medium than need, return some
-                    double overproduction = actualProduction + o.getDemand() - totalDemand;
-                    actualProduction += o.getDemand() - overproduction;
-                    msg.setContent(String.valueOf(overproduction) + regex + true + regex + 0);
-                }
+            metrics.returnedMedium.add(returned); // return medium that isn't needed
+            MessageCodec.setMedium(msg, returned, true, 0);
+            MessageCodec.setPeriod(msg, ps.period);
 
-                send(msg);
-            }
-        }
+            LocalTransport.send(this, metrics.sent(msg));
+            SettlementJournal.record(Transfer.BUILDING, ps.period, buildingOffers.aid(o).getLocalName(), getLocalName(),
+                    kept, buildingOffers.price(o));
+        });
     }
 
     /** predict demand for next period
-     * */
-    private void predictProduction(){
+     * @param ps state of started period*/
+    private void predictProduction(PeriodState ps){
         //predictedProduction = ThreadLocalRandom.current().nextDouble(actualProduction*0.95, actualProduction*1.05);  //firstTry
         //actualProduction = ThreadLocalRandom.current().nextDouble(predictedProduction*0.95, predictedProduction*1.05);
-        actualProduction = predictedProduction;
+        ps.actualProduction = predictedProduction;
     }
 
     /** send message to battery to get it's state
-     * */
-    private void getBatteryState(){
+     * @param ps state of started period*/
+    private void getBatteryState(PeriodState ps){
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.setOntology(StatusType.BATTERY_CAPACITY.toString());
         msg.addReceiver(batteryId);
-        send(msg);
+        MessageCodec.setPeriod(msg, ps.period);
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
     /** count amount of excessive production based on consumer offers and medium reserved for other buildings
+     * (aggregates are updated as offers, reservations and returns arrive)
+     * @param ps state of period
      * @return amount of excessive production*/
-    private double getExcess(){
-        double consumerSupply = actualProduction/consumersCount;
-        double excessiveSupply = 0;
-
-        if(consumerOffers != null) {
-            for (Offer co : consumerOffers) {
-                if (consumerSupply >= co.getDemand()) { // consumer can get more than needs
-                    excessiveSupply += consumerSupply - co.getDemand();
-                }
-            }
-        }
-
-        if(reservedMedium != null) {
-            for (Offer rm : reservedMedium) {
-                excessiveSupply -= rm.getDemand();
-            }
-        }
-
-        return excessiveSupply;
+    private double getExcess(PeriodState ps){
+        return BuildingRules.getExcess(ps.actualProduction, consumersCount, ps.consumerDemands, ps.reservedTotal);
     }
 
     /** send medium to each consumer and count excessive production
-     * */
-    private void sendMedium() {
-        double consumerSupply = actualProduction / consumersCount;
-
-        logger.info("sending medium to consumers");
+     * @param ps state of settled period*/
+    private void sendMedium(PeriodState ps) {
+        log.event(Event.SENDING_MEDIUM);
+        ps.forecastOffers.clear(); // offers coming after this don't replace forecasts
 
-        for (Offer co : consumerOffers) {
+        OfferBook consumerOffers = ps.consumerOffers;
+        ps.excessiveProduction += BuildingRules.supplyConsumers(consumerOffers, ps.actualProduction, consumersCount, (co, supply) -> {
             ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
             msg.setOntology(StatusType.SUPPLY.toString());
-            msg.addReceiver(co.getAid());
-
-            if (consumerSupply >= co.getDemand()) { // consumer can get more than needs
-                excessiveProduction += consumerSupply - co.getDemand();
-                msg.setContent(String.valueOf(co.getDemand()));
-                co.setDemand(0.0);
-            } else { // consumer needs more than can get from building production
-                co.setDemand(co.getDemand() - consumerSupply);
-                msg.setContent(String.valueOf(consumerSupply));
-            }
+            MessageCodec.addReceiver(msg, consumerOffers.aid(co));
+            MessageCodec.setQuantity(msg, supply);
+            MessageCodec.setPeriod(msg, ps.period);
 
-            send(msg);
-        }
+            LocalTransport.send(this, metrics.sent(msg));
+            SettlementJournal.record(Transfer.SUPPLY, ps.period, getLocalName(), consumerOffers.aid(co).getLocalName(), supply, 0);
+        });
     }
 
-    /** inform providers of maximum medium amount that consumers can request (maximum, because consumers might get shortages form battery)
-     * */
-    private void informProviders(){
-        Map<String, Double> demandPerProvider = new HashMap<>();
-        for(Offer co : consumerOffers) {
-            if(demandPerProvider.containsKey(co.getProvider())){
-                demandPerProvider.put(co.getProvider(), demandPerProvider.get(co.getProvider()).doubleValue() + co.getDemand());
-            }else{
-                demandPerProvider.put(co.getProvider(), co.getDemand());
-            }
+    /** inform providers of maximum medium amount that consumers can request (maximum, because consumers might get shortages form battery),
+     * demand goes to aggregator of first estate in one summary together with net surplus (or deficit) and free battery capacity
+     * @param ps state of settled period*/
+    private void informProviders(PeriodState ps){
+        Map<String, Double> demandPerProvider = BuildingRules.demandPerProvider(ps.consumerOffers);
+
+        double demand = 0;
+        for (Map.Entry<String, Double> d : demandPerProvider.entrySet()){
+            log.event(Event.PROVIDER_DEMAND, d.getKey(), d.getValue());
+            SettlementJournal.record(Transfer.PROVIDER, ps.period, d.getKey(), getLocalName(), d.getValue(), 0);
+            demand += d.getValue();
         }
 
-        for (String name: demandPerProvider.keySet()){
-            logger.info("sending demand to provider " + name + " " + demandPerProvider.get(name).toString());
-        }
+        double headroom = batteryId != null ? batteryTotalCapacity * Math.max(0, 1 - ps.batteryCapacity) : 0;
 
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology(StatusType.SUMMARY.toString());
+        msg.addReceiver(new AID(Aggregator.estateName(estateIds.get(0)), AID.ISLOCALNAME));
+        MessageCodec.setSummary(msg, new Summary(ps.period, ps.excessiveProduction - demand, headroom, demandPerProvider));
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
     /** find all neighbours in DF and ask them for medium
-     * */
-    private void startNegotiations(){
-        DFAgentDescription template = new DFAgentDescription();
-        ServiceDescription sd = new ServiceDescription();
-
+     * @param ps state of planned period*/
+    private void startNegotiations(PeriodState ps){
         for(String e : estateIds){
-            sd.setType(e);
-            template.addServices(sd);
-
             try {
-                DFAgentDescription[] result = DFService.search(this, template);
-
-                for(DFAgentDescription dfd : result){
+                for(AID neighbour : DirectoryCache.shared().search(this, e)){
 
                     ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
                     msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
-                    msg.addReceiver(dfd.getName());
-                    send(msg);
+                    msg.addReceiver(neighbour);
+                    MessageCodec.setPeriod(msg, ps.period);
+                    LocalTransport.send(this, metrics.sent(msg));
 
-                    ++neighboursCount;
+                    ++ps.neighboursCount;
                 }
 
             }
@@ -487,12 +626,87 @@ public class Building extends Agent {
             msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
             //msg.setContent(regex); // send anything
             msg.addReceiver(batteryId);
-            send(msg);
+            MessageCodec.setPeriod(msg, ps.period);
+            LocalTransport.send(this, metrics.sent(msg));
+
+            ++ps.neighboursCount;
+        }
+    }
+
+    /** send bid (shortage) or ask (excessive production) to market of each estate and ask battery for medium if needed,
+     * order is split between estates by number of other buildings in them, so that medium is never sold twice
+     * @param ps state of planned period*/
+    private void startTrading(PeriodState ps){
+        boolean bid = ps.actualProduction < ps.totalDemand;
+        double quantity = bid ? ps.totalDemand - ps.actualProduction : Math.max(0, getExcess(ps));
+        double price = bid ? BuildingRules.MAX_PRICE : ThreadLocalRandom.current().nextDouble(BuildingRules.MIN_PRICE, BuildingRules.MAX_PRICE);
+
+        List<AID> markets = new ArrayList<>(estateIds.size());
+        int[] neighbours = new int[estateIds.size()];
+        int allNeighbours = 0;
+
+        for(String e : estateIds){
+            try {
+                AID market = DirectoryCache.shared().find(this, ServiceType.MARKET.toString(), e);
+                if(market != null){
+                    neighbours[markets.size()] = DirectoryCache.shared().search(this, e).size() - 1; // without me
+                    allNeighbours += neighbours[markets.size()];
+                    markets.add(market);
+                }
+            }
+            catch (FIPAException ex) {
+                ex.printStackTrace();
+            }
+        }
+
+        for(int i = 0; i < markets.size(); ++i){ // each market gets order (even empty one), so that it knows when all orders arrived
+            double order = BuildingRules.marketShare(quantity, neighbours[i], allNeighbours);
+            ps.marketOrders.put(markets.get(i), order);
+            if(!bid){
+                ps.actualProduction -= order; // reserved for buyers, unsold medium comes back with allocation
+            }
+
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology(StatusType.MARKET_ORDER.toString());
+            msg.addReceiver(markets.get(i));
+            MessageCodec.setOrder(msg, order, bid, price);
+            MessageCodec.setPeriod(msg, ps.period);
+            LocalTransport.send(this, metrics.sent(msg));
+
+            ++ps.neighboursCount;
+        }
+
+        if(bid && batteryId != null) { // ask battery as well
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology(StatusType.MEDIUM_NEEDED.toString());
+            msg.addReceiver(batteryId);
+            MessageCodec.setPeriod(msg, ps.period);
+            LocalTransport.send(this, metrics.sent(msg));
 
-            ++neighboursCount;
+            ++ps.neighboursCount;
         }
     }
 
+    /** market sends medium bought by building or informs how much of offered medium was sold
+     * @param ps state of period of allocation
+     * @param message message containing allocation*/
+    private void receiveAllocation(PeriodState ps, ACLMessage message){
+        double allocated = MessageCodec.quantity(message);
+
+        if(MessageCodec.isBid(message)){
+            log.event(Event.MEDIUM_BOUGHT, allocated, MessageCodec.price(message));
+            SettlementJournal.record(Transfer.MARKET, ps.period, message.getSender().getLocalName(), getLocalName(), allocated, MessageCodec.price(message));
+            ps.actualProduction += allocated;
+        } else {
+            log.event(Event.MEDIUM_SOLD, allocated, MessageCodec.price(message));
+            SettlementJournal.record(Transfer.MARKET, ps.period, getLocalName(), message.getSender().getLocalName(), allocated, MessageCodec.price(message));
+            ps.actualProduction += ps.marketOrders.getOrDefault(message.getSender(), 0.0) - allocated; // unsold medium
+        }
+
+        --ps.neighboursCount;
+        createSupplyPlan(ps);
+    }
+
     /** register services that building provide
      * @param serviceType service type to register*/
     private void registerServices(List<String> serviceType) {
@@ -515,25 +729,50 @@ public class Building extends Agent {
         }
     }
 
-    /** clean agent state before next period
-     * */
-    private void cleanUp(){
-        actualProduction = 0;
-        totalDemand = 0;
-        excessiveProduction = 0;
-        offersCount = 0;
-        neighboursCount = 0;
-        consumerOffers.clear();
-        buildingOffers.clear();
-        reservedMedium.clear();
-        negotiationsStarted = false;
-        supplyPlanNotStarted = true;
+    /** save and clean state of finished period, it is reused by one of next periods
+     * @param ps state of finished period*/
+    private void cleanUp(PeriodState ps){
+        Checkpoint.save(Checkpoint.BUILDING, ps.period, getLocalName(), ps.totalDemand);
+        metrics.forecastError.add(demandForecast.observe(ps.totalDemand));
+
+        periods.remove(ps.period);
+        cleanedPeriod = Math.max(cleanedPeriod, ps.period);
+        if(ps.offerWindow != null){
+            removeBehaviour(ps.offerWindow);
+            ps.offerWindow = null;
+        }
+
+        ps.actualProduction = 0;
+        ps.totalDemand = 0;
+        ps.setpoint = Double.NaN;
+        ps.batteryCapacity = 0;
+        ps.batteryState = null;
+        ps.excessiveProduction = 0;
+        ps.offersCount = 0;
+        ps.neighboursCount = 0;
+        ps.consumerOffers.clear();
+        ps.buildingOffers.clear();
+        ps.reservedMedium.clear();
+        ps.consumerDemands.clear();
+        ps.reservedTotal = 0;
+        ps.marketOrders.clear();
+        ps.negotiationsStarted = false;
+        ps.supplyPlanNotStarted = true;
+        ps.predicted = false;
+        ps.planReported = false;
+        ps.periodStart = 0;
+        ps.firstOffer = 0;
+        ps.negotiationStart = 0;
+        ps.offersClosed = false;
+        ps.forecastOffers.clear();
+        spare.push(ps);
     }
 
     /** actions before agent (sometimes unexpected) termination
      * */
     @Override
     protected void takeDown() {
+        LocalTransport.deregister(this);
         logger.warn("stopping");
         try { DFService.deregister(this); }
         catch (Exception e) {
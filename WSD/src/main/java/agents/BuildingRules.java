@@ -0,0 +1,194 @@
+package agents;
+
+import jade.core.AID;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import messages.*;
+
+/** decision logic of building that doesn't depend on agent platform, shared by {@link Building} and headless simulation
+ * */
+public final class BuildingRules {
+
+    /** receives part of offer of other building kept by building when offers are selected */
+    public interface Selection {
+        /** @param row row of offer
+         * @param kept medium building keeps
+         * @param returned medium returned to building that offered it*/
+        void selected(int row, double kept, double returned);
+    }
+
+    /** receives medium sent to consumer when period is settled */
+    public interface Supply {
+        /** @param row row of consumer offer
+         * @param supply medium sent to consumer*/
+        void supplied(int row, double supply);
+    }
+
+    /** range of price of medium offered by building */
+    public static final double MIN_PRICE = 0.01, MAX_PRICE = 1;
+
+    private BuildingRules(){}
+
+    /** store offer of consumer - offer replaces forecast used in it's place until medium is sent, offer of consumer
+     * that already has one (it's forecast was settled) is ignored
+     * @param consumerOffers offers received from consumers
+     * @param consumerDemands demands of consumer offers
+     * @param forecastOffers consumers whose forecast is used as offer
+     * @param aid consumer
+     * @param provider consumer's provider
+     * @param demand demand of offer
+     * @return change of total demand of consumers, NaN if offer is ignored*/
+    public static double saveOffer(OfferBook consumerOffers, DemandIndex consumerDemands, Set<AID> forecastOffers,
+                                   AID aid, String provider, double demand){
+        if(forecastOffers.remove(aid)){
+            int row = consumerOffers.find(aid);
+            double forecast = consumerOffers.demand(row);
+            consumerDemands.replace(forecast, demand);
+            consumerOffers.setDemand(row, demand);
+            return demand - forecast;
+        }
+        if(consumerOffers.find(aid) >= 0){
+            return Double.NaN;
+        }
+
+        consumerOffers.add(aid, provider, demand, 0.0);
+        consumerDemands.add(demand);
+        return demand;
+    }
+
+    /** medium each consumer gets when production is split equally
+     * @param actualProduction production available for consumers
+     * @param consumersCount number of registered consumers
+     * @return fair share of single consumer*/
+    public static double consumerSupply(double actualProduction, int consumersCount){
+        return actualProduction/consumersCount;
+    }
+
+    /** count amount of excessive production based on consumer offers and medium reserved for other buildings, from
+     * running aggregates (O(log n))
+     * @param actualProduction production available for consumers
+     * @param consumersCount number of registered consumers
+     * @param consumerDemands demands of consumer offers
+     * @param reserved total medium reserved for other buildings
+     * @return amount of excessive production*/
+    public static double getExcess(double actualProduction, int consumersCount, DemandIndex consumerDemands, double reserved){
+        return consumerDemands.excess(consumerSupply(actualProduction, consumersCount)) - reserved;
+    }
+
+    /** amount of medium that goes to battery before consumers (only in REQUEST_MEDIUM and STORE_MEDIUM states)
+     * @param batteryState current state of battery
+     * @param actualProduction production available for consumers
+     * @param batteryTotalCapacity total capacity of battery
+     * @return medium to charge battery with, 0 if battery doesn't get priority*/
+    public static double priorityCharge(BatteryState batteryState, double actualProduction, double batteryTotalCapacity){
+        if(actualProduction <= 0){
+            return 0;
+        }
+
+        if (batteryState.equals(BatteryState.REQUEST_MEDIUM)) {
+            return Math.min(actualProduction, batteryTotalCapacity * 0.1);
+        }
+        else if (batteryState.equals(BatteryState.STORE_MEDIUM)) {
+            return actualProduction * 0.05;
+        }
+        return 0;
+    }
+
+    /** amount of medium that goes to battery before consumers when dispatcher set setpoint of battery
+     * @param setpoint medium battery should store (positive) or send (negative)
+     * @param actualProduction production available for consumers
+     * @return medium to charge battery with*/
+    public static double dispatchCharge(double setpoint, double actualProduction){
+        return setpoint > 0 && actualProduction > 0 ? Math.min(setpoint, actualProduction) : 0;
+    }
+
+    /** amount of medium that goes to battery before consumers - setpoint of dispatcher when it is set, priority of
+     * battery state otherwise
+     * @param batteryState current state of battery
+     * @param setpoint setpoint of battery from dispatcher, NaN if battery follows it's state
+     * @param actualProduction production available for consumers
+     * @param batteryTotalCapacity total capacity of battery
+     * @return medium to charge battery with*/
+    public static double batteryCharge(BatteryState batteryState, double setpoint, double actualProduction, double batteryTotalCapacity){
+        return Double.isNaN(setpoint) ? priorityCharge(batteryState, actualProduction, batteryTotalCapacity)
+                : dispatchCharge(setpoint, actualProduction);
+    }
+
+    /** amount of medium returned to building that offered it when selecting offers
+     * @param actualProduction production gathered so far
+     * @param offered medium offered by other building
+     * @param totalDemand total demand of consumers
+     * @return medium to return, 0 if whole offer is needed*/
+    public static double overproduction(double actualProduction, double offered, double totalDemand){
+        if (actualProduction + offered <= totalDemand) { // still not enough medium
+            return 0;
+        }
+        return actualProduction + offered - totalDemand; // more medium than need, return some
+    }
+
+    /** keep offers of other buildings (cheapest first) until demand of consumers is covered, the rest is returned
+     * @param buildingOffers offers of other buildings (and battery)
+     * @param actualProduction production gathered so far
+     * @param totalDemand total demand of consumers
+     * @param selection receives kept and returned medium of each offer
+     * @return production with kept medium*/
+    public static double selectOffers(OfferBook buildingOffers, double actualProduction, double totalDemand, Selection selection){
+        int[] byPrice = buildingOffers.byPrice();
+        for(int i = 0; i < buildingOffers.size(); ++i){
+            int o = byPrice[i];
+            double overproduction = overproduction(actualProduction, buildingOffers.demand(o), totalDemand);
+            actualProduction += buildingOffers.demand(o) - overproduction;
+            selection.selected(o, buildingOffers.demand(o) - overproduction, overproduction);
+        }
+        return actualProduction;
+    }
+
+    /** split production equally between consumers that sent offers, demand of each offer is lowered by it's supply
+     * (what is left goes to provider)
+     * @param consumerOffers offers received from consumers
+     * @param actualProduction production available for consumers
+     * @param consumersCount number of registered consumers
+     * @param supply receives medium sent to each consumer
+     * @return excessive production (shares consumers didn't need)*/
+    public static double supplyConsumers(OfferBook consumerOffers, double actualProduction, int consumersCount, Supply supply){
+        double consumerSupply = consumerSupply(actualProduction, consumersCount);
+        double excessiveProduction = 0;
+        for(int co = 0; co < consumerOffers.size(); ++co){
+            double s = supply(consumerSupply, consumerOffers.demand(co));
+            excessiveProduction += consumerSupply - s; // consumer can get more than needs
+            consumerOffers.setDemand(co, consumerOffers.demand(co) - s);
+            supply.supplied(co, s);
+        }
+        return excessiveProduction;
+    }
+
+    /** part of building's market order sent to one of it's estates, estates with more neighbours get more
+     * @param quantity whole bid or ask of building
+     * @param neighbours number of other buildings in estate
+     * @param allNeighbours number of other buildings in all estates of building
+     * @return order sent to estate market*/
+    public static double marketShare(double quantity, int neighbours, int allNeighbours){
+        return allNeighbours > 0 ? quantity * neighbours / allNeighbours : 0;
+    }
+
+    /** medium consumer gets from building production
+     * @param consumerSupply fair share of single consumer
+     * @param demand consumer's demand
+     * @return medium sent to consumer*/
+    public static double supply(double consumerSupply, double demand){
+        return consumerSupply >= demand ? demand : consumerSupply;
+    }
+
+    /** sum consumers' remaining demand per provider
+     * @param consumerOffers offers received from consumers
+     * @return demand that each provider can expect*/
+    public static Map<String, Double> demandPerProvider(OfferBook consumerOffers){
+        Map<String, Double> demandPerProvider = new HashMap<>();
+        for(int row = 0; row < consumerOffers.size(); ++row) {
+            demandPerProvider.merge(consumerOffers.provider(row), consumerOffers.demand(row), Double::sum);
+        }
+        return demandPerProvider;
+    }
+}
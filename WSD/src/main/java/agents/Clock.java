@@ -0,0 +1,193 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.WakerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import checkpoint.Checkpoint;
+import messages.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
+
+/** simulation clock - broadcasts start of each period phase to subscribed agents, phase starts when all buildings
+ * finished previous one or when it's time comes (period length divided by time scale factor), next period starts
+ * right after all buildings cleaned up or, when pipelined, as soon as previous period starts settlement (offers and
+ * negotiations of next period overlap settlement of previous one, messages carry their period)
+ * */
+public class Clock extends Agent {
+
+    /** local name of clock, agents subscribe to it after start */
+    public static final String NAME = "zegar";
+    /** length of period at time scale 1 */
+    public static final long PERIOD = 10000;
+    /** time scale factor of this JVM (wsd.timeScale property), e.g. 100 means 100 times faster periods */
+    public static final double TIME_SCALE = Double.parseDouble(System.getProperty("wsd.timeScale", "1"));
+    /** next period starts together with settlement of previous one (wsd.pipeline=true), settlement of next period
+     * waits until previous period is cleaned up */
+    public static final boolean PIPELINED = Boolean.getBoolean("wsd.pipeline");
+
+    private final List<AID> buildings = new ArrayList<>(), subscribers = new ArrayList<>();
+    private final Map<Long, Round> rounds = new HashMap<>(); // periods in progress (two when pipelined)
+    private double timeScale;
+    private long period;
+
+    private Logger logger;
+
+    /** phases of one period in progress */
+    private static class Round {
+        final long period, start = System.currentTimeMillis();
+        final EnumMap<Phase, Integer> done = new EnumMap<>(Phase.class);
+        Phase phase;
+        boolean held; // supply plans are done, settlement waits for previous period
+        WakerBehaviour deadline;
+
+        Round(long period){
+            this.period = period;
+            for(Phase p : Phase.values()){
+                done.put(p, 0);
+            }
+        }
+    }
+
+    /** @param agent agent subscribing to clock
+     * @param serviceType service of agent (only buildings report finished phases)*/
+    public static void subscribe(Agent agent, ServiceType serviceType){
+        ACLMessage msg = new ACLMessage(ACLMessage.SUBSCRIBE);
+        msg.setOntology(StatusType.SUBSCRIBE_CLOCK.toString());
+        msg.setContent(serviceType.toString());
+        msg.addReceiver(new AID(NAME, AID.ISLOCALNAME));
+        LocalTransport.send(agent, msg);
+    }
+
+    /** inform clock that phase is finished
+     * @param agent building
+     * @param phase finished phase
+     * @param period period of phase*/
+    public static void phaseDone(Agent agent, Phase phase, long period){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology(StatusType.PHASE_DONE.toString());
+        msg.setContent(phase + ";" + period);
+        msg.addReceiver(new AID(NAME, AID.ISLOCALNAME));
+        LocalTransport.send(agent, msg);
+    }
+
+    @Override
+    protected void setup() {
+
+        logger = LoggerFactory.getLogger(getLocalName());
+        logger.info("started");
+
+        Object[] args = getArguments();
+        timeScale = args != null && args.length > 0 ? Double.parseDouble(args[0].toString()) : TIME_SCALE;
+        period = Checkpoint.restoredPeriod(); // restarted city continues numbering of periods
+
+        OntologyDispatcher dispatcher = new OntologyDispatcher(this, logger);
+        dispatcher.on(StatusType.SUBSCRIBE_CLOCK, msg -> {
+            subscribers.add(msg.getSender());
+            if(ServiceType.BUILDING.toString().equals(msg.getContent())){
+                buildings.add(msg.getSender());
+            }
+        });
+        dispatcher.on(StatusType.PHASE_DONE, msg -> {
+            String[] parts = msg.getContent().split(";");
+            Round round = rounds.get(Long.parseLong(parts[1]));
+            if(round != null){ // ignore late reports from finished periods
+                Phase p = Phase.valueOf(parts[0]);
+                round.done.put(p, round.done.get(p) + 1);
+                if(p == round.phase && round.done.get(p) >= buildings.size()){
+                    nextPhase(round);
+                }
+            }
+        });
+        addBehaviour(dispatcher);
+
+        /* give agents time to find each other */
+        addBehaviour(new WakerBehaviour(this, 5000) {
+            @Override
+            protected void onWake() {
+                startPeriod();
+            }
+        });
+    }
+
+    /** actions before agent (sometimes unexpected) termination
+     * */
+    @Override
+    protected void takeDown() {
+        LocalTransport.deregister(this);
+        logger.warn("stopping");
+    }
+
+    private void startPeriod(){
+        Round round = new Round(++period);
+        rounds.put(round.period, round);
+        startPhase(round, Phase.PREDICT);
+    }
+
+    private void nextPhase(Round round){
+        if(round.phase.ordinal() + 1 < Phase.values().length){
+            Phase next = Phase.values()[round.phase.ordinal() + 1];
+            if(next == Phase.SETTLE && rounds.containsKey(round.period - 1)){ // previous period still settles
+                round.held = true;
+                return;
+            }
+            startPhase(round, next);
+        } else {
+            removeBehaviour(round.deadline);
+            rounds.remove(round.period);
+            Round following = rounds.get(round.period + 1);
+            if(following == null){
+                startPeriod();
+            } else if(following.held){
+                following.held = false;
+                startPhase(following, Phase.SETTLE);
+            }
+        }
+    }
+
+    /** broadcast phase and wait for buildings or deadline (start of next phase or period),
+     * pipelined clock starts next period together with settlement of this one */
+    private void startPhase(Round round, Phase p){
+        round.phase = p;
+        if(round.deadline != null){
+            removeBehaviour(round.deadline);
+        }
+
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology(StatusType.PHASE.toString());
+        msg.setContent(p + ";" + round.period);
+        for(AID a : subscribers){
+            msg.addReceiver(a);
+        }
+        LocalTransport.send(this, msg);
+        logger.debug("period {} - {}", round.period, p);
+
+        double next = p.ordinal() + 1 < Phase.values().length ? Phase.values()[p.ordinal() + 1].getOffset() : 1;
+        long delay = Math.max(0, round.start + (long) (next * PERIOD / timeScale) - System.currentTimeMillis());
+        round.deadline = new WakerBehaviour(this, delay) {
+            @Override
+            protected void onWake() {
+                if(rounds.get(round.period) == round && round.phase == p){
+                    nextPhase(round);
+                }
+            }
+        };
+        addBehaviour(round.deadline);
+
+        if(PIPELINED && p == Phase.SETTLE){
+            startPeriod();
+        }
+        if(!buildings.isEmpty() && round.done.get(p) >= buildings.size()){ // every building already finished this phase
+            nextPhase(round);
+        }
+    }
+}
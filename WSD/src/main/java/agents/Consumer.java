@@ -2,48 +2,50 @@ package agents;
 
 import jade.core.AID;
 import jade.core.Agent;
-import jade.core.behaviours.CyclicBehaviour;
-import jade.core.behaviours.TickerBehaviour;
 import jade.core.behaviours.WakerBehaviour;
-import jade.domain.DFService;
-import jade.domain.FIPAAgentManagement.DFAgentDescription;
-import jade.domain.FIPAAgentManagement.ServiceDescription;
 import jade.domain.FIPAException;
 import jade.lang.acl.ACLMessage;
 
 import java.io.*;
-import java.util.concurrent.ThreadLocalRandom;
+import journal.Event;
+import journal.EventLog;
 import messages.*;
+import metrics.ConsumerMetrics;
+import utils.DirectoryCache;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class Consumer extends Agent {
+/** consumer agent - finds it's building and battery and passes messages to {@link ConsumerLogic}, which decides
+ * what consumer sends
+ * */
+public class Consumer extends Agent implements ConsumerLogic.Outbox {
 
-    private String providerId, buildingName;
+    private String buildingName;
     private final String regex = ";";
     private AID buildingId, batteryId;
-    private double initialDemand, actualDemand, predictedDemand, providerPrice;
+    private ConsumerLogic logic;
+
+    private OntologyDispatcher dispatcher;
+    private static final ConsumerMetrics metrics = ConsumerMetrics.shared();
 
     private Logger logger;
+    private EventLog log;
 
     @Override
     protected void setup() {
 
         logger = LoggerFactory.getLogger(getLocalName());
         logger.info("started");
+        log = new EventLog(getLocalName(), logger);
 
         /* get consumer's arguments - consumer name, building name, provider, demand */
         Object[] args = getArguments();
         String[] parts = (String[]) args[1]; // args[0] - ServiceType.CONSUMER (not used)
 
         buildingName = parts[1];     // parts[0] - consumerId used to create agent
-        providerId = parts[2];      // name of provider
-
-        initialDemand = Double.parseDouble(parts[3]);
-        predictedDemand = 0;    // initialization
-        actualDemand = 0;
-
-        providerPrice = ThreadLocalRandom.current().nextDouble(0.01, 1);
+        logic = new ConsumerLogic(getLocalName(), parts[2], Double.parseDouble(parts[3]), log, this); // provider, demand
 
         /* find building and battery after starting */
         addBehaviour(new WakerBehaviour(this, 2000) {
@@ -54,70 +56,31 @@ public class Consumer extends Agent {
             }
         });
 
+        /* this agent behaviour determines it's actions concerning incoming messages */
+        dispatcher = new OntologyDispatcher(this, logger).setMetrics(metrics);
         /* inform building of predicted demand for next period */
-        addBehaviour(new TickerBehaviour(this, 10000) {
-            @Override
-            protected void onTick() {
-                predictDemand();
-                actualDemand += predictedDemand;
-
-                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-                msg.setContent(providerId + regex + actualDemand);
-                msg.setOntology(StatusType.OFFER.toString());
-                msg.addReceiver(buildingId);
-                send(msg);
-            }
+        dispatcher.on(StatusType.PHASE, msg -> {
+            String[] phase = msg.getContent().split(regex);
+            logic.phase(Phase.valueOf(phase[0]), Long.parseLong(phase[1]), buildingId != null);
         });
-
-        /* this agent behaviour determines it's actions concerning incoming messages */
-        addBehaviour(new CyclicBehaviour() {
-            @Override
-            public void action() {
-                ACLMessage msg = receive();
-                if(msg != null){
-                    if(msg.getOntology().equals(StatusType.UPDATE_PROVIDER.toString())){
-                        providerId = msg.getContent();
-                        logger.info("changing provider to - " + providerId);
-                        updateProvider();
-                    }
-                    else if (msg.getOntology().equals(StatusType.SUPPLY.toString())){
-                        actualDemand -= Double.parseDouble(msg.getContent());
-                        logger.info("received supply, current demand - " + actualDemand);
-
-                        if(actualDemand > 0 && batteryId!=null){
-                            ACLMessage message = new ACLMessage(ACLMessage.INFORM);
-                            message.addReceiver(batteryId);
-                            message.setOntology(StatusType.GET_PRICE.toString());
-                            send(message);
-                        }else {
-                            informProvider();
-                        }
-                    }
-                    else if (msg.getOntology().equals(StatusType.GET_BATTERY.toString())){
-                        setBatteryId(msg);
-                    }
-                    else if (msg.getOntology().equals(StatusType.GET_PRICE.toString())){
-                        getShortage(Double.parseDouble(msg.getContent()) );
-                    }
-                    else if (msg.getOntology().equals(StatusType.REQUEST_MEDIUM.toString())){
-                        actualDemand -= Double.parseDouble(msg.getContent());
-                        informProvider();
-                    }
-                    else if(msg.getOntology().equals(StatusType.CONSUMER_CHARGING.toString())){
-                        logger.info("need more medium for car charging - " + Double.parseDouble(msg.getContent()));
-                        actualDemand += Double.parseDouble(msg.getContent());
-                        logger.info("actual demand - " + actualDemand);
-                    }
-                    else{
-                        logger.info("message from" + msg.getSender() + " not understood");
-                        msg.setPerformative(ACLMessage.NOT_UNDERSTOOD);
-                        msg.addReceiver(msg.getSender());
-                        msg.setContent(msg.getContent());
-                        //send(msg);
-                    }
-                } else block();
+        dispatcher.on(StatusType.UPDATE_PROVIDER, msg -> {
+            logic.setProviderId(msg.getContent());
+            updateProvider();
+        });
+        dispatcher.on(StatusType.SUPPLY, msg -> logic.supplied(MessageCodec.period(msg, 0), MessageCodec.quantity(msg)));
+        dispatcher.on(StatusType.GET_BATTERY, this::setBatteryId);
+        dispatcher.on(StatusType.GET_PRICE, msg -> logic.curve(MessageCodec.curve(msg)));
+        dispatcher.on(StatusType.REQUEST_MEDIUM, msg -> {
+            if(msg.getPerformative() == ACLMessage.REFUSE){ // request priced by old curve, battery sent current one
+                logic.refused(MessageCodec.curve(msg));
+            } else {
+                logic.mediumReceived(MessageCodec.quantity(msg));
             }
         });
+        dispatcher.on(StatusType.CONSUMER_CHARGING, msg -> logic.charging(Double.parseDouble(msg.getContent())));
+        addBehaviour(dispatcher);
+
+        Clock.subscribe(this, ServiceType.CONSUMER);
 
     }
 
@@ -125,17 +88,8 @@ public class Consumer extends Agent {
      * @param buildingName building name obtained from initial agent's arguments
      * */
     private void findBuilding(String buildingName){
-        DFAgentDescription template = new DFAgentDescription();
-        ServiceDescription sd = new ServiceDescription();
-        sd.setType(ServiceType.BUILDING.toString()); // find all agents that provide 'building' service
-        sd.setName(buildingName);   // one of those agents is my building
-        template.addServices(sd);
-
         try {
-            DFAgentDescription[] result = DFService.search(this, template);
-            for(DFAgentDescription dfd : result){
-                buildingId = dfd.getName();
-            }
+            buildingId = DirectoryCache.shared().find(this, ServiceType.BUILDING.toString(), buildingName); // one of agents that provide 'building' service is my building
         }
         catch (FIPAException ex) {
             ex.printStackTrace();
@@ -148,62 +102,50 @@ public class Consumer extends Agent {
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.setOntology(StatusType.GET_BATTERY.toString());
         msg.addReceiver(buildingId);
-        send(msg);
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
-    /** set battery identifier for later use (e.g. getting shortage of medium from battery instead of provider)
+    /** set battery identifier for later use (e.g. getting shortage of medium from battery instead of provider) and
+     * subscribe to it's price curve
      * @param msg message received from building containing battery name or null if building doesn't have a battery
      * */
     private void setBatteryId(ACLMessage msg){
         if(msg.getContent() != null) {
-            DFAgentDescription template = new DFAgentDescription();
-            ServiceDescription sd = new ServiceDescription();
-            sd.setType(ServiceType.BATTERY.toString()); // find all agents that provide 'battery' service
-            sd.setName(msg.getContent());   // one of those agents is my battery
-            template.addServices(sd);
-
             try {
-                DFAgentDescription[] result = DFService.search(this, template);
-
-                for(DFAgentDescription dfd : result){
-                    batteryId = dfd.getName();
-                }
-
+                batteryId = DirectoryCache.shared().find(this, ServiceType.BATTERY.toString(), msg.getContent()); // one of agents that provide 'battery' service is my battery
             } catch (FIPAException ex) {
                 ex.printStackTrace();
             }
-            logger.info("my battery " + batteryId.getLocalName());
-        }
-    }
+            log.event(Event.BATTERY_FOUND, batteryId);
 
-    /** get additional medium from battery or provider depending on offered price
-     * @param batteryPrice price of medium offered by battery
-     * */
-    private void getShortage(double batteryPrice){
-        logger.info("battery price = " + batteryPrice + ", provider price " + providerPrice);
-        if(batteryPrice <= providerPrice){
-            logger.info("getting shortage from battery");
-            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
-            msg.addReceiver(batteryId);
-            msg.setOntology(StatusType.REQUEST_MEDIUM.toString());
-            msg.setContent(String.valueOf(actualDemand+regex+batteryPrice));
-            send(msg);
-        } else {
-            logger.info("getting shortage from provider");
-            informProvider();
+            if(batteryId != null){
+                ACLMessage message = new ACLMessage(ACLMessage.INFORM);
+                message.addReceiver(batteryId);
+                message.setOntology(StatusType.GET_PRICE.toString());
+                LocalTransport.send(this, metrics.sent(message));
+            }
         }
     }
 
-    /** predict demand for next period
-     * */
-    private void predictDemand(){
-        //predictedDemand = ThreadLocalRandom.current().nextDouble(initialDemand*0.95, initialDemand*1.05);
-        predictedDemand = initialDemand; // for tests
+    @Override
+    public void offer(long period, String provider, double demand){
+        ACLMessage offer = new ACLMessage(ACLMessage.INFORM);
+        MessageCodec.setOffer(offer, provider, demand);
+        MessageCodec.setPeriod(offer, period);
+        offer.setOntology(StatusType.OFFER.toString());
+        offer.addReceiver(buildingId);
+        LocalTransport.send(this, metrics.sent(offer));
     }
 
-    private void informProvider(){
-        logger.info("need " + actualDemand + " medium from " + providerId);
-        actualDemand = 0;
+    @Override
+    public void requestMedium(long period, double quantity, double price, long version){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(batteryId);
+        msg.setOntology(StatusType.REQUEST_MEDIUM.toString());
+        MessageCodec.setRequest(msg, quantity, price);
+        MessageCodec.setVersion(msg, version);
+        MessageCodec.setPeriod(msg, period);
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
     /** when provider changes, building needs to be informed
@@ -212,8 +154,8 @@ public class Consumer extends Agent {
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.setOntology(StatusType.UPDATE_PROVIDER.toString());
         msg.addReceiver(buildingId);
-        msg.setContent(providerId);
-        send(msg);
+        msg.setContent(logic.getProviderId());
+        LocalTransport.send(this, metrics.sent(msg));
     }
 
     /*
@@ -259,7 +201,11 @@ public class Consumer extends Agent {
         ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
         msg.setOntology(StatusType.CANCEL_CONSUMER.toString());
         msg.addReceiver(buildingId);
-        send(msg);
+        if(batteryId != null){ // stop publishing price curve to me
+            msg.addReceiver(batteryId);
+        }
+        LocalTransport.send(this, metrics.sent(msg));
+        LocalTransport.deregister(this);
         logger.warn("stopping");
     }
 
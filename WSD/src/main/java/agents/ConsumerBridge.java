@@ -0,0 +1,163 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.core.behaviours.WakerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import actors.ActorPool;
+import actors.LightConsumer;
+import messages.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
+
+/** agent hosting lightweight consumers ({@link LightConsumer}) that run on shared {@link ActorPool} instead of thread
+ * of their own, so that one JVM can hold tens of thousands of consumers - consumer's messages go through bridge with
+ * consumer's name in ACL parameter, buildings and batteries see it as peer bridge#consumer
+ * ({@link MessageCodec#sender(ACLMessage)}), clock phases come once per bridge and are passed to each consumer
+ * */
+public class ConsumerBridge extends Agent {
+
+    /** consumers run as lightweight actors (wsd.lightConsumers=true) instead of agents */
+    public static final boolean ENABLED = Boolean.getBoolean("wsd.lightConsumers");
+    /** number of consumers hosted by one bridge (wsd.bridgeSize, default 10000) */
+    public static final int SIZE = Math.max(1, Integer.getInteger("wsd.bridgeSize", 10000));
+    /** prefix of local name of bridge, name of it's first consumer follows */
+    public static final String NAME = "mostek-";
+
+    private final Map<String, LightConsumer> consumers = new HashMap<>();
+    private final Map<String, Set<LightConsumer>> curveSubscribers = new HashMap<>(); // by local name of battery
+
+    private Logger logger;
+
+    @Override
+    protected void setup() {
+
+        logger = LoggerFactory.getLogger(getLocalName());
+
+        Object[] args = getArguments();
+        @SuppressWarnings("unchecked")
+        List<String[]> lines = (List<String[]>) args[2]; // args[1] - bridge name used to create agent
+
+        setEnabledO2ACommunication(true, 0);
+        ActorPool pool = ActorPool.shared();
+        for(String[] parts : lines){
+            LightConsumer consumer = new LightConsumer(parts, pool, this::post, logger);
+            consumers.put(consumer.getName(), consumer);
+        }
+        logger.info("started with " + consumers.size() + " consumers");
+
+        /* messages of consumers are sent by thread of bridge */
+        addBehaviour(new CyclicBehaviour(this) {
+            @Override
+            public void action() {
+                Object msg;
+                while((msg = getO2AObject()) != null){
+                    ACLMessage acl = (ACLMessage) msg;
+                    if(StatusType.GET_PRICE.toString().equals(acl.getOntology())){
+                        subscribe(acl);
+                    }
+                    LocalTransport.send(ConsumerBridge.this, acl);
+                }
+                block();
+            }
+        });
+
+        OntologyDispatcher dispatcher = new OntologyDispatcher(this, logger);
+        dispatcher.on(StatusType.PHASE, msg -> {
+            for(LightConsumer c : consumers.values()){
+                c.tell(msg);
+            }
+        });
+        dispatcher.on(StatusType.GET_PRICE, msg -> {
+            if(MessageCodec.actor(msg) != null){ // answer to subscription of one consumer
+                route(msg);
+                return;
+            }
+            Set<LightConsumer> subscribers = curveSubscribers.get(msg.getSender().getLocalName());
+            if(subscribers != null){ // curve published once for all consumers of battery
+                for(LightConsumer c : subscribers){
+                    c.tell(msg);
+                }
+            }
+        });
+        for(StatusType st : new StatusType[]{StatusType.UPDATE_PROVIDER, StatusType.SUPPLY, StatusType.GET_BATTERY,
+                StatusType.REQUEST_MEDIUM, StatusType.CONSUMER_CHARGING}){
+            dispatcher.on(st, this::route);
+        }
+        addBehaviour(dispatcher);
+
+        /* find buildings and batteries after starting */
+        addBehaviour(new WakerBehaviour(this, 2000) {
+            @Override
+            protected void onWake() {
+                for(LightConsumer c : consumers.values()){
+                    c.start();
+                }
+            }
+        });
+
+        Clock.subscribe(this, ServiceType.CONSUMER);
+    }
+
+    /** pass message to consumer named in it
+     * @param msg received message*/
+    private void route(ACLMessage msg){
+        String name = MessageCodec.actor(msg);
+        LightConsumer consumer = name == null ? null : consumers.get(name);
+        if(consumer != null){
+            consumer.tell(msg);
+        } else {
+            logger.info(msg.getOntology() + " from " + msg.getSender() + " for unknown consumer " + name);
+        }
+    }
+
+    /** remember consumer subscribing to price curve of battery, battery publishes curve once to bridge
+     * @param msg subscription sent by consumer*/
+    private void subscribe(ACLMessage msg){
+        LightConsumer consumer = consumers.get(MessageCodec.actor(msg));
+        for(Iterator<?> it = msg.getAllReceiver(); it.hasNext(); ){
+            String battery = ((AID) it.next()).getLocalName();
+            curveSubscribers.computeIfAbsent(battery, b -> new LinkedHashSet<>()).add(consumer);
+        }
+    }
+
+    /** called by consumers (threads of pool), message is sent by behaviour of bridge
+     * @param msg message of consumer*/
+    private void post(ACLMessage msg){
+        try {
+            putO2AObject(msg, false);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** actions before agent (sometimes unexpected) termination
+     * */
+    @Override
+    protected void takeDown() {
+        for(LightConsumer c : consumers.values()){
+            LocalTransport.send(this, c.cancel());
+        }
+        if(!curveSubscribers.isEmpty()){ // batteries stop publishing price curves to bridge
+            ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+            msg.setOntology(StatusType.CANCEL_CONSUMER.toString());
+            for(String battery : curveSubscribers.keySet()){
+                msg.addReceiver(new AID(battery, AID.ISLOCALNAME));
+            }
+            LocalTransport.send(this, msg);
+        }
+        LocalTransport.deregister(this);
+        logger.warn("stopping");
+    }
+}
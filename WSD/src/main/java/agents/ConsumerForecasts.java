@@ -0,0 +1,66 @@
+package agents;
+
+import forecast.HoltWinters;
+import jade.core.AID;
+import messages.OfferBook;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/** provider and demand forecast of each consumer of building, forecast is used as offer of consumer whose offer doesn't
+ * come in time (offer that comes later replaces it until medium is sent), shared by {@link Building} and headless
+ * simulation
+ * */
+public final class ConsumerForecasts {
+
+    /** receives forecast used in place of missing offer */
+    public interface Forecast {
+        /** @param aid consumer
+         * @param demand forecast demand*/
+        void forecast(AID aid, double demand);
+    }
+
+    /** provider and demand forecast of consumer */
+    private static class ConsumerForecast {
+        String provider;
+        final HoltWinters demand = new HoltWinters(0.5, 0, 0, 1);
+    }
+
+    private final Map<AID, ConsumerForecast> consumers = new HashMap<>();
+
+    /** @param aid consumer that sent offer
+     * @param provider consumer's provider
+     * @param demand demand of offer*/
+    public void observe(AID aid, String provider, double demand){
+        ConsumerForecast forecast = consumers.computeIfAbsent(aid, a -> new ConsumerForecast());
+        forecast.provider = provider;
+        forecast.demand.observe(demand);
+    }
+
+    /** @param aid consumer that stopped*/
+    public void remove(AID aid){
+        consumers.remove(aid);
+    }
+
+    /** consumers that sent offers in previous periods, but not in this one, get their forecast demand as offer
+     * @param consumerOffers offers received from consumers
+     * @param consumerDemands demands of consumer offers
+     * @param forecastOffers consumers whose forecast is used as offer
+     * @param forecast receives each forecast added as offer
+     * @return number of forecasts added*/
+    public int forecastMissing(OfferBook consumerOffers, DemandIndex consumerDemands, Set<AID> forecastOffers, Forecast forecast){
+        int added = 0;
+        for(Map.Entry<AID, ConsumerForecast> c : consumers.entrySet()){
+            if(consumerOffers.find(c.getKey()) < 0){
+                double demand = c.getValue().demand.forecast(0);
+                forecast.forecast(c.getKey(), demand);
+                consumerOffers.add(c.getKey(), c.getValue().provider, demand, 0.0);
+                consumerDemands.add(demand);
+                forecastOffers.add(c.getKey());
+                ++added;
+            }
+        }
+        return added;
+    }
+}
@@ -0,0 +1,211 @@
+package agents;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import checkpoint.Checkpoint;
+import forecast.HoltWinters;
+import journal.Event;
+import journal.EventLog;
+import messages.Phase;
+import messages.PriceCurve;
+import metrics.ConsumerMetrics;
+
+/** decisions and state of one consumer (offer at PREDICT, shortage from battery or provider after SUPPLY, demand carried
+ * over at CLEANUP), shared by {@link Consumer} agent, {@link actors.LightConsumer} actor and headless simulation - they
+ * only turn messages into calls of this class and send what it puts to {@link Outbox}
+ * */
+public class ConsumerLogic {
+
+    /** messages consumer sends */
+    public interface Outbox {
+        /** @param period period of offer
+         * @param provider consumer's provider
+         * @param demand offered demand*/
+        void offer(long period, String provider, double demand);
+
+        /** @param period period of shortage (battery bills medium to it)
+         * @param quantity requested medium
+         * @param price price of battery's curve
+         * @param version version of battery's curve*/
+        void requestMedium(long period, double quantity, double price, long version);
+
+        /** @param providerId consumer's provider
+         * @param demand demand left for provider (agents only log it)*/
+        default void providerNeeded(String providerId, double demand){}
+    }
+
+    private final String name;
+    private final Outbox outbox;
+    private final EventLog log;
+    private final Random random; // random of prices, null - random of current thread
+    private String providerId;
+    private final double initialDemand, providerPrice;
+    private double actualDemand, predictedDemand, chargingDemand;
+    private double forecastCharging; // charging already offered as part of forecast, not yet arrived
+    private double shortage; // demand of settled period that wasn't supplied by building
+    private long shortagePeriod; // period shortage belongs to
+    private final Map<Long, Double> offered = new HashMap<>(); // demand offered in periods not supplied yet
+    private PriceCurve batteryCurve; // latest price curve published by battery
+    private boolean periodStarted;
+    private final HoltWinters demandForecast = new HoltWinters();
+
+    private static final ConsumerMetrics metrics = ConsumerMetrics.shared();
+
+    /** @param name local name of consumer (checkpoint key)
+     * @param providerId consumer's provider
+     * @param initialDemand demand of consumer in each period
+     * @param log events of consumer
+     * @param outbox sends messages of consumer*/
+    public ConsumerLogic(String name, String providerId, double initialDemand, EventLog log, Outbox outbox){
+        this(name, providerId, initialDemand, log, outbox, null);
+    }
+
+    /** @param name local name of consumer (checkpoint key)
+     * @param providerId consumer's provider
+     * @param initialDemand demand of consumer in each period
+     * @param log events of consumer
+     * @param outbox sends messages of consumer
+     * @param random random of prices (seeded one in headless simulation), null - random of current thread*/
+    public ConsumerLogic(String name, String providerId, double initialDemand, EventLog log, Outbox outbox, Random random){
+        this.name = name;
+        this.random = random;
+        this.providerId = providerId;
+        this.initialDemand = initialDemand;
+        this.log = log;
+        this.outbox = outbox;
+
+        double[] snapshot = Checkpoint.restore(name);
+        if(snapshot != null){ // demand left at the end of last saved period, it's car charging goes to forecast
+            actualDemand = snapshot[0];
+            chargingDemand = snapshot[1];
+            periodStarted = true;
+        }
+        providerPrice = 0.01 + random().nextDouble() * (1 - 0.01);
+    }
+
+    /** @return consumer's provider*/
+    public String getProviderId(){
+        return providerId;
+    }
+
+    /** @param providerId new provider of consumer*/
+    public void setProviderId(String providerId){
+        this.providerId = providerId;
+        log.event(Event.PROVIDER_CHANGED, providerId, 0);
+    }
+
+    /** send offer at start of period, save state at it's end
+     * @param phase phase started by clock
+     * @param period period of phase
+     * @param canOffer true if building of consumer is known*/
+    public void phase(Phase phase, long period, boolean canOffer){
+        metrics.period(period);
+        if(phase == Phase.CLEANUP){ // end of period
+            for(Iterator<Map.Entry<Long, Double>> o = offered.entrySet().iterator(); o.hasNext(); ){
+                Map.Entry<Long, Double> e = o.next();
+                if(e.getKey() <= period){ // building didn't supply it, demand goes to next offer
+                    actualDemand += e.getValue();
+                    o.remove();
+                }
+            }
+            Checkpoint.save(Checkpoint.CONSUMER, period, name, actualDemand + shortage, chargingDemand);
+        } else if(phase == Phase.PREDICT && canOffer){
+            predictDemand();
+            actualDemand += predictedDemand;
+            outbox.offer(period, providerId, actualDemand);
+            offered.put(period, actualDemand); // previous period may still be settling
+            actualDemand = 0;
+        }
+    }
+
+    /** building sent medium for offer of period, shortage is taken from battery (price is known from it's curve) or
+     * provider
+     * @param period period of offer
+     * @param quantity supplied medium*/
+    public void supplied(long period, double quantity){
+        Double demand = offered.remove(period);
+        shortagePeriod = period;
+        shortage += (demand != null ? demand : 0) - quantity;
+        log.event(Event.SUPPLY_RECEIVED, shortage);
+
+        if(shortage > 0 && batteryCurve != null){
+            getShortage();
+        } else {
+            informProvider();
+        }
+    }
+
+    /** @param curve price curve published by battery*/
+    public void curve(PriceCurve curve){
+        batteryCurve = curve;
+    }
+
+    /** battery refused request priced by old curve
+     * @param curve current price curve of battery*/
+    public void refused(PriceCurve curve){
+        batteryCurve = curve;
+        getShortage();
+    }
+
+    /** @param quantity medium sent by battery*/
+    public void mediumReceived(double quantity){
+        shortage -= quantity;
+        informProvider();
+    }
+
+    /** car charging arrived, it uses up charging already offered with forecast first, the rest goes to next offer
+     * @param charging charging demand*/
+    public void charging(double charging){
+        log.event(Event.CHARGING_DEMAND, charging);
+        double covered = Math.min(charging, forecastCharging);
+        forecastCharging -= covered;
+        actualDemand += charging - covered;
+        chargingDemand += charging;
+        log.event(Event.ACTUAL_DEMAND, actualDemand);
+    }
+
+    /** predict demand for next period - demand and car charging of finished period update forecast, so that offer
+     * covers charging expected in next period (charging that comes lowers this forecast share first, only the rest
+     * goes to next offer)
+     * */
+    private void predictDemand(){
+        if(periodStarted){
+            metrics.forecastError.add(demandForecast.observe(initialDemand + chargingDemand));
+        }
+        periodStarted = true;
+        chargingDemand = 0;
+        predictedDemand = Math.max(initialDemand, demandForecast.forecast(initialDemand));
+        forecastCharging = predictedDemand - initialDemand;
+    }
+
+    /** get additional medium from battery or provider depending on price of battery's curve
+     * */
+    private void getShortage(){
+        double batteryPrice = batteryCurve.price(random());
+        log.event(Event.PRICES, batteryPrice, providerPrice);
+        if(ConsumerRules.shortageFromBattery(batteryPrice, providerPrice)){
+            log.event(Event.SHORTAGE_FROM_BATTERY);
+            outbox.requestMedium(shortagePeriod, Math.min(shortage, batteryCurve.getMaxDraw()), batteryPrice, batteryCurve.getVersion());
+        } else {
+            log.event(Event.SHORTAGE_FROM_PROVIDER);
+            informProvider();
+        }
+    }
+
+    private void informProvider(){
+        log.event(Event.PROVIDER_NEEDED, providerId, shortage);
+        if(shortage > 0){
+            metrics.unmetDemand.add(shortage);
+            outbox.providerNeeded(providerId, shortage);
+        }
+        shortage = 0;
+    }
+
+    private Random random(){
+        return random != null ? random : ThreadLocalRandom.current();
+    }
+}
@@ -0,0 +1,15 @@
+package agents;
+
+/** decision logic of consumer that doesn't depend on agent platform, shared by {@link Consumer} and headless simulation
+ * */
+public final class ConsumerRules {
+
+    private ConsumerRules(){}
+
+    /** @param batteryPrice price of medium offered by battery
+     * @param providerPrice price of medium offered by provider
+     * @return true if shortage should be taken from battery*/
+    public static boolean shortageFromBattery(double batteryPrice, double providerPrice){
+        return batteryPrice <= providerPrice;
+    }
+}
@@ -0,0 +1,98 @@
+package agents;
+
+import java.util.Arrays;
+
+/** consumer demands of building kept sorted with prefix sums, so that excess over fair share of consumers is counted
+ * in O(log n) instead of walking all offers on each request of neighbour, demands are sorted lazily (once after
+ * offers arrived, not on each offer), replaced demands and their replacements go to two small indexes instead
+ * (excess is a sum over demands, so excess of replaced ones is subtracted), so that late offer doesn't sort all demands
+ * again
+ * */
+public final class DemandIndex {
+
+    private double[] demands = new double[16];
+    /** prefix[i] - sum of i smallest demands */
+    private double[] prefix = new double[17];
+    private int size;
+    private boolean sorted = true;
+    private DemandIndex replaced, replacements; // created by first replace
+
+    /** @param demand demand of consumer offer*/
+    public void add(double demand){
+        if(size == demands.length){
+            demands = Arrays.copyOf(demands, size * 2);
+        }
+        demands[size++] = demand;
+        sorted = false;
+    }
+
+    /** replace demand with other one (forecast with demand of late offer) in O(1)
+     * @param demand demand to replace, it has to be in index
+     * @param replacement new demand*/
+    public void replace(double demand, double replacement){
+        if(replaced == null){
+            replaced = new DemandIndex();
+            replacements = new DemandIndex();
+        }
+        replaced.add(demand);
+        replacements.add(replacement);
+    }
+
+    /** remove all demands (next period) */
+    public void clear(){
+        size = 0;
+        sorted = true;
+        if(replaced != null){
+            replaced.clear();
+            replacements.clear();
+        }
+    }
+
+    public int size(){
+        return size;
+    }
+
+    /** @param share fair share of single consumer
+     * @return sum of (share - demand) over demands not greater than share*/
+    public double excess(double share){
+        if(size == 0 || Double.isNaN(share)){
+            return 0;
+        }
+        double excess = sortedExcess(share);
+        if(replaced != null && replaced.size > 0){
+            excess += replacements.sortedExcess(share) - replaced.sortedExcess(share);
+        }
+        return excess;
+    }
+
+    private double sortedExcess(double share){
+        if(size == 0){
+            return 0;
+        }
+        sort();
+
+        int lo = 0, hi = size; // number of demands not greater than share
+        while(lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if(demands[mid] <= share){
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo == 0 ? 0 : share * lo - prefix[lo];
+    }
+
+    private void sort(){
+        if(!sorted){
+            Arrays.sort(demands, 0, size);
+            if(prefix.length < size + 1){
+                prefix = new double[demands.length + 1];
+            }
+            for(int i = 0; i < size; ++i){
+                prefix[i + 1] = prefix[i] + demands[i];
+            }
+            sorted = true;
+        }
+    }
+}
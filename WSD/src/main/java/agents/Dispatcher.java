@@ -0,0 +1,143 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.WakerBehaviour;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import messages.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
+
+/** battery dispatcher of city - collects predicted net load and battery state of each building at start of period,
+ * counts setpoints of all batteries at once ({@link BatteryDispatch}) and sends each building setpoint of it's battery,
+ * dispatch starts when all buildings reported or after deadline (late buildings get setpoint of their own)
+ * */
+public class Dispatcher extends Agent {
+
+    /** local name of dispatcher */
+    public static final String NAME = "dyspozytor";
+    /** batteries follow setpoints of dispatcher (wsd.dispatch=true) instead of fixed percentages of their state */
+    public static final boolean ENABLED = Boolean.getBoolean("wsd.dispatch");
+
+    private final BatteryDispatch dispatch = new BatteryDispatch();
+    private final List<AID> buildings = new ArrayList<>();
+    private final Map<String, Integer> groups = new HashMap<>();
+    private int membersCount;
+    private long period = -1;
+    private boolean dispatched;
+    private WakerBehaviour deadline;
+
+    private Logger logger;
+
+    @Override
+    protected void setup() {
+
+        logger = LoggerFactory.getLogger(getLocalName());
+        logger.info("started");
+
+        Object[] args = getArguments();
+        String[] parts = (String[]) args[1];
+        membersCount = Integer.parseInt(parts[2]); // parts[0] - dispatcher name used to create agent, number of buildings
+
+        OntologyDispatcher dispatcher = new OntologyDispatcher(this, logger);
+        dispatcher.on(StatusType.DISPATCH, msg -> saveReport(msg.getSender(), MessageCodec.report(msg)));
+        addBehaviour(dispatcher);
+    }
+
+    /** store report of building, dispatch when all buildings reported
+     * @param sender building
+     * @param report state of building and it's battery*/
+    private void saveReport(AID sender, BatteryReport report){
+        if(report.getPeriod() < period){
+            logger.info("late report of period " + report.getPeriod());
+            return;
+        }
+        if(report.getPeriod() > period){ // first report in this period
+            if(!dispatched && !buildings.isEmpty()){
+                removeBehaviour(deadline);
+                dispatchBatteries();
+            }
+            clear();
+            period = report.getPeriod();
+
+            /* don't wait for buildings that won't report */
+            deadline = new WakerBehaviour(this, (long) (1000 / Clock.TIME_SCALE)) {
+                @Override
+                protected void onWake() {
+                    dispatchBatteries();
+                }
+            };
+            addBehaviour(deadline);
+        }
+        boolean late = dispatched; // building reported after deadline, it is dispatched alone
+        if(late){
+            clear();
+        }
+
+        Integer group = groups.get(report.getEstateId());
+        if(group == null){
+            group = groups.size();
+            groups.put(report.getEstateId(), group);
+        }
+        buildings.add(sender);
+        dispatch.add(group, report.getNet(), report.getCharge(), report.getCapacity());
+
+        if(late || buildings.size() >= membersCount){
+            removeBehaviour(deadline);
+            dispatchBatteries();
+        }
+    }
+
+    /** count setpoints and send them to buildings that have batteries
+     * */
+    private void dispatchBatteries(){
+        if(dispatched && buildings.isEmpty()){
+            return;
+        }
+
+        long start = System.nanoTime();
+        dispatch.solve();
+        long micros = (System.nanoTime() - start) / 1000;
+
+        int batteries = 0;
+        for(int i = 0; i < buildings.size(); ++i){
+            if(dispatch.hasBattery(i)){
+                ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+                msg.setOntology(StatusType.DISPATCH.toString());
+                msg.addReceiver(buildings.get(i));
+                MessageCodec.setQuantity(msg, dispatch.setpoint(i));
+                MessageCodec.setPeriod(msg, period);
+                LocalTransport.send(this, msg);
+                ++batteries;
+            }
+        }
+
+        logger.info("period " + period + " - " + batteries + " batteries of " + buildings.size() + " buildings dispatched in "
+                + micros + " us, unmet " + dispatch.getUnmet() + ", spilled " + dispatch.getSpilled());
+        dispatched = true;
+        buildings.clear();
+        dispatch.clear();
+    }
+
+    private void clear(){
+        buildings.clear();
+        dispatch.clear();
+        dispatched = false;
+    }
+
+    /** actions before agent (sometimes unexpected) termination
+     * */
+    @Override
+    protected void takeDown() {
+        LocalTransport.deregister(this);
+        logger.warn("stopping");
+    }
+}
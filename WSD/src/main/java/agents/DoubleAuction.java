@@ -0,0 +1,105 @@
+package agents;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/** sealed double auction: bids and asks are collected, then cleared once - highest bids are matched with cheapest asks
+ * while bid price is not lower than ask price, every matched order is settled at single clearing price
+ * */
+public class DoubleAuction {
+
+    private static class Order {
+        private final boolean bid;
+        private final double quantity, price;
+        private double allocated;
+
+        private Order(boolean bid, double quantity, double price){
+            this.bid = bid;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+
+    private final List<Order> orders = new ArrayList<>(), bids = new ArrayList<>(), asks = new ArrayList<>();
+    private double clearingPrice;
+
+    /** add order
+     * @param bid true for bid (buying), false for ask (selling)
+     * @param quantity amount of medium
+     * @param price highest price of bid or lowest price of ask
+     * @return order index used to get allocation*/
+    public int order(boolean bid, double quantity, double price){
+        Order o = new Order(bid, quantity, price);
+        orders.add(o);
+        if(quantity > 0){
+            (bid ? bids : asks).add(o);
+        }
+        return orders.size() - 1;
+    }
+
+    /** match orders
+     * @return clearing price (0 if nothing was traded)*/
+    public double clear(){
+        bids.sort(Comparator.comparingDouble((Order o) -> o.price).reversed());
+        asks.sort(Comparator.comparingDouble(o -> o.price));
+
+        int b = 0, a = 0;
+        double bidLeft = bids.isEmpty() ? 0 : bids.get(0).quantity, askLeft = asks.isEmpty() ? 0 : asks.get(0).quantity;
+        double lastBid = 0, lastAsk = 0;
+        boolean traded = false;
+
+        while(b < bids.size() && a < asks.size() && bids.get(b).price >= asks.get(a).price){
+            Order bid = bids.get(b), ask = asks.get(a);
+            double quantity = Math.min(bidLeft, askLeft);
+
+            bid.allocated += quantity;
+            ask.allocated += quantity;
+            bidLeft -= quantity;
+            askLeft -= quantity;
+            lastBid = bid.price;
+            lastAsk = ask.price;
+            traded = true;
+
+            if(bidLeft <= 0 && ++b < bids.size()){
+                bidLeft = bids.get(b).quantity;
+            }
+            if(askLeft <= 0 && ++a < asks.size()){
+                askLeft = asks.get(a).quantity;
+            }
+        }
+
+        clearingPrice = traded ? (lastBid + lastAsk) / 2 : 0;
+        return clearingPrice;
+    }
+
+    /** @param index order index
+     * @return medium bought (bid) or sold (ask) by order*/
+    public double allocated(int index){
+        return orders.get(index).allocated;
+    }
+
+    /** @param index order index
+     * @return true if order is bid*/
+    public boolean isBid(int index){
+        return orders.get(index).bid;
+    }
+
+    /** @return price of last clearing*/
+    public double getClearingPrice(){
+        return clearingPrice;
+    }
+
+    /** @return number of orders*/
+    public int size(){
+        return orders.size();
+    }
+
+    /** forget all orders before next period */
+    public void reset(){
+        orders.clear();
+        bids.clear();
+        asks.clear();
+        clearingPrice = 0;
+    }
+}
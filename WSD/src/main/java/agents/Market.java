@@ -0,0 +1,214 @@
+package agents;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.core.behaviours.WakerBehaviour;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import messages.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import utils.DirectoryCache;
+import utils.LocalTransport;
+import utils.OntologyDispatcher;
+
+/** estate market - collects one bid or ask from each building of estate per period and clears them as sealed double auction,
+ * each building gets single allocation message (instead of asking every neighbour for medium), orders of overlapping
+ * periods (pipelined clock) are cleared separately; market follows clock, so that period is cleared before it's
+ * settlement even when some buildings don't send orders, late orders of cleared period get empty allocation at once
+ * */
+public class Market extends Agent {
+
+    /** buildings trade through estate markets (default) or negotiate with each neighbour (wsd.negotiation=pairwise) */
+    public static final boolean ENABLED = !"pairwise".equals(System.getProperty("wsd.negotiation"));
+
+    private String estateId;
+    private final Map<Long, Round> rounds = new HashMap<>(); // periods being traded (two when clock is pipelined)
+    private final Set<Long> cleared = new HashSet<>(); // cleared periods that aren't cleaned up yet
+    private long period, cleanedPeriod;
+
+    private Logger logger;
+
+    /** orders of one period */
+    private static class Round {
+        final long period;
+        final DoubleAuction auction = new DoubleAuction();
+        final List<AID> participants = new ArrayList<>();
+        final List<Integer> orders = new ArrayList<>();
+        int membersCount;
+        WakerBehaviour deadline;
+
+        Round(long period){
+            this.period = period;
+        }
+    }
+
+    @Override
+    protected void setup() {
+
+        logger = LoggerFactory.getLogger(getLocalName());
+        logger.info("started");
+
+        Object[] args = getArguments();
+        ServiceType st = (ServiceType) args[0];
+        String[] parts = (String[]) args[1];
+        estateId = parts[1]; // parts[0] - market name used to create agent
+
+        setService(st.toString(), estateId);
+
+        OntologyDispatcher dispatcher = new OntologyDispatcher(this, logger);
+        dispatcher.on(StatusType.MARKET_ORDER, this::saveOrder);
+        dispatcher.on(StatusType.PHASE, msg -> {
+            String[] phase = msg.getContent().split(";");
+            long p = Long.parseLong(phase[1]);
+            switch (Phase.valueOf(phase[0])){
+                case OFFERS_DUE: // orders come with supply plans, clear halfway to settlement at the latest
+                    if(p > cleanedPeriod && !cleared.contains(p)){ // all members may have ordered already
+                        startDeadline(round(p));
+                    }
+                    break;
+                case SETTLE:
+                    Round round = rounds.get(p);
+                    if(round != null){
+                        clearMarket(round);
+                    }
+                    break;
+                case CLEANUP:
+                    cleanedPeriod = Math.max(cleanedPeriod, p);
+                    cleared.removeIf(c -> c <= cleanedPeriod);
+                    break;
+                default:
+                    break;
+            }
+        });
+        addBehaviour(dispatcher);
+
+        Clock.subscribe(this, st);
+    }
+
+    /** store order of building, clear market of order's period when each building of estate sent it's order
+     * @param msg message containing order*/
+    private void saveOrder(ACLMessage msg){
+        long p = MessageCodec.period(msg, period);
+        period = Math.max(period, p);
+        if(p <= cleanedPeriod || cleared.contains(p)){ // period is already cleared, nothing is traded
+            sendAllocation(msg.getSender(), p, 0, MessageCodec.isBid(msg), 0);
+            return;
+        }
+
+        Round round = round(p);
+        round.participants.add(msg.getSender());
+        round.orders.add(round.auction.order(MessageCodec.isBid(msg), MessageCodec.quantity(msg), MessageCodec.price(msg)));
+
+        if(round.participants.size() >= round.membersCount){
+            clearMarket(round);
+        }
+    }
+
+    /** @param p period
+     * @return orders of period (created with first order or when orders are due)*/
+    private Round round(long p){
+        Round round = rounds.get(p);
+        if(round == null){
+            round = new Round(p);
+            rounds.put(p, round);
+            try {
+                round.membersCount = DirectoryCache.shared().search(this, estateId).size();
+            } catch (FIPAException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return round;
+    }
+
+    /** don't wait for buildings that won't send order - clear halfway between OFFERS_DUE and SETTLE, so that
+     * allocations come before buildings settle
+     * @param round orders of period whose orders are due*/
+    private void startDeadline(Round round){
+        if(round.deadline != null){
+            return;
+        }
+        long delay = (long) ((Phase.SETTLE.getOffset() - Phase.OFFERS_DUE.getOffset()) / 2 * Clock.PERIOD / Clock.TIME_SCALE);
+        round.deadline = new WakerBehaviour(this, delay) {
+            @Override
+            protected void onWake() {
+                clearMarket(round);
+            }
+        };
+        addBehaviour(round.deadline);
+    }
+
+    /** match orders and send each participant medium it bought or sold
+     * @param round orders of cleared period*/
+    private void clearMarket(Round round){
+        if(rounds.remove(round.period) != round){ // already cleared
+            return;
+        }
+        cleared.add(round.period);
+        if(round.deadline != null){
+            removeBehaviour(round.deadline);
+        }
+
+        double price = round.auction.clear();
+        logger.info("market cleared, period " + round.period + ", " + round.participants.size() + " orders, price - " + price);
+
+        for(int i = 0; i < round.participants.size(); ++i){
+            int order = round.orders.get(i);
+            sendAllocation(round.participants.get(i), round.period, round.auction.allocated(order), round.auction.isBid(order), price);
+        }
+    }
+
+    /** @param receiver building that sent order
+     * @param p period of order
+     * @param allocated medium bought or sold
+     * @param bid true for bid
+     * @param price clearing price*/
+    private void sendAllocation(AID receiver, long p, double allocated, boolean bid, double price){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.addReceiver(receiver);
+        msg.setOntology(StatusType.MARKET_ALLOCATION.toString());
+        MessageCodec.setOrder(msg, allocated, bid, price);
+        MessageCodec.setPeriod(msg, p);
+        LocalTransport.send(this, msg);
+    }
+
+    /** register market service in DF, name of service is estate id
+     * @param type type of service to register
+     * @param name estate id*/
+    private void setService(String type, String name){
+        DFAgentDescription dfd = new DFAgentDescription();
+        dfd.setName(getAID());
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        sd.setName(name);
+        dfd.addServices(sd);
+        try {
+            DFService.register(this, dfd);
+        } catch (FIPAException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /** actions before agent (sometimes unexpected) termination
+     * */
+    @Override
+    protected void takeDown() {
+        LocalTransport.deregister(this);
+        logger.warn("stopping");
+        try { DFService.deregister(this); }
+        catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
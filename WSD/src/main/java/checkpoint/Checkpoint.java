@@ -0,0 +1,207 @@
+package checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/** state of agents saved at the end of each period to one append-only file (enabled by -Dwsd.checkpoint=file),
+ * after restart agents take their latest snapshot, so that city resumes with battery charge and demand left over,
+ * file is compacted to latest snapshot of each agent when it is opened, record (big-endian):
+ * <pre>
+ * byte kind, long period, short length, agent name (modified UTF-8), double value, double value2
+ * </pre>
+ * values of kinds:
+ * <ul>
+ * <li>BUILDING - total demand of consumers (first observation of demand forecast), 0</li>
+ * <li>BATTERY - charge (part of capacity), 0</li>
+ * <li>CONSUMER - demand carried over to next period, car charging since last offer (first observation of demand
+ * forecast)</li>
+ * </ul>
+ * reservations of finished period aren't saved - medium they would return is lost with the run, so charge is saved
+ * without it
+ * incomplete record at the end (crash while writing) is skipped, file is flushed every second
+ * */
+public class Checkpoint {
+
+    public static final byte BUILDING = 1, BATTERY = 2, CONSUMER = 3;
+
+    private static final Checkpoint shared = open();
+
+    private final Map<String, Snapshot> restored = new HashMap<>();
+    private final DataOutputStream out;
+    private long period;
+    private boolean failed;
+
+    private Logger logger = LoggerFactory.getLogger("checkpoint");
+
+    /** latest state of agent */
+    private static class Snapshot {
+        final byte kind;
+        final long period;
+        final double value, value2;
+
+        Snapshot(byte kind, long period, double value, double value2){
+            this.kind = kind;
+            this.period = period;
+            this.value = value;
+            this.value2 = value2;
+        }
+    }
+
+    /** read snapshots of file, compact it and open it for appending
+     * @param path checkpoint file (created if missing)
+     * @throws IOException when file can't be read or written*/
+    public Checkpoint(Path path) throws IOException {
+        if(Files.exists(path)){
+            long start = System.currentTimeMillis();
+            int records = read(path);
+
+            Path compacted = Paths.get(path.toString() + ".tmp");
+            try(DataOutputStream tmp = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compacted), 1 << 16))) {
+                for(Map.Entry<String, Snapshot> s : restored.entrySet()){
+                    write(tmp, s.getValue().kind, s.getValue().period, s.getKey(), s.getValue().value, s.getValue().value2);
+                }
+            }
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            logger.info(records + " records read, " + restored.size() + " agents restored from period " + period
+                    + " in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile(), true), 1 << 16));
+
+        Timer flusher = new Timer("checkpoint", true);
+        flusher.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, 1000, 1000);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    private static Checkpoint open(){
+        String path = System.getProperty("wsd.checkpoint");
+        if(path == null){
+            return null;
+        }
+        try {
+            return new Checkpoint(Paths.get(path));
+        } catch (IOException ex) {
+            LoggerFactory.getLogger("checkpoint").warn("checkpoint " + path + " not opened - " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /** save state of agent at the end of period (nothing when checkpoints aren't enabled)
+     * @param kind kind of agent
+     * @param period finished period
+     * @param agent local name of agent
+     * @param value first value of kind
+     * @param value2 second value of kind*/
+    public static void save(byte kind, long period, String agent, double value, double value2){
+        if(shared != null){
+            shared.append(kind, period, agent, value, value2);
+        }
+    }
+
+    /** save state of agent that has only one value at the end of period
+     * @param kind kind of agent
+     * @param period finished period
+     * @param agent local name of agent
+     * @param value value of kind*/
+    public static void save(byte kind, long period, String agent, double value){
+        save(kind, period, agent, value, 0);
+    }
+
+    /** @param agent local name of agent
+     * @return values of latest snapshot of agent ({value, value2}), null if there is none*/
+    public static double[] restore(String agent){
+        return shared == null ? null : shared.snapshot(agent);
+    }
+
+    /** @return latest period found in checkpoint file, 0 if there is none*/
+    public static long restoredPeriod(){
+        return shared == null ? 0 : shared.latestPeriod();
+    }
+
+    /** @param agent local name of agent
+     * @return values of latest snapshot of agent read when file was opened, null if there is none*/
+    double[] snapshot(String agent){
+        Snapshot s = restored.get(agent);
+        return s == null ? null : new double[]{s.value, s.value2};
+    }
+
+    /** @return latest period read when file was opened, 0 if there is none*/
+    long latestPeriod(){
+        return period;
+    }
+
+    synchronized void append(byte kind, long period, String agent, double value, double value2){
+        if(failed){
+            return;
+        }
+        try {
+            write(out, kind, period, agent, value, value2);
+        } catch (IOException ex) {
+            failed = true;
+            logger.warn("checkpoint not written - " + ex.getMessage());
+        }
+    }
+
+    private synchronized void flush(){
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            logger.warn("checkpoint not flushed - " + ex.getMessage());
+        }
+    }
+
+    synchronized void close(){
+        try {
+            out.close();
+        } catch (IOException ex) {
+            logger.warn("checkpoint not closed - " + ex.getMessage());
+        }
+    }
+
+    private static void write(DataOutputStream out, byte kind, long period, String agent, double value, double value2) throws IOException {
+        out.writeByte(kind);
+        out.writeLong(period);
+        out.writeUTF(agent);
+        out.writeDouble(value);
+        out.writeDouble(value2);
+    }
+
+    /** keep latest snapshot of each agent
+     * @return number of complete records*/
+    private int read(Path path) throws IOException {
+        int records = 0;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while(true){
+                byte kind = in.readByte();
+                long p = in.readLong();
+                String agent = in.readUTF();
+                double value = in.readDouble(), value2 = in.readDouble();
+
+                Snapshot previous = restored.get(agent);
+                if(previous == null || previous.period <= p){
+                    restored.put(agent, new Snapshot(kind, p, value, value2));
+                }
+                period = Math.max(period, p);
+                ++records;
+            }
+        } catch (EOFException ex) {
+            return records; // end of file or incomplete last record
+        }
+    }
+}
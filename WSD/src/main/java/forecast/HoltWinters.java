@@ -0,0 +1,71 @@
+package forecast;
+
+/** additive Holt-Winters forecast of one series - level, trend and season of {@link #SEASON} periods (one day),
+ * each finished period updates it in O(1), with beta = gamma = 0 it is plain EWMA,
+ * parameters are taken from wsd.forecast property (alpha,beta,gamma, default 0.5,0.1,0.1) and season length from
+ * wsd.season (number of periods per day, default 96 - quarter-hour periods)
+ * */
+public final class HoltWinters {
+
+    /** number of periods of season */
+    public static final int SEASON = Math.max(1, Integer.getInteger("wsd.season", 96));
+
+    private static final double[] PARAMETERS = parameters(System.getProperty("wsd.forecast", "0.5,0.1,0.1"));
+
+    private final double alpha, beta, gamma;
+    private final double[] season;
+    private double level, trend, forecast = Double.NaN;
+    private long observed;
+
+    /** forecast with parameters and season length of this JVM */
+    public HoltWinters(){
+        this(PARAMETERS[0], PARAMETERS[1], PARAMETERS[2], SEASON);
+    }
+
+    /** @param alpha smoothing of level
+     * @param beta smoothing of trend
+     * @param gamma smoothing of season
+     * @param seasonLength number of periods of season*/
+    public HoltWinters(double alpha, double beta, double gamma, int seasonLength){
+        this.alpha = alpha;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.season = new double[Math.max(1, seasonLength)];
+    }
+
+    /** update forecast with value of finished period
+     * @param actual value of period
+     * @return absolute error of forecast of this period (0 for first period)*/
+    public double observe(double actual){
+        double error = Double.isNaN(forecast) ? 0 : Math.abs(actual - forecast);
+        int s = (int) (observed % season.length);
+
+        if(observed == 0){
+            level = actual;
+        } else {
+            double previous = level;
+            level = alpha * (actual - season[s]) + (1 - alpha) * (level + trend);
+            trend = beta * (level - previous) + (1 - beta) * trend;
+            season[s] = gamma * (actual - level) + (1 - gamma) * season[s];
+        }
+
+        ++observed;
+        forecast = level + trend + season[(int) (observed % season.length)];
+        return error;
+    }
+
+    /** @param fallback value returned before first observed period
+     * @return forecast of next period*/
+    public double forecast(double fallback){
+        return Double.isNaN(forecast) ? fallback : forecast;
+    }
+
+    private static double[] parameters(String value){
+        String[] parts = value.split(",");
+        double[] parameters = {0.5, 0.1, 0.1};
+        for(int i = 0; i < parts.length && i < parameters.length; ++i){
+            parameters[i] = Double.parseDouble(parts[i].trim());
+        }
+        return parameters;
+    }
+}
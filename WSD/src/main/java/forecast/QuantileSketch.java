@@ -0,0 +1,100 @@
+package forecast;
+
+import java.util.Arrays;
+
+/** streaming estimate of one quantile (P-square algorithm of Jain and Chlamtac) - five markers kept in primitive
+ * arrays, each value updates them in O(1) without storing values
+ * */
+public final class QuantileSketch {
+
+    private final double quantile;
+    private final double[] heights = new double[5], desired = new double[5], increments;
+    private final int[] positions = new int[5];
+    private long count;
+
+    /** @param quantile estimated quantile from (0, 1)*/
+    public QuantileSketch(double quantile){
+        this.quantile = quantile;
+        this.increments = new double[]{0, quantile / 2, quantile, (1 + quantile) / 2, 1};
+    }
+
+    /** @param value next value*/
+    public void add(double value){
+        if(count < 5){ // first values are markers
+            heights[(int) count++] = value;
+            if(count == 5){
+                Arrays.sort(heights);
+                for(int i = 0; i < 5; ++i){
+                    positions[i] = i;
+                    desired[i] = 4 * increments[i];
+                }
+            }
+            return;
+        }
+        ++count;
+
+        int k; // cell of value
+        if(value < heights[0]){
+            heights[0] = value;
+            k = 0;
+        } else if(value >= heights[4]){
+            heights[4] = Math.max(heights[4], value);
+            k = 3;
+        } else {
+            k = 0;
+            while(value >= heights[k + 1]){
+                ++k;
+            }
+        }
+
+        for(int i = k + 1; i < 5; ++i){
+            ++positions[i];
+        }
+        for(int i = 0; i < 5; ++i){
+            desired[i] += increments[i];
+        }
+
+        for(int i = 1; i < 4; ++i){ // move middle markers towards their desired positions
+            double d = desired[i] - positions[i];
+            if((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)){
+                int s = d > 0 ? 1 : -1;
+                double h = parabolic(i, s);
+                if(heights[i - 1] < h && h < heights[i + 1]){
+                    heights[i] = h;
+                } else {
+                    heights[i] += s * (heights[i + s] - heights[i]) / (positions[i + s] - positions[i]);
+                }
+                positions[i] += s;
+            }
+        }
+    }
+
+    /** @return true when estimate is based on at least five values*/
+    public boolean isReady(){
+        return count >= 5;
+    }
+
+    /** @return number of values*/
+    public long getCount(){
+        return count;
+    }
+
+    /** @return estimated quantile (nearest of values for less than five values, 0 without values)*/
+    public double getQuantile(){
+        if(count == 0){
+            return 0;
+        }
+        if(count < 5){
+            double[] values = Arrays.copyOf(heights, (int) count);
+            Arrays.sort(values);
+            return values[(int) Math.min(count - 1, Math.round(quantile * (count - 1)))];
+        }
+        return heights[2];
+    }
+
+    private double parabolic(int i, int s){
+        double left = positions[i] - positions[i - 1], right = positions[i + 1] - positions[i];
+        return heights[i] + s / (double) (positions[i + 1] - positions[i - 1])
+                * ((left + s) * (heights[i + 1] - heights[i]) / right + (right - s) * (heights[i] - heights[i - 1]) / left);
+    }
+}
@@ -0,0 +1,85 @@
+package journal;
+
+/** fixed schema of journal records - each event has agent, optional peer and reference names and two numbers,
+ * format gives the same text agents used to log
+ * */
+public enum Event {
+
+    /* building */
+    CONSUMER_CANCELED((p, r, v, w) -> "canceling consumer - " + p),
+    BATTERY_REGISTERED((p, r, v, w) -> "registering battery - " + p),
+    BATTERY_CAPACITY((p, r, v, w) -> "current battery capacity - " + v + " (" + r + ")"),
+    CONSUMER_ACCEPTED((p, r, v, w) -> "accepting consumer - " + p),
+    MEDIUM_SENT((p, r, v, w) -> "medium sent to consumers"),
+    OFFER_RECEIVED((p, r, v, w) -> "received offer from " + p + " - " + r + ";" + v),
+    SUPPLY_PLAN((p, r, v, w) -> "preparing supply plan"),
+    NEGOTIATIONS_IN_PROGRESS((p, r, v, w) -> "negotiations in progress"),
+    BATTERY_CHECK((p, r, v, w) -> "checking battery state"),
+    ORDERS_SENT((p, r, v, w) -> "sending orders to markets"),
+    NEGOTIATIONS_STARTED((p, r, v, w) -> "starting negotiations"),
+    MEDIUM_RESERVED((p, r, v, w) -> "reserving medium for " + p + " - " + v),
+    MEDIUM_OFFERED((p, r, v, w) -> p + " send medium - " + v + ", price - " + w),
+    RESERVATION_LEFT((p, r, v, w) -> p + " reserved medium - " + v),
+    MEDIUM_RETURNED((p, r, v, w) -> p + " returned medium - " + v),
+    OFFERS_SELECTED((p, r, v, w) -> "selecting offers"),
+    SENDING_MEDIUM((p, r, v, w) -> "sending medium to consumers"),
+    PROVIDER_DEMAND((p, r, v, w) -> "sending demand to provider " + r + " " + v),
+    MEDIUM_BOUGHT((p, r, v, w) -> "bought medium - " + v + ", price - " + w),
+    MEDIUM_SOLD((p, r, v, w) -> "sold medium - " + v + ", price - " + w),
+
+    /* battery */
+    INFORMING_BUILDING((p, r, v, w) -> "informing " + p + " of state and capacity"),
+    CHARGING((p, r, v, w) -> "charging up - " + v),
+    RESERVING_FOR_BUILDING((p, r, v, w) -> "reserving medium for my building"),
+    RESERVING_FOR_OTHER((p, r, v, w) -> "reserving medium for other building"),
+    REFUSED(true, (p, r, v, w) -> p + " won't get anything from me"),
+    CAPACITY_INCREASED((p, r, v, w) -> "capacity increased by " + v),
+
+    /* consumer */
+    PROVIDER_CHANGED((p, r, v, w) -> "changing provider to - " + r),
+    SUPPLY_RECEIVED((p, r, v, w) -> "received supply, current demand - " + v),
+    CHARGING_DEMAND((p, r, v, w) -> "need more medium for car charging - " + v),
+    ACTUAL_DEMAND((p, r, v, w) -> "actual demand - " + v),
+    BATTERY_FOUND((p, r, v, w) -> "my battery " + p),
+    PRICES((p, r, v, w) -> "battery price = " + v + ", provider price " + w),
+    SHORTAGE_FROM_BATTERY((p, r, v, w) -> "getting shortage from battery"),
+    SHORTAGE_FROM_PROVIDER((p, r, v, w) -> "getting shortage from provider"),
+    PROVIDER_NEEDED((p, r, v, w) -> "need " + v + " medium from " + r),
+
+    /* dispatch (building and battery, appended because journal stores ordinal) */
+    SETPOINT_RECEIVED((p, r, v, w) -> "battery setpoint - " + v),
+
+    /* building (appended) */
+    OFFER_FORECAST((p, r, v, w) -> "offer of " + p + " missing, forecast demand - " + v);
+
+    /** text of event */
+    interface Format {
+        String format(String peer, String ref, double value, double value2);
+    }
+
+    private final boolean warning;
+    private final Format format;
+
+    Event(Format format){
+        this(false, format);
+    }
+
+    Event(boolean warning, Format format){
+        this.warning = warning;
+        this.format = format;
+    }
+
+    /** @return true for WARN level, INFO otherwise*/
+    public boolean isWarning() {
+        return warning;
+    }
+
+    /** @param peer name of other agent (may be null)
+     * @param ref other name, e.g. provider or battery state (may be null)
+     * @param value first number
+     * @param value2 second number
+     * @return log message*/
+    public String format(String peer, String ref, double value, double value2){
+        return format.format(peer, ref, value, value2);
+    }
+}
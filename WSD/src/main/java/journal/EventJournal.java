@@ -0,0 +1,220 @@
+package journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/** binary event journal of this JVM (enabled by -Dwsd.journal=file) - agents put fixed size records to in-memory
+ * ring without locks, background thread copies them to memory-mapped ring file, names (agents, providers) go once
+ * to file.names, records are decoded to text by {@link JournalDecoder},
+ * file layout (big-endian):
+ * <pre>
+ * header - int magic, int record size, int capacity (records), int unused, long written (records)
+ * record - long time, int event, int agent, int peer, int ref, double value, double value2
+ * </pre>
+ * record number n is stored at HEADER + (n % capacity) * RECORD, so file keeps last capacity records,
+ * when agents are faster than writer, records are dropped (and counted) instead of stopping agents
+ * */
+public class EventJournal {
+
+    static final int MAGIC = 0x57534445, HEADER = 24, RECORD = 40, WRITTEN = 16;
+    /** name id of missing peer or reference */
+    static final int NONE = -1;
+
+    private static final EventJournal shared = open();
+
+    private final MappedByteBuffer file;
+    private final int fileCapacity;
+    private final BufferedWriter names;
+    private final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextName = new AtomicInteger();
+
+    /* in-memory ring, slot i holds record number published[i] - 1 */
+    private final int mask;
+    private final long[] times;
+    private final int[] events, agents, peers, refs;
+    private final double[] values, values2;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private Logger logger = LoggerFactory.getLogger("journal");
+
+    /** @param path journal file (overwritten)
+     * @param fileCapacity number of records kept in file
+     * @param bufferCapacity number of records waiting for writer (rounded up to power of two)
+     * @throws IOException when file can't be created*/
+    public EventJournal(Path path, int fileCapacity, int bufferCapacity) throws IOException {
+        this.fileCapacity = fileCapacity;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            file = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) fileCapacity * RECORD);
+        }
+        file.putInt(0, MAGIC);
+        file.putInt(4, RECORD);
+        file.putInt(8, fileCapacity);
+        file.putLong(WRITTEN, 0);
+
+        names = Files.newBufferedWriter(namesOf(path), StandardCharsets.UTF_8);
+
+        int capacity = Integer.highestOneBit(Math.max(2, bufferCapacity - 1)) << 1;
+        mask = capacity - 1;
+        times = new long[capacity];
+        events = new int[capacity];
+        agents = new int[capacity];
+        peers = new int[capacity];
+        refs = new int[capacity];
+        values = new double[capacity];
+        values2 = new double[capacity];
+        published = new AtomicLongArray(capacity);
+
+        writer = new Thread(this::write, "event-journal");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    private static EventJournal open(){
+        String path = System.getProperty("wsd.journal");
+        if(path == null){
+            return null;
+        }
+        try {
+            return new EventJournal(Paths.get(path), Integer.getInteger("wsd.journalRecords", 1 << 20), 1 << 16);
+        } catch (IOException ex) {
+            LoggerFactory.getLogger("journal").warn("journal " + path + " not opened, logging as text - " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /** @return journal of this JVM, null if journal isn't enabled*/
+    public static EventJournal shared(){
+        return shared;
+    }
+
+    static Path namesOf(Path path){
+        return Paths.get(path.toString() + ".names");
+    }
+
+    /** @param name agent or other name, null for none
+     * @return id of name in journal*/
+    public int name(String name){
+        if(name == null){
+            return NONE;
+        }
+        Integer id = nameIds.get(name);
+        return id != null ? id : nameIds.computeIfAbsent(name, this::newName);
+    }
+
+    private int newName(String name){
+        int id = nextName.getAndIncrement();
+        synchronized (names){
+            try {
+                names.write(id + ";" + name);
+                names.newLine();
+                names.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return id;
+    }
+
+    /** put record to ring, never blocks (record is dropped if writer is too far behind)*/
+    public void record(Event event, int agent, int peer, int ref, double value, double value2){
+        long n;
+        do {
+            n = claimed.get();
+            if(n - consumed > mask){
+                dropped.increment();
+                return;
+            }
+        } while(!claimed.compareAndSet(n, n + 1));
+
+        int i = (int) (n & mask);
+        times[i] = System.currentTimeMillis();
+        events[i] = event.ordinal();
+        agents[i] = agent;
+        peers[i] = peer;
+        refs[i] = ref;
+        values[i] = value;
+        values2[i] = value2;
+        published.lazySet(i, n + 1);
+    }
+
+    /** @return number of records dropped because writer was behind*/
+    public long getDropped(){
+        return dropped.sum();
+    }
+
+    private void write(){
+        while(true){
+            long n = consumed;
+            int i = (int) (n & mask);
+            if(published.get(i) == n + 1){
+                int offset = HEADER + (int) (n % fileCapacity) * RECORD;
+                file.putLong(offset, times[i]);
+                file.putInt(offset + 8, events[i]);
+                file.putInt(offset + 12, agents[i]);
+                file.putInt(offset + 16, peers[i]);
+                file.putInt(offset + 20, refs[i]);
+                file.putDouble(offset + 24, values[i]);
+                file.putDouble(offset + 32, values2[i]);
+                consumed = n + 1;
+                if((n & 0xff) == 0xff){ // don't touch header each record
+                    file.putLong(WRITTEN, n + 1);
+                }
+            } else {
+                file.putLong(WRITTEN, n);
+                if(!running){
+                    return;
+                }
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    /** write records waiting in ring and flush file */
+    public void close(){
+        if(!running){
+            return;
+        }
+        running = false;
+        try {
+            writer.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        file.force();
+        synchronized (names){
+            try {
+                names.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if(getDropped() > 0){
+            logger.warn(getDropped() + " journal records dropped");
+        }
+    }
+}
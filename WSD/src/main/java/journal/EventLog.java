@@ -0,0 +1,66 @@
+package journal;
+
+import jade.core.AID;
+import org.slf4j.Logger;
+
+/** events of single agent - go to {@link EventJournal} when it is enabled, otherwise they are formatted and logged as
+ * before, but only when agent's logger level lets them through
+ * */
+public class EventLog {
+
+    private final Logger logger;
+    private final EventJournal journal = EventJournal.shared();
+    private final int agent;
+
+    /** @param agentName local name of agent
+     * @param logger agent's logger*/
+    public EventLog(String agentName, Logger logger){
+        this.logger = logger;
+        this.agent = journal == null ? EventJournal.NONE : journal.name(agentName);
+    }
+
+    public void event(Event event){
+        event(event, null, null, 0, 0);
+    }
+
+    public void event(Event event, double value){
+        event(event, null, null, value, 0);
+    }
+
+    public void event(Event event, double value, double value2){
+        event(event, null, null, value, value2);
+    }
+
+    public void event(Event event, AID peer){
+        event(event, peer, null, 0, 0);
+    }
+
+    public void event(Event event, AID peer, double value){
+        event(event, peer, null, value, 0);
+    }
+
+    public void event(Event event, AID peer, double value, double value2){
+        event(event, peer, null, value, value2);
+    }
+
+    public void event(Event event, String ref, double value){
+        event(event, null, ref, value, 0);
+    }
+
+    /** @param event type of event
+     * @param peer other agent (may be null)
+     * @param ref other name, e.g. provider (may be null)
+     * @param value first number
+     * @param value2 second number*/
+    public void event(Event event, AID peer, String ref, double value, double value2){
+        if(journal != null){
+            journal.record(event, agent, journal.name(peer == null ? null : peer.getLocalName()), journal.name(ref), value, value2);
+        } else if(event.isWarning()){
+            if(logger.isWarnEnabled()){
+                logger.warn(event.format(peer == null ? null : peer.getLocalName(), ref, value, value2));
+            }
+        } else if(logger.isInfoEnabled()){
+            logger.info(event.format(peer == null ? null : peer.getLocalName(), ref, value, value2));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package journal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/** prints event journal as text in format of log4j.properties (date level agent: message),
+ * usage: journal.JournalDecoder file
+ * */
+public class JournalDecoder {
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("usage: journal.JournalDecoder file");
+            return;
+        }
+
+        Path path = Paths.get(args[0]);
+        Map<Integer, String> names = new HashMap<>();
+        for(String line : Files.readAllLines(EventJournal.namesOf(path), StandardCharsets.UTF_8)){
+            int separator = line.indexOf(';');
+            if(separator > 0){
+                names.put(Integer.parseInt(line.substring(0, separator)), line.substring(separator + 1));
+            }
+        }
+
+        ByteBuffer file;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if(file.getInt(0) != EventJournal.MAGIC || file.getInt(4) != EventJournal.RECORD){
+            System.err.println(args[0] + " is not event journal");
+            return;
+        }
+
+        int capacity = file.getInt(8);
+        long written = file.getLong(EventJournal.WRITTEN);
+        Event[] events = Event.values();
+        SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        for(long n = Math.max(0, written - capacity); n < written; ++n){ // oldest record still in file first
+            int offset = EventJournal.HEADER + (int) (n % capacity) * EventJournal.RECORD;
+            Event event = events[file.getInt(offset + 8)];
+
+            out.write(date.format(new Date(file.getLong(offset))));
+            out.write(event.isWarning() ? " WARN  " : " INFO  ");
+            out.write(names.get(file.getInt(offset + 12)));
+            out.write(": ");
+            out.write(event.format(names.get(file.getInt(offset + 16)), names.get(file.getInt(offset + 20)),
+                    file.getDouble(offset + 24), file.getDouble(offset + 32)));
+            out.newLine();
+        }
+        out.flush();
+    }
+}
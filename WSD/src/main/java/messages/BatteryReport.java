@@ -0,0 +1,28 @@
+package messages;
+
+/** state of building sent to dispatcher at start of period - predicted net load (production minus demand), charge and
+ * total capacity of it's battery (capacity 0 if building has no battery) and first estate of building
+ * */
+public class BatteryReport {
+    private final long period;
+    private final String estateId;
+    private final double net, charge, capacity;
+
+    public BatteryReport(long period, String estateId, double net, double charge, double capacity){
+        this.period = period;
+        this.estateId = estateId;
+        this.net = net;
+        this.charge = charge;
+        this.capacity = capacity;
+    }
+
+    public long getPeriod() { return period; }
+
+    public String getEstateId() { return estateId; }
+
+    public double getNet() { return net; }
+
+    public double getCharge() { return charge; }
+
+    public double getCapacity() { return capacity; }
+}
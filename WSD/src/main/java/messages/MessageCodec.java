@@ -0,0 +1,395 @@
+package messages;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/** fixed-layout content of OFFER, MEDIUM_NEEDED, SUPPLY, CHARGE_BATTERY, REQUEST_MEDIUM and other messages,
+ * binary layout (big-endian) starts with payload kind byte:
+ * <pre>
+ * QUANTITY - kind, double quantity                                      (SUPPLY, CHARGE_BATTERY, REQUEST_MEDIUM reply, DISPATCH setpoint)
+ * OFFER    - kind, double demand, short length, provider (UTF-8)
+ * MEDIUM   - kind, double quantity, double price, byte returned          (MEDIUM_NEEDED)
+ * REQUEST  - kind, double quantity, double price                        (REQUEST_MEDIUM)
+ * ORDER    - kind, double quantity, double price, byte bid               (MARKET_ORDER, MARKET_ALLOCATION)
+ * SUMMARY  - kind, long period, double net, double headroom, short count,
+ *            count times (short length, provider (UTF-8), double demand)  (SUMMARY)
+ * REPORT   - kind, long period, double net, double charge, double capacity,
+ *            short length, estate id (UTF-8)                             (DISPATCH report)
+ * CURVE    - kind, long version, byte state, double price LB,
+ *            double price UB, double max draw                            (GET_PRICE, refused REQUEST_MEDIUM)
+ * </pre>
+ * old ";"-delimited string content is still sent when system property wsd.codec=string and is always understood
+ * */
+public final class MessageCodec {
+
+    /** send binary content (default) or old string content */
+    public static final boolean BINARY = !"string".equals(System.getProperty("wsd.codec"));
+
+    private static final byte QUANTITY = 1, OFFER = 2, MEDIUM = 3, REQUEST = 4, ORDER = 5, SUMMARY = 6, REPORT = 7, CURVE = 8;
+    private static final int VALUE = 1, PRICE = 9, RETURNED = 17, BID = 17, PROVIDER = 9;
+    private static final int PERIOD = 1, NET = 9, HEADROOM = 17, PROVIDERS = 25;
+    private static final int CHARGE = 17, CAPACITY = 25, ESTATE = 33;
+    private static final int VERSION = 1, STATE = 9, LOWER = 10, UPPER = 18, MAX_DRAW = 26;
+    private static final String regex = ";";
+    private static final String ACTOR = "wsd-actor"; // user defined parameter with name of lightweight actor
+    private static final char ACTOR_SEPARATOR = '#';
+
+    private MessageCodec(){}
+
+    /** @param msg message to fill
+     * @param quantity amount of medium*/
+    public static void setQuantity(ACLMessage msg, double quantity){
+        if(BINARY){
+            byte[] b = new byte[9];
+            b[0] = QUANTITY;
+            putDouble(b, VALUE, quantity);
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(String.valueOf(quantity));
+        }
+    }
+
+    /** @param msg message to fill
+     * @param provider consumer's provider
+     * @param demand consumer's demand*/
+    public static void setOffer(ACLMessage msg, String provider, double demand){
+        if(BINARY){
+            byte[] p = provider.getBytes(StandardCharsets.UTF_8);
+            byte[] b = new byte[PROVIDER + 2 + p.length];
+            b[0] = OFFER;
+            putDouble(b, VALUE, demand);
+            b[PROVIDER] = (byte) (p.length >>> 8);
+            b[PROVIDER + 1] = (byte) p.length;
+            System.arraycopy(p, 0, b, PROVIDER + 2, p.length);
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(provider + regex + demand);
+        }
+    }
+
+    /** @param msg message to fill
+     * @param quantity amount of medium
+     * @param returned true if medium is being returned
+     * @param price price of medium*/
+    public static void setMedium(ACLMessage msg, double quantity, boolean returned, double price){
+        if(BINARY){
+            byte[] b = new byte[18];
+            b[0] = MEDIUM;
+            putDouble(b, VALUE, quantity);
+            putDouble(b, PRICE, price);
+            b[RETURNED] = (byte) (returned ? 1 : 0);
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(String.valueOf(quantity) + regex + returned + regex + price); // mediumAmount;isThisMediumBeingReturned;price
+        }
+    }
+
+    /** @param msg message to fill
+     * @param quantity requested amount of medium
+     * @param price accepted price of medium*/
+    public static void setRequest(ACLMessage msg, double quantity, double price){
+        if(BINARY){
+            byte[] b = new byte[17];
+            b[0] = REQUEST;
+            putDouble(b, VALUE, quantity);
+            putDouble(b, PRICE, price);
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(String.valueOf(quantity) + regex + price);
+        }
+    }
+
+    /** @param msg message to fill
+     * @param quantity amount of medium
+     * @param bid true for bid (buying), false for ask (selling)
+     * @param price price limit of order or clearing price of allocation*/
+    public static void setOrder(ACLMessage msg, double quantity, boolean bid, double price){
+        if(BINARY){
+            byte[] b = new byte[18];
+            b[0] = ORDER;
+            putDouble(b, VALUE, quantity);
+            putDouble(b, PRICE, price);
+            b[BID] = (byte) (bid ? 1 : 0);
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(String.valueOf(quantity) + regex + bid + regex + price); // quantity;isBid;price
+        }
+    }
+
+    /** @param msg message to fill
+     * @param summary period summary of building or estate*/
+    public static void setSummary(ACLMessage msg, Summary summary){
+        if(BINARY){
+            int length = PROVIDERS + 2;
+            byte[][] providers = new byte[summary.getProviderDemand().size()][];
+            double[] demands = new double[providers.length];
+            int i = 0;
+            for(Map.Entry<String, Double> d : summary.getProviderDemand().entrySet()){
+                providers[i] = d.getKey().getBytes(StandardCharsets.UTF_8);
+                demands[i] = d.getValue();
+                length += 2 + providers[i].length + 8;
+                ++i;
+            }
+
+            byte[] b = new byte[length];
+            b[0] = SUMMARY;
+            putLong(b, PERIOD, summary.getPeriod());
+            putDouble(b, NET, summary.getNet());
+            putDouble(b, HEADROOM, summary.getHeadroom());
+            b[PROVIDERS] = (byte) (providers.length >>> 8);
+            b[PROVIDERS + 1] = (byte) providers.length;
+            int offset = PROVIDERS + 2;
+            for(i = 0; i < providers.length; ++i){
+                b[offset] = (byte) (providers[i].length >>> 8);
+                b[offset + 1] = (byte) providers[i].length;
+                System.arraycopy(providers[i], 0, b, offset + 2, providers[i].length);
+                offset += 2 + providers[i].length;
+                putDouble(b, offset, demands[i]);
+                offset += 8;
+            }
+            msg.setByteSequenceContent(b);
+        } else {
+            StringBuilder content = new StringBuilder().append(summary.getPeriod()).append(regex).append(summary.getNet())
+                    .append(regex).append(summary.getHeadroom()); // period;net;headroom;provider;demand;...
+            for(Map.Entry<String, Double> d : summary.getProviderDemand().entrySet()){
+                content.append(regex).append(d.getKey()).append(regex).append(d.getValue());
+            }
+            msg.setContent(content.toString());
+        }
+    }
+
+    /** @param msg received SUMMARY message
+     * @return period summary of building or estate*/
+    public static Summary summary(ACLMessage msg){
+        Map<String, Double> providerDemand = new HashMap<>();
+        if(msg.hasByteSequenceContent()){
+            byte[] b = msg.getByteSequenceContent();
+            int count = ((b[PROVIDERS] & 0xff) << 8) | (b[PROVIDERS + 1] & 0xff);
+            int offset = PROVIDERS + 2;
+            for(int i = 0; i < count; ++i){
+                int length = ((b[offset] & 0xff) << 8) | (b[offset + 1] & 0xff);
+                String provider = new String(b, offset + 2, length, StandardCharsets.UTF_8);
+                offset += 2 + length;
+                providerDemand.put(provider, getDouble(b, offset));
+                offset += 8;
+            }
+            return new Summary(getLong(b, PERIOD), getDouble(b, NET), getDouble(b, HEADROOM), providerDemand);
+        }
+
+        String[] parts = msg.getContent().split(regex);
+        for(int i = 3; i + 1 < parts.length; i += 2){
+            providerDemand.put(parts[i], Double.parseDouble(parts[i + 1]));
+        }
+        return new Summary(Long.parseLong(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2]), providerDemand);
+    }
+
+    /** @param msg message to fill
+     * @param report state of building and it's battery*/
+    public static void setReport(ACLMessage msg, BatteryReport report){
+        if(BINARY){
+            byte[] e = report.getEstateId().getBytes(StandardCharsets.UTF_8);
+            byte[] b = new byte[ESTATE + 2 + e.length];
+            b[0] = REPORT;
+            putLong(b, PERIOD, report.getPeriod());
+            putDouble(b, NET, report.getNet());
+            putDouble(b, CHARGE, report.getCharge());
+            putDouble(b, CAPACITY, report.getCapacity());
+            b[ESTATE] = (byte) (e.length >>> 8);
+            b[ESTATE + 1] = (byte) e.length;
+            System.arraycopy(e, 0, b, ESTATE + 2, e.length);
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(report.getPeriod() + regex + report.getEstateId() + regex + report.getNet() + regex
+                    + report.getCharge() + regex + report.getCapacity()); // period;estate;net;charge;capacity
+        }
+    }
+
+    /** @param msg received DISPATCH report
+     * @return state of building and it's battery*/
+    public static BatteryReport report(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            byte[] b = msg.getByteSequenceContent();
+            int length = ((b[ESTATE] & 0xff) << 8) | (b[ESTATE + 1] & 0xff);
+            return new BatteryReport(getLong(b, PERIOD), new String(b, ESTATE + 2, length, StandardCharsets.UTF_8),
+                    getDouble(b, NET), getDouble(b, CHARGE), getDouble(b, CAPACITY));
+        }
+        String[] parts = msg.getContent().split(regex);
+        return new BatteryReport(Long.parseLong(parts[0]), parts[1], Double.parseDouble(parts[2]),
+                Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+    }
+
+    /** @param msg message to fill
+     * @param curve price curve of battery*/
+    public static void setCurve(ACLMessage msg, PriceCurve curve){
+        if(BINARY){
+            byte[] b = new byte[MAX_DRAW + 8];
+            b[0] = CURVE;
+            putLong(b, VERSION, curve.getVersion());
+            b[STATE] = (byte) curve.getState().ordinal();
+            putDouble(b, LOWER, curve.getPriceLB());
+            putDouble(b, UPPER, curve.getPriceUB());
+            putDouble(b, MAX_DRAW, curve.getMaxDraw());
+            msg.setByteSequenceContent(b);
+        } else {
+            msg.setContent(curve.getVersion() + regex + curve.getState() + regex + curve.getPriceLB() + regex
+                    + curve.getPriceUB() + regex + curve.getMaxDraw()); // version;state;priceLB;priceUB;maxDraw
+        }
+    }
+
+    /** @param msg received GET_PRICE message or refused REQUEST_MEDIUM
+     * @return price curve of battery*/
+    public static PriceCurve curve(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            byte[] b = msg.getByteSequenceContent();
+            return new PriceCurve(getLong(b, VERSION), BatteryState.values()[b[STATE]], getDouble(b, LOWER),
+                    getDouble(b, UPPER), getDouble(b, MAX_DRAW));
+        }
+        String[] parts = msg.getContent().split(regex);
+        return new PriceCurve(Long.parseLong(parts[0]), BatteryState.valueOf(parts[1]), Double.parseDouble(parts[2]),
+                Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+    }
+
+    /** tag request with version of price curve it was priced by (in-reply-to), battery refuses request of old version
+     * @param msg message to send
+     * @param version version of price curve*/
+    public static void setVersion(ACLMessage msg, long version){
+        msg.setInReplyTo(Long.toString(version));
+    }
+
+    /** @param msg received REQUEST_MEDIUM message
+     * @return version of price curve, -1 for request without version*/
+    public static long version(ACLMessage msg){
+        String version = msg.getInReplyTo();
+        return version == null ? -1 : Long.parseLong(version);
+    }
+
+    /** tag message with period it belongs to (conversation id), periods overlap when clock is pipelined
+     * @param msg message to send
+     * @param period period of message*/
+    public static void setPeriod(ACLMessage msg, long period){
+        msg.setConversationId(Long.toString(period));
+    }
+
+    /** @param msg received message
+     * @param current period used for message without tag
+     * @return period message belongs to*/
+    public static long period(ACLMessage msg, long current){
+        String id = msg.getConversationId();
+        return id == null ? current : Long.parseLong(id);
+    }
+
+    /** @param msg message sent by or to lightweight actor (through it's bridge agent)
+     * @param actor name of actor*/
+    public static void setActor(ACLMessage msg, String actor){
+        msg.addUserDefinedParameter(ACTOR, actor);
+    }
+
+    /** @param msg received message
+     * @return name of lightweight actor message is sent by or to, null for message of regular agent*/
+    public static String actor(ACLMessage msg){
+        return msg.getUserDefinedParameter(ACTOR);
+    }
+
+    /** @param msg received message
+     * @return sender of message, lightweight actor is addressed as bridge#actor*/
+    public static AID sender(ACLMessage msg){
+        String actor = actor(msg);
+        return actor == null ? msg.getSender() : new AID(msg.getSender().getLocalName() + ACTOR_SEPARATOR + actor, AID.ISLOCALNAME);
+    }
+
+    /** add receiver, message to lightweight actor goes to it's bridge (message carries single actor)
+     * @param msg message to send
+     * @param receiver agent or actor address (bridge#actor)*/
+    public static void addReceiver(ACLMessage msg, AID receiver){
+        String name = receiver.getLocalName();
+        int separator = name.indexOf(ACTOR_SEPARATOR);
+        if(separator < 0){
+            msg.addReceiver(receiver);
+        } else {
+            msg.addReceiver(new AID(name.substring(0, separator), AID.ISLOCALNAME));
+            setActor(msg, name.substring(separator + 1));
+        }
+    }
+
+    /** @param msg received message
+     * @return true if message carries any content (string or binary)*/
+    public static boolean hasContent(ACLMessage msg){
+        return msg.hasByteSequenceContent() || msg.getContent() != null;
+    }
+
+    /** @param msg received message
+     * @return amount of medium (demand in case of offer)*/
+    public static double quantity(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            return getDouble(msg.getByteSequenceContent(), VALUE);
+        }
+        String[] parts = msg.getContent().split(regex);
+        return Double.parseDouble(StatusType.OFFER.toString().equals(msg.getOntology()) ? parts[1] : parts[0]);
+    }
+
+    /** @param msg received MEDIUM_NEEDED, REQUEST_MEDIUM, MARKET_ORDER or MARKET_ALLOCATION message
+     * @return price of medium*/
+    public static double price(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            return getDouble(msg.getByteSequenceContent(), PRICE);
+        }
+        String[] parts = msg.getContent().split(regex);
+        return Double.parseDouble(parts.length == 3 ? parts[2] : parts[1]);
+    }
+
+    /** @param msg received MEDIUM_NEEDED message
+     * @return true if medium is being returned*/
+    public static boolean isReturned(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            return msg.getByteSequenceContent()[RETURNED] != 0;
+        }
+        return Boolean.valueOf(msg.getContent().split(regex)[1]);
+    }
+
+    /** @param msg received MARKET_ORDER or MARKET_ALLOCATION message
+     * @return true if order is bid (buying)*/
+    public static boolean isBid(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            return msg.getByteSequenceContent()[BID] != 0;
+        }
+        return Boolean.valueOf(msg.getContent().split(regex)[1]);
+    }
+
+    /** @param msg received OFFER message
+     * @return consumer's provider*/
+    public static String provider(ACLMessage msg){
+        if(msg.hasByteSequenceContent()){
+            byte[] b = msg.getByteSequenceContent();
+            int length = ((b[PROVIDER] & 0xff) << 8) | (b[PROVIDER + 1] & 0xff);
+            return new String(b, PROVIDER + 2, length, StandardCharsets.UTF_8);
+        }
+        return msg.getContent().split(regex)[0];
+    }
+
+    private static void putDouble(byte[] b, int offset, double value){
+        putLong(b, offset, Double.doubleToRawLongBits(value));
+    }
+
+    private static double getDouble(byte[] b, int offset){
+        return Double.longBitsToDouble(getLong(b, offset));
+    }
+
+    private static void putLong(byte[] b, int offset, long value){
+        for(int i = 7; i >= 0; --i){
+            b[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long getLong(byte[] b, int offset){
+        long bits = 0;
+        for(int i = 0; i < 8; ++i){
+            bits = (bits << 8) | (b[offset + i] & 0xff);
+        }
+        return bits;
+    }
+}
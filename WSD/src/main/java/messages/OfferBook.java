@@ -0,0 +1,212 @@
+package messages;
+
+import jade.core.AID;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** offers kept in primitive columns (row per offer) instead of list of {@link Offer} objects,
+ * agents are stored as int handles given by book (the same agent keeps handle between periods), each handle points to
+ * one of it's rows, so lookup of agent offer doesn't scan all rows, arrays are reused after {@link #clear()}
+ * */
+public final class OfferBook {
+
+    private static final int INITIAL_ROWS = 16;
+
+    /* handles of agents, stable for lifetime of book */
+    private final Map<AID, Integer> handles = new HashMap<>();
+    private AID[] agents = new AID[INITIAL_ROWS];
+    private int[] firstRow = new int[INITIAL_ROWS], rowsCount = new int[INITIAL_ROWS];
+
+    /* columns */
+    private int[] agent = new int[INITIAL_ROWS], order = new int[INITIAL_ROWS];
+    private String[] provider = new String[INITIAL_ROWS];
+    private double[] demand = new double[INITIAL_ROWS], price = new double[INITIAL_ROWS];
+    private int size;
+
+    public OfferBook(){
+        Arrays.fill(firstRow, -1);
+    }
+
+    /** add offer
+     * @param aid agent making offer
+     * @param provider provider of consumer (null for medium offers)
+     * @param demand amount of medium
+     * @param price price of medium
+     * @return row of offer*/
+    public int add(AID aid, String provider, double demand, double price){
+        if(size == agent.length){
+            int rows = size * 2;
+            agent = Arrays.copyOf(agent, rows);
+            order = Arrays.copyOf(order, rows);
+            this.provider = Arrays.copyOf(this.provider, rows);
+            this.demand = Arrays.copyOf(this.demand, rows);
+            this.price = Arrays.copyOf(this.price, rows);
+        }
+
+        int handle = handle(aid);
+        agent[size] = handle;
+        this.provider[size] = provider;
+        this.demand[size] = demand;
+        this.price[size] = price;
+
+        if(rowsCount[handle]++ == 0){
+            firstRow[handle] = size;
+        }
+        return size++;
+    }
+
+    /** @param aid agent
+     * @return row of agent offer or -1 if agent has no offer*/
+    public int find(AID aid){
+        Integer handle = handles.get(aid);
+        return handle == null ? -1 : firstRow[handle];
+    }
+
+    /** remove offer, last row takes it's place (order of rows is not kept)
+     * @param row row of offer*/
+    public void remove(int row){
+        int handle = agent[row], last = --size;
+        boolean indexed = firstRow[handle] == row;
+
+        if(row != last){
+            agent[row] = agent[last];
+            provider[row] = provider[last];
+            demand[row] = demand[last];
+            price[row] = price[last];
+            if(firstRow[agent[row]] == last){
+                firstRow[agent[row]] = row;
+            }
+        }
+        provider[last] = null;
+
+        if(--rowsCount[handle] == 0){
+            firstRow[handle] = -1;
+        } else if(indexed){ // agent has more offers (rare), find other one
+            for(int r = 0; r < size; ++r){
+                if(agent[r] == handle){
+                    firstRow[handle] = r;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** remove all offers of agent
+     * @param aid agent*/
+    public void remove(AID aid){
+        int row;
+        while((row = find(aid)) >= 0){
+            remove(row);
+        }
+    }
+
+    /** remove all offers, keeps arrays and handles for next period */
+    public void clear(){
+        for(int r = 0; r < size; ++r){
+            firstRow[agent[r]] = -1;
+            rowsCount[agent[r]] = 0;
+            provider[r] = null;
+        }
+        size = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public AID aid(int row){
+        return agents[agent[row]];
+    }
+
+    public String provider(int row){
+        return provider[row];
+    }
+
+    public double demand(int row){
+        return demand[row];
+    }
+
+    public double price(int row){
+        return price[row];
+    }
+
+    public void setDemand(int row, double demand){
+        this.demand[row] = demand;
+    }
+
+    /** @return sum of demand of all offers*/
+    public double totalDemand(){
+        double total = 0;
+        for(int r = 0; r < size; ++r){
+            total += demand[r];
+        }
+        return total;
+    }
+
+    /** @return rows sorted by price (ascending, first {@link #size()} elements are valid), array is reused by next call*/
+    public int[] byPrice(){
+        for(int r = 0; r < size; ++r){
+            order[r] = r;
+        }
+        sort(0, size - 1);
+        return order;
+    }
+
+    private int handle(AID aid){
+        Integer handle = handles.get(aid);
+        if(handle == null){
+            handle = handles.size();
+            handles.put(aid, handle);
+
+            if(handle == agents.length){
+                agents = Arrays.copyOf(agents, handle * 2);
+                firstRow = Arrays.copyOf(firstRow, handle * 2);
+                rowsCount = Arrays.copyOf(rowsCount, handle * 2);
+                Arrays.fill(firstRow, handle, firstRow.length, -1);
+            }
+            agents[handle] = aid;
+        }
+        return handle;
+    }
+
+    /* quicksort of order by price (insertion sort for short ranges) */
+    private void sort(int lo, int hi){
+        while(hi - lo > 16){
+            double pivot = price[order[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while(i <= j){
+                while(price[order[i]] < pivot) ++i;
+                while(price[order[j]] > pivot) --j;
+                if(i <= j){
+                    int t = order[i];
+                    order[i++] = order[j];
+                    order[j--] = t;
+                }
+            }
+            if(j - lo < hi - i){ // recurse into smaller part
+                sort(lo, j);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+
+        for(int i = lo + 1; i <= hi; ++i){
+            int row = order[i];
+            double p = price[row];
+            int j = i - 1;
+            while(j >= lo && price[order[j]] > p){
+                order[j + 1] = order[j];
+                --j;
+            }
+            order[j + 1] = row;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package messages;
+
+/** phases of period broadcast by clock, offset is latest start of phase as part of period length
+ * */
+public enum Phase {
+    /** buildings predict production and ask batteries for state, consumers send offers */
+    PREDICT(0),
+    /** buildings create supply plan with offers they have */
+    OFFERS_DUE(0.25),
+    /** buildings send medium to consumers and batteries */
+    SETTLE(0.4),
+    /** agents clean state before next period */
+    CLEANUP(0.45);
+
+    private final double offset;
+
+    Phase(double offset){
+        this.offset = offset;
+    }
+
+    public double getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,42 @@
+package messages;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** price curve battery publishes to it's consumers once per period - state band, price bounds of band and maximum
+ * medium of one request, version changes with band, so that consumer requests medium without asking for price first
+ * */
+public class PriceCurve {
+    private final long version;
+    private final BatteryState state;
+    private final double priceLB, priceUB, maxDraw;
+
+    public PriceCurve(long version, BatteryState state, double priceLB, double priceUB, double maxDraw){
+        this.version = version;
+        this.state = state;
+        this.priceLB = priceLB;
+        this.priceUB = priceUB;
+        this.maxDraw = maxDraw;
+    }
+
+    public long getVersion() { return version; }
+
+    public BatteryState getState() { return state; }
+
+    public double getPriceLB() { return priceLB; }
+
+    public double getPriceUB() { return priceUB; }
+
+    public double getMaxDraw() { return maxDraw; }
+
+    /** @return random price from range [priceLB, priceUB) (priceLB when bounds are equal)*/
+    public double price(){
+        return price(ThreadLocalRandom.current());
+    }
+
+    /** @param random random of prices (seeded one in headless simulation)
+     * @return random price from range [priceLB, priceUB) (priceLB when bounds are equal)*/
+    public double price(Random random){
+        return priceLB + random.nextDouble() * (priceUB - priceLB);
+    }
+}
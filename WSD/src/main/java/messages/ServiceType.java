@@ -3,4 +3,7 @@ public enum ServiceType {
     BUILDING, // used to search for all buildings in directory facilitator
     BATTERY, // used to search for all batteries in directory facilitator
     CONSUMER, // not used (only to createAgents in AgentCreator to avoid unnecessary if statement)
+    MARKET, // used to search for estate market (service name is estate id)
+    AGGREGATOR, // estate and city aggregators (found by local name, not registered in DF)
+    DISPATCHER, // battery dispatcher of city (found by local name, not registered in DF)
 }
\ No newline at end of file
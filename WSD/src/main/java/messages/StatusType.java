@@ -21,10 +21,24 @@ public enum StatusType {
     SUPPLY,
     /** main protocol for negotiations between buildings to get medium shortages */
     MEDIUM_NEEDED,
-    /** consumer asks battery for medium price */
+    /** consumer subscribes to price curve of battery, battery publishes curve once per period */
     GET_PRICE,
     /** consumer requests medium from battery */
     REQUEST_MEDIUM,
     /** consumer charges car from battery */
     CONSUMER_CHARGING,
+    /** building sends bid or ask to estate market */
+    MARKET_ORDER,
+    /** estate market informs building of medium bought or sold */
+    MARKET_ALLOCATION,
+    /** agent asks clock for phase events */
+    SUBSCRIBE_CLOCK,
+    /** clock informs agents of new phase of period */
+    PHASE,
+    /** building informs clock that it finished phase */
+    PHASE_DONE,
+    /** building sends period summary to estate aggregator, estate aggregator sends residual to city aggregator */
+    SUMMARY,
+    /** building reports predicted net load and battery state to dispatcher, dispatcher sends battery setpoint to building, building passes it to battery */
+    DISPATCH,
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package messages;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** period roll-up of building, estate or city - net surplus (negative for deficit), free capacity of batteries and
+ * demand left for each provider
+ * */
+public class Summary {
+    private final long period;
+    private double net, headroom;
+    private final Map<String, Double> providerDemand;
+
+    public Summary(long period, double net, double headroom, Map<String, Double> providerDemand){
+        this.period = period;
+        this.net = net;
+        this.headroom = headroom;
+        this.providerDemand = providerDemand;
+    }
+
+    /** empty summary of period
+     * @param period period of summary*/
+    public Summary(long period){
+        this(period, 0, 0, new HashMap<>());
+    }
+
+    /** net other summary into this one
+     * @param other summary of building or estate*/
+    public void add(Summary other){
+        net += other.net;
+        headroom += other.headroom;
+        for(Map.Entry<String, Double> d : other.providerDemand.entrySet()){
+            providerDemand.merge(d.getKey(), d.getValue(), Double::sum);
+        }
+    }
+
+    public long getPeriod() { return period; }
+
+    public double getNet() { return net; }
+
+    public double getHeadroom() { return headroom; }
+
+    public Map<String, Double> getProviderDemand() { return providerDemand; }
+}
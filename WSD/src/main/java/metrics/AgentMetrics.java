@@ -0,0 +1,120 @@
+package metrics;
+
+import jade.lang.acl.ACLMessage;
+import messages.StatusType;
+import org.slf4j.LoggerFactory;
+import utils.OntologyDispatcher;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** metrics shared by all agents of one type in this JVM, registered in platform MBean server as wsd:type=&lt;type&gt;,
+ * values of last period are kept when first agent sees next period
+ * */
+public abstract class AgentMetrics implements AgentMetricsMXBean {
+
+    private final LongAdder[] sent = new LongAdder[StatusType.values().length], received = new LongAdder[StatusType.values().length];
+    private final LongAdder notUnderstood = new LongAdder();
+    private final AtomicLong period = new AtomicLong();
+
+    /** absolute error of agents' forecasts of finished periods (demand of consumers and buildings, draw of batteries) */
+    public final PeriodSum forecastError = new PeriodSum();
+
+    protected AgentMetrics(){
+        for(int i = 0; i < sent.length; ++i){
+            sent[i] = new LongAdder();
+            received[i] = new LongAdder();
+        }
+    }
+
+    /** @param metrics metrics to register
+     * @param type agent type, name of MBean
+     * @return registered metrics*/
+    static <T extends AgentMetrics> T register(T metrics, String type){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("wsd:type=" + type));
+        } catch (JMException ex) {
+            LoggerFactory.getLogger("metrics").warn("metrics of " + type + " not registered - " + ex.getMessage());
+        }
+        return metrics;
+    }
+
+    /** count message before sending it
+     * @param msg message to send
+     * @return the same message*/
+    public ACLMessage sent(ACLMessage msg){
+        StatusType st = msg.getOntology() == null ? null : OntologyDispatcher.ontology(msg.getOntology());
+        if(st != null){
+            sent[st.ordinal()].increment();
+        }
+        return msg;
+    }
+
+    /** @param ontology ontology of handled message*/
+    public void received(StatusType ontology){
+        received[ontology.ordinal()].increment();
+    }
+
+    public void notUnderstood(){
+        notUnderstood.increment();
+    }
+
+    /** agent got phase of given period, finishes previous period if it is the first agent to see this one
+     * @param period period started by clock*/
+    public void period(long period){
+        long current = this.period.get();
+        if(period > current && this.period.compareAndSet(current, period)){
+            forecastError.roll();
+            roll();
+        }
+    }
+
+    /** finish per period values */
+    protected abstract void roll();
+
+    @Override
+    public long getPeriod() {
+        return period.get();
+    }
+
+    @Override
+    public Map<String, Long> getSent() {
+        return counts(sent);
+    }
+
+    @Override
+    public Map<String, Long> getReceived() {
+        return counts(received);
+    }
+
+    @Override
+    public long getNotUnderstood() {
+        return notUnderstood.sum();
+    }
+
+    @Override
+    public double getForecastError() {
+        return forecastError.getLast();
+    }
+
+    @Override
+    public double getForecastErrorTotal() {
+        return forecastError.getTotal();
+    }
+
+    private static Map<String, Long> counts(LongAdder[] counters){
+        Map<String, Long> counts = new TreeMap<>();
+        for(StatusType st : StatusType.values()){
+            long c = counters[st.ordinal()].sum();
+            if(c > 0){
+                counts.put(st.toString(), c);
+            }
+        }
+        return counts;
+    }
+}
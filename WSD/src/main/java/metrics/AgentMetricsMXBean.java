@@ -0,0 +1,25 @@
+package metrics;
+
+import java.util.Map;
+
+/** metrics common for every agent type */
+public interface AgentMetricsMXBean {
+
+    /** @return last period started by clock*/
+    long getPeriod();
+
+    /** @return messages sent by agents of this type per ontology*/
+    Map<String, Long> getSent();
+
+    /** @return messages handled by agents of this type per ontology*/
+    Map<String, Long> getReceived();
+
+    /** @return messages without known ontology or handler*/
+    long getNotUnderstood();
+
+    /** @return sum of absolute forecast errors in last finished period*/
+    double getForecastError();
+
+    /** @return sum of absolute forecast errors of all periods*/
+    double getForecastErrorTotal();
+}
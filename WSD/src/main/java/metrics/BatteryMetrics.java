@@ -0,0 +1,62 @@
+package metrics;
+
+import messages.BatteryState;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** metrics of all batteries in this JVM */
+public class BatteryMetrics extends AgentMetrics implements BatteryMetricsMXBean {
+
+    private static final int STATES = BatteryState.values().length; // before shared instance is created
+    private static final BatteryMetrics shared = register(new BatteryMetrics(), "Battery");
+
+    private final LongAdder[] transitions = new LongAdder[STATES * STATES];
+    private final LongAdder periodTransitions = new LongAdder();
+    private volatile long lastPeriodTransitions;
+
+    private BatteryMetrics(){
+        for(int i = 0; i < transitions.length; ++i){
+            transitions[i] = new LongAdder();
+        }
+    }
+
+    /** @return metrics shared by batteries in this JVM*/
+    public static BatteryMetrics shared(){
+        return shared;
+    }
+
+    /** @param from previous state (null before first update)
+     * @param to new state*/
+    public void stateChanged(BatteryState from, BatteryState to){
+        if(from != null && from != to){
+            transitions[from.ordinal() * STATES + to.ordinal()].increment();
+            periodTransitions.increment();
+        }
+    }
+
+    @Override
+    protected void roll() {
+        lastPeriodTransitions = periodTransitions.sumThenReset();
+    }
+
+    @Override
+    public Map<String, Long> getStateTransitions() {
+        Map<String, Long> counts = new TreeMap<>();
+        for(BatteryState from : BatteryState.values()){
+            for(BatteryState to : BatteryState.values()){
+                long c = transitions[from.ordinal() * STATES + to.ordinal()].sum();
+                if(c > 0){
+                    counts.put(from + "->" + to, c);
+                }
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public long getStateTransitionsLastPeriod() {
+        return lastPeriodTransitions;
+    }
+}
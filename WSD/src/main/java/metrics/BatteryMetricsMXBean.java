@@ -0,0 +1,13 @@
+package metrics;
+
+import java.util.Map;
+
+/** metrics of batteries */
+public interface BatteryMetricsMXBean extends AgentMetricsMXBean {
+
+    /** @return changes of battery state in all periods, e.g. STORE_MEDIUM-&gt;SEND_MEDIUM*/
+    Map<String, Long> getStateTransitions();
+
+    /** @return number of battery state changes in last period*/
+    long getStateTransitionsLastPeriod();
+}
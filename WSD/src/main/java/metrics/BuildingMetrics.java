@@ -0,0 +1,58 @@
+package metrics;
+
+/** metrics of all buildings in this JVM */
+public class BuildingMetrics extends AgentMetrics implements BuildingMetricsMXBean {
+
+    private static final BuildingMetrics shared = register(new BuildingMetrics(), "Building");
+
+    public final Histogram offerLatency = new Histogram(), supplyPlanDelay = new Histogram(), negotiationRoundTrip = new Histogram();
+    public final PeriodSum returnedMedium = new PeriodSum(), forecastOffers = new PeriodSum();
+
+    private BuildingMetrics(){}
+
+    /** @return metrics shared by buildings in this JVM*/
+    public static BuildingMetrics shared(){
+        return shared;
+    }
+
+    @Override
+    protected void roll() {
+        returnedMedium.roll();
+        forecastOffers.roll();
+    }
+
+    @Override
+    public Histogram getOfferLatency() {
+        return offerLatency;
+    }
+
+    @Override
+    public Histogram getSupplyPlanDelay() {
+        return supplyPlanDelay;
+    }
+
+    @Override
+    public Histogram getNegotiationRoundTrip() {
+        return negotiationRoundTrip;
+    }
+
+    @Override
+    public double getReturnedMedium() {
+        return returnedMedium.getLast();
+    }
+
+    @Override
+    public double getReturnedMediumTotal() {
+        return returnedMedium.getTotal();
+    }
+
+    @Override
+    public double getForecastOffers() {
+        return forecastOffers.getLast();
+    }
+
+    @Override
+    public double getForecastOffersTotal() {
+        return forecastOffers.getTotal();
+    }
+}
@@ -0,0 +1,26 @@
+package metrics;
+
+/** metrics of buildings */
+public interface BuildingMetricsMXBean extends AgentMetricsMXBean {
+
+    /** @return time from start of period to arrival of consumer offer (ms)*/
+    Histogram getOfferLatency();
+
+    /** @return time from first offer to start of supply plan (ms)*/
+    Histogram getSupplyPlanDelay();
+
+    /** @return time from asking neighbours or markets for medium to getting all answers (ms)*/
+    Histogram getNegotiationRoundTrip();
+
+    /** @return medium returned to other buildings in selectOffers in last period*/
+    double getReturnedMedium();
+
+    /** @return medium returned to other buildings in selectOffers in all periods*/
+    double getReturnedMediumTotal();
+
+    /** @return consumer offers replaced with forecast demand (offer window closed before they came) in last period*/
+    double getForecastOffers();
+
+    /** @return consumer offers replaced with forecast demand in all periods*/
+    double getForecastOffersTotal();
+}
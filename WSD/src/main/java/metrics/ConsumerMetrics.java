@@ -0,0 +1,31 @@
+package metrics;
+
+/** metrics of all consumers in this JVM */
+public class ConsumerMetrics extends AgentMetrics implements ConsumerMetricsMXBean {
+
+    private static final ConsumerMetrics shared = register(new ConsumerMetrics(), "Consumer");
+
+    public final PeriodSum unmetDemand = new PeriodSum();
+
+    private ConsumerMetrics(){}
+
+    /** @return metrics shared by consumers in this JVM*/
+    public static ConsumerMetrics shared(){
+        return shared;
+    }
+
+    @Override
+    protected void roll() {
+        unmetDemand.roll();
+    }
+
+    @Override
+    public double getUnmetDemand() {
+        return unmetDemand.getLast();
+    }
+
+    @Override
+    public double getUnmetDemandTotal() {
+        return unmetDemand.getTotal();
+    }
+}
@@ -0,0 +1,11 @@
+package metrics;
+
+/** metrics of consumers */
+public interface ConsumerMetricsMXBean extends AgentMetricsMXBean {
+
+    /** @return demand left for providers (not covered by buildings and batteries) in last period*/
+    double getUnmetDemand();
+
+    /** @return demand left for providers in all periods*/
+    double getUnmetDemandTotal();
+}
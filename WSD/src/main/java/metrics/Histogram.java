@@ -0,0 +1,70 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** latency histogram (milliseconds) with power of two buckets, agents of all containers can record at the same time,
+ * percentiles are upper bounds of buckets
+ * */
+public class Histogram {
+
+    /** bucket i holds values from 2^(i-1) to 2^i - 1 (bucket 0 holds 0) */
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder(), sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /** @param millis measured time, negative values count as 0*/
+    public void record(long millis){
+        long value = Math.max(0, millis);
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value)));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long c = count.sum();
+        return c == 0 ? 0 : (double) sum.sum() / c;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public long getP50() {
+        return percentile(0.5);
+    }
+
+    public long getP90() {
+        return percentile(0.9);
+    }
+
+    public long getP99() {
+        return percentile(0.99);
+    }
+
+    /** @param quantile quantile from (0, 1]
+     * @return upper bound of bucket holding given quantile (not more than maximum)*/
+    private long percentile(double quantile){
+        long c = count.sum();
+        if(c == 0){
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(quantile * c), seen = 0;
+        for(int i = 0; i < BUCKETS; ++i){
+            seen += buckets.get(i);
+            if(seen >= rank){
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, getMax());
+            }
+        }
+        return getMax();
+    }
+}
@@ -0,0 +1,31 @@
+package metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+
+/** quantity summed over current period, value of last finished period and total of all periods
+ * */
+public class PeriodSum {
+
+    private final DoubleAdder current = new DoubleAdder(), total = new DoubleAdder();
+    private volatile double last;
+
+    public void add(double value){
+        current.add(value);
+        total.add(value);
+    }
+
+    /** finish current period */
+    void roll(){
+        last = current.sumThenReset();
+    }
+
+    /** @return sum of last finished period*/
+    public double getLast() {
+        return last;
+    }
+
+    /** @return sum of all periods*/
+    public double getTotal() {
+        return total.sum();
+    }
+}
@@ -0,0 +1,58 @@
+package metrics;
+
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/** counts of local and remote messages of this JVM, registered in platform MBean server as wsd:type=Transport */
+public class TransportMetrics implements TransportMetricsMXBean {
+
+    private static final TransportMetrics shared = register(new TransportMetrics());
+
+    private final LongAdder local = new LongAdder(), remote = new LongAdder();
+
+    private TransportMetrics(){}
+
+    private static TransportMetrics register(TransportMetrics metrics){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("wsd:type=Transport"));
+        } catch (JMException ex) {
+            LoggerFactory.getLogger("metrics").warn("metrics of transport not registered - " + ex.getMessage());
+        }
+        return metrics;
+    }
+
+    /** @return metrics of this JVM*/
+    public static TransportMetrics shared(){
+        return shared;
+    }
+
+    /** @param receivers number of receivers reached through local mailboxes*/
+    public void local(int receivers){
+        local.add(receivers);
+    }
+
+    /** @param receivers number of receivers reached through ACL messaging*/
+    public void remote(int receivers){
+        remote.add(receivers);
+    }
+
+    @Override
+    public long getLocalMessages() {
+        return local.sum();
+    }
+
+    @Override
+    public long getRemoteMessages() {
+        return remote.sum();
+    }
+
+    @Override
+    public double getLocalShare() {
+        long l = local.sum(), all = l + remote.sum();
+        return all == 0 ? 0 : (double) l / all;
+    }
+}
@@ -0,0 +1,14 @@
+package metrics;
+
+/** messages delivered to agents of this JVM through local mailboxes or sent through ACL messaging */
+public interface TransportMetricsMXBean {
+
+    /** @return messages (one per receiver) put to local mailboxes*/
+    long getLocalMessages();
+
+    /** @return messages (one per receiver) sent through JADE messaging service*/
+    long getRemoteMessages();
+
+    /** @return part of messages delivered locally, 0 before first message*/
+    double getLocalShare();
+}
@@ -0,0 +1,240 @@
+package replay;
+
+import agents.BuildingRules;
+import agents.DemandIndex;
+import jade.core.AID;
+import messages.BatteryState;
+import messages.OfferBook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/** replays recorded run - events of each building are gathered until it sends medium to consumers (end of it's
+ * period), then supply plan is computed again by the same {@link BuildingRules} entry points Building uses from
+ * recorded inputs (consumer offers and forecasts of missing ones, reservations for other buildings, returned medium,
+ * offers of other buildings, market allocations, battery state and setpoint) and production from scenario, one line per building period is written (diff of outputs before and after change of rules shows what
+ * changed), only open periods of buildings are kept in memory,
+ * usage: replay.Replay trace [scenarioDir] (default scenario is directory of trace)
+ * */
+public class Replay {
+
+    private final static String regex = ";";
+    static final String HEADER = "building;period;time;consumers;demand;production;batteryCharge;reserved;returnedIn;bought;returnedOut;supplied;excessive;unmet;forecastOffers;setpoint;marketBought;marketSold";
+
+    /** recorded inputs of building's current period */
+    private static class BuildingPeriod {
+        private final double production;
+        private double batteryTotalCapacity;
+        private BatteryState batteryState;
+        private double setpoint = Double.NaN;
+        private int consumers, period;
+        private final OfferBook consumerOffers = new OfferBook(), buildingOffers = new OfferBook();
+        private final DemandIndex consumerDemands = new DemandIndex();
+        private final Set<AID> forecastOffers = new HashSet<>();
+        private int forecasts;
+        private double reserved, returned, marketBought, marketSold;
+
+        private BuildingPeriod(double production){
+            this.production = production;
+        }
+
+        private void clear(){
+            consumerOffers.clear();
+            consumerDemands.clear();
+            buildingOffers.clear();
+            forecastOffers.clear();
+            forecasts = 0;
+            reserved = 0;
+            returned = 0;
+            marketBought = 0;
+            marketSold = 0;
+            batteryState = null;
+            setpoint = Double.NaN;
+        }
+    }
+
+    private final Map<String, BuildingPeriod> buildings = new HashMap<>();
+    private final Map<String, Double> batteryCapacities = new HashMap<>();
+    private final Map<String, AID> aids = new HashMap<>(); // offers are kept by agent like in Building
+    private final Writer out;
+    private long events, periods;
+    private double unmet, recordedUnmet;
+
+    /** @param scenario scenario directory with buildings.txt and batteries.txt of recorded run
+     * @param out where lines of building periods go
+     * @throws IOException when scenario can't be read*/
+    public Replay(Path scenario, Writer out) throws IOException {
+        this.out = out;
+        try(Stream<String> lines = Files.lines(scenario.resolve("buildings.txt"), StandardCharsets.UTF_8)) {
+            lines.filter(line -> !line.trim().isEmpty()).map(line -> line.trim().split(regex))
+                    .forEach(parts -> buildings.put(parts[0], new BuildingPeriod(Double.parseDouble(parts[1]))));
+        }
+        Path batteries = scenario.resolve("batteries.txt");
+        if(Files.exists(batteries)){
+            try(Stream<String> lines = Files.lines(batteries, StandardCharsets.UTF_8)) {
+                lines.filter(line -> !line.trim().isEmpty()).map(line -> line.trim().split(regex))
+                        .forEach(parts -> batteryCapacities.put(parts[0], Double.parseDouble(parts[2])));
+            }
+        }
+        out.write(HEADER);
+        out.write('\n');
+    }
+
+    /** feed next event of recorded run
+     * @param e event
+     * @throws IOException when line of finished period can't be written*/
+    public void accept(TraceEvent e) throws IOException {
+        ++events;
+        BuildingPeriod b = buildings.get(e.getAgent());
+
+        switch (e.getEvent()){
+            case PROVIDER_NEEDED: // consumer
+                recordedUnmet += e.getValue();
+                return;
+            default:
+                if(b == null){ // other events of batteries and consumers aren't needed
+                    return;
+                }
+        }
+
+        switch (e.getEvent()){
+            case OFFER_RECEIVED:
+                BuildingRules.saveOffer(b.consumerOffers, b.consumerDemands, b.forecastOffers, aid(e.getPeer()), e.getRef(), e.getValue());
+                break;
+            case OFFER_FORECAST:
+                BuildingRules.saveOffer(b.consumerOffers, b.consumerDemands, b.forecastOffers, aid(e.getPeer()), null, e.getValue());
+                b.forecastOffers.add(aid(e.getPeer()));
+                ++b.forecasts;
+                break;
+            case CONSUMER_ACCEPTED:
+                ++b.consumers;
+                break;
+            case CONSUMER_CANCELED:
+                --b.consumers;
+                break;
+            case BATTERY_REGISTERED:
+                b.batteryTotalCapacity = batteryCapacities.getOrDefault(e.getPeer(), 0.0);
+                break;
+            case BATTERY_CAPACITY:
+                b.batteryState = BatteryState.valueOf(e.getRef());
+                break;
+            case MEDIUM_RESERVED:
+                b.reserved += e.getValue();
+                break;
+            case MEDIUM_RETURNED:
+                b.returned += e.getValue();
+                break;
+            case MEDIUM_OFFERED:
+                b.buildingOffers.add(aid(e.getPeer()), null, e.getValue(), e.getValue2());
+                break;
+            case MEDIUM_BOUGHT:
+                b.marketBought += e.getValue();
+                break;
+            case MEDIUM_SOLD:
+                b.marketSold += e.getValue();
+                break;
+            case SETPOINT_RECEIVED:
+                b.setpoint = e.getValue();
+                break;
+            case MEDIUM_SENT:
+                settle(e.getAgent(), b, e.getTime());
+                break;
+        }
+    }
+
+    private AID aid(String name){
+        return aids.computeIfAbsent(name, n -> new AID(n, AID.ISLOCALNAME));
+    }
+
+    /** compute supply plan of finished period like Building does (checkBatteryState, receiveAllocation, selectOffers,
+     * sendMedium) */
+    private void settle(String name, BuildingPeriod b, long time) throws IOException {
+        double production = b.production;
+        double batteryCharge = b.batteryState == null ? 0
+                : BuildingRules.batteryCharge(b.batteryState, b.setpoint, production, b.batteryTotalCapacity);
+        production -= batteryCharge;
+        production -= b.reserved;
+        production += b.returned;
+        production += b.marketBought - b.marketSold; // unsold part of ask comes back with allocation
+
+        double demand = b.consumerOffers.totalDemand();
+
+        double[] selected = new double[2]; // bought, returned
+        production = BuildingRules.selectOffers(b.buildingOffers, production, demand, (o, kept, returned) -> {
+            selected[0] += kept;
+            selected[1] += returned;
+        });
+
+        int consumers = b.consumers > 0 ? b.consumers : b.consumerOffers.size();
+        double[] supplied = new double[1];
+        double excessive = 0;
+        if(consumers > 0){
+            excessive = BuildingRules.supplyConsumers(b.consumerOffers, production, consumers, (co, supply) -> supplied[0] += supply);
+        }
+        unmet += demand - supplied[0];
+
+        out.write(name + regex + b.period + regex + time + regex + consumers + regex + demand + regex + production + regex
+                + batteryCharge + regex + b.reserved + regex + b.returned + regex + selected[0] + regex + selected[1] + regex
+                + supplied[0] + regex + excessive + regex + (demand - supplied[0]) + regex + b.forecasts + regex + b.setpoint
+                + regex + b.marketBought + regex + b.marketSold);
+        out.write('\n');
+
+        ++b.period;
+        ++periods;
+        b.clear();
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getPeriods() {
+        return periods;
+    }
+
+    /** @return demand not supplied by buildings in replayed periods*/
+    public double getUnmet() {
+        return unmet;
+    }
+
+    /** @return demand consumers asked providers for in recorded run (after batteries)*/
+    public double getRecordedUnmet() {
+        return recordedUnmet;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("usage: replay.Replay trace [scenarioDir]");
+            return;
+        }
+
+        Path trace = Paths.get(args[0]).toAbsolutePath();
+        Path scenario = args.length > 1 ? Paths.get(args[1]) : trace.getParent();
+        Logger logger = LoggerFactory.getLogger("replay");
+
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        long start = System.nanoTime();
+        Replay replay = new Replay(scenario, out);
+        try(TraceReader reader = new TraceReader(trace)) {
+            while(reader.hasNext()){
+                replay.accept(reader.next());
+            }
+            out.flush();
+
+            long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            logger.info(reader.getLines() + " lines (" + reader.getSkipped() + " skipped), " + replay.getEvents() + " events, "
+                    + replay.getPeriods() + " building periods in " + elapsed + " ms (" + replay.getEvents() * 1000 / elapsed + " events/s)");
+            logger.info("unmet demand - replayed " + replay.getUnmet() + ", recorded (after batteries) " + replay.getRecordedUnmet());
+        }
+    }
+}
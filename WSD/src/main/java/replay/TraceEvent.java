@@ -0,0 +1,45 @@
+package replay;
+
+import journal.Event;
+
+/** single event of recorded run */
+public class TraceEvent {
+
+    private final long time;
+    private final String agent, peer, ref;
+    private final Event event;
+    private final double value, value2;
+
+    public TraceEvent(long time, String agent, Event event, String peer, String ref, double value, double value2){
+        this.time = time;
+        this.agent = agent;
+        this.event = event;
+        this.peer = peer;
+        this.ref = ref;
+        this.value = value;
+        this.value2 = value2;
+    }
+
+    /** @return time of event (milliseconds)*/
+    public long getTime() { return time; }
+
+    /** @return agent that logged event*/
+    public String getAgent() { return agent; }
+
+    public Event getEvent() { return event; }
+
+    /** @return other agent (may be null)*/
+    public String getPeer() { return peer; }
+
+    /** @return other name, e.g. provider or battery state (may be null)*/
+    public String getRef() { return ref; }
+
+    public double getValue() { return value; }
+
+    public double getValue2() { return value2; }
+
+    @Override
+    public String toString() {
+        return agent + ": " + event.format(peer, ref, value, value2);
+    }
+}
@@ -0,0 +1,181 @@
+package replay;
+
+import journal.Event;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** reads agent log (log4j.properties layout, e.g. daneTestowe s*.txt, log0.txt) line by line and turns messages into
+ * events, only one line is kept in memory, lines of other loggers (JADE, broken lines) are skipped
+ * */
+public class TraceReader implements Iterator<TraceEvent>, Closeable {
+
+    private static final String NUMBER = "(-?[0-9.]+(?:E-?[0-9]+)?|NaN|-?Infinity)";
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d{3}");
+    private static final DateTimeFormatter SECONDS = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** message of event, regex is tried only when message contains key (cheap test first) */
+    private static class Message {
+        private final String key;
+        private final Pattern pattern;
+        private final boolean peer, ref, value, value2; // groups of pattern
+
+        private Message(String key, String regex){
+            this.key = key;
+            this.pattern = Pattern.compile("^" + regex + "$");
+            peer = regex.contains("(?<peer>");
+            ref = regex.contains("(?<ref>");
+            value = regex.contains("(?<value>");
+            value2 = regex.contains("(?<value2>");
+        }
+    }
+
+    /** messages of events used by replay, groups: peer, ref, value, value2 */
+    private static final Map<Event, Message> messages = new EnumMap<>(Event.class);
+    static {
+        message(Event.OFFER_RECEIVED, "received offer from ", "received offer from (?<peer>\\S+) - (?<ref>[^;]+);(?<value>" + NUMBER + ")");
+        message(Event.CONSUMER_ACCEPTED, "accepting consumer - ", "accepting consumer - (?<peer>\\S+)");
+        message(Event.CONSUMER_CANCELED, "canceling consumer - ", "canceling consumer - (?<peer>\\S+)");
+        message(Event.BATTERY_REGISTERED, "registering battery - ", "registering battery - (?<peer>\\S+)");
+        message(Event.BATTERY_CAPACITY, "current battery capacity - ", "current battery capacity - (?<value>" + NUMBER + ") \\((?<ref>\\w+)\\)");
+        message(Event.MEDIUM_RESERVED, "reserving medium for ", "reserving medium for (?<peer>\\S+) - (?<value>" + NUMBER + ")");
+        message(Event.MEDIUM_OFFERED, " send medium - ", "(?<peer>\\S+) send medium - (?<value>" + NUMBER + "), price - (?<value2>" + NUMBER + ")");
+        message(Event.MEDIUM_RETURNED, " returned medium - ", "(?<peer>\\S+) returned medium - (?<value>" + NUMBER + ")");
+        message(Event.MEDIUM_SENT, "medium sent to consumers", "medium sent to consumers");
+        message(Event.SUPPLY_RECEIVED, "received supply, ", "received supply, current demand - (?<value>" + NUMBER + ")");
+        message(Event.CHARGING, "charging up - ", "charging up - (?<value>" + NUMBER + ")");
+        message(Event.CHARGING_DEMAND, "car charging - ", "need more medium for car charging - (?<value>" + NUMBER + ")");
+        message(Event.MEDIUM_BOUGHT, "bought medium - ", "bought medium - (?<value>" + NUMBER + "), price - (?<value2>" + NUMBER + ")");
+        message(Event.MEDIUM_SOLD, "sold medium - ", "sold medium - (?<value>" + NUMBER + "), price - (?<value2>" + NUMBER + ")");
+        message(Event.OFFER_FORECAST, " missing, forecast demand - ", "offer of (?<peer>\\S+) missing, forecast demand - (?<value>" + NUMBER + ")");
+        message(Event.SETPOINT_RECEIVED, "battery setpoint - ", "battery setpoint - (?<value>" + NUMBER + ")");
+        message(Event.PROVIDER_NEEDED, " medium from ", "need (?<value>" + NUMBER + ") medium from (?<ref>\\S+)");
+    }
+
+    private static void message(Event event, String key, String regex){
+        messages.put(event, new Message(key, regex));
+    }
+
+    /** @return events whose messages are read from log*/
+    static Set<Event> events(){
+        return messages.keySet();
+    }
+
+    private final BufferedReader reader;
+    private TraceEvent next;
+    private long lines, skipped;
+    /* lines of the same second share parsed time */
+    private String second;
+    private long secondTime;
+
+    /** @param trace log file
+     * @throws IOException when file can't be opened*/
+    public TraceReader(Path trace) throws IOException {
+        this(Files.newBufferedReader(trace, StandardCharsets.UTF_8));
+    }
+
+    public TraceReader(BufferedReader reader){
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            String line;
+            while(next == null && (line = reader.readLine()) != null){
+                ++lines;
+                next = parse(line);
+                if(next == null){
+                    ++skipped;
+                }
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return next != null;
+    }
+
+    @Override
+    public TraceEvent next() {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        TraceEvent event = next;
+        next = null;
+        return event;
+    }
+
+    /** @param line line of log (date level agent: message)
+     * @return event or null if line isn't message of any known event*/
+    TraceEvent parse(String line){
+        if(line.length() < 24 || !DATE.matcher(line).region(0, 23).matches()){
+            return null;
+        }
+
+        int level = skipSpaces(line, 23), levelEnd = line.indexOf(' ', level);
+        int agent = levelEnd < 0 ? -1 : skipSpaces(line, levelEnd), separator = agent < 0 ? -1 : line.indexOf(": ", agent);
+        if(separator < 0){
+            return null;
+        }
+
+        String message = line.substring(separator + 2).trim();
+        for(Map.Entry<Event, Message> e : messages.entrySet()){
+            Message m = e.getValue();
+            if(!message.contains(m.key)){
+                continue;
+            }
+            Matcher matcher = m.pattern.matcher(message);
+            if(matcher.matches()){
+                return new TraceEvent(time(line), line.substring(agent, separator), e.getKey(),
+                        m.peer ? matcher.group("peer") : null, m.ref ? matcher.group("ref") : null,
+                        m.value ? Double.parseDouble(matcher.group("value")) : 0, m.value2 ? Double.parseDouble(matcher.group("value2")) : 0);
+            }
+        }
+        return null;
+    }
+
+    private static int skipSpaces(String line, int i){
+        while(i < line.length() && line.charAt(i) == ' '){
+            ++i;
+        }
+        return i;
+    }
+
+    private long time(String line){
+        if(second == null || !line.regionMatches(0, second, 0, 19)){
+            second = line.substring(0, 19);
+            secondTime = LocalDateTime.parse(second, SECONDS).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return secondTime + Integer.parseInt(line.substring(20, 23));
+    }
+
+    /** @return number of lines read so far*/
+    public long getLines() {
+        return lines;
+    }
+
+    /** @return number of lines that weren't events*/
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
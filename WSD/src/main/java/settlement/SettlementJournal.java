@@ -0,0 +1,237 @@
+package settlement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/** append-only journal of energy transfers of this JVM (enabled by -Dwsd.settlement=directory) - agents put fixed
+ * size records straight to memory-mapped segment files without locks (each record gets it's own slot), full segment
+ * is flushed and next one is created, so nothing is dropped; names of agents and providers go once to file names,
+ * segments of previous runs are kept (new run starts with new segment), records are read by {@link SettlementReader},
+ * segment layout (big-endian):
+ * <pre>
+ * header - int magic, int record size, int capacity (records), int unused, long written (records, 0 while open)
+ * record - long period, int from, int to, double quantity, double price, int kind, int unused
+ * </pre>
+ * kind is ordinal of {@link Transfer} plus one and it is written last, record with kind 0 is not complete (crash
+ * while writing), transfers of no medium aren't recorded
+ * */
+public class SettlementJournal {
+
+    static final int MAGIC = 0x57534453, HEADER = 24, RECORD = 40, WRITTEN = 16;
+    static final String NAMES = "names", SUFFIX = ".seg";
+
+    private static final SettlementJournal shared = open();
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final BufferedWriter names;
+    private final ConcurrentHashMap<String, Integer> nameIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextName = new AtomicInteger();
+    private volatile Segment current;
+    private volatile boolean failed;
+    private final LongAdder lost = new LongAdder();
+
+    private Logger logger = LoggerFactory.getLogger("settlement");
+
+    /** one mapped file, writers claim record numbers and count written records */
+    private static class Segment {
+        final int number;
+        final MappedByteBuffer file;
+        final int capacity;
+        final AtomicLong claimed = new AtomicLong(), written = new AtomicLong();
+
+        Segment(Path path, int number, int capacity) throws IOException {
+            this.number = number;
+            this.capacity = capacity;
+            try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                file = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * RECORD);
+            }
+            file.putInt(0, MAGIC);
+            file.putInt(4, RECORD);
+            file.putInt(8, capacity);
+        }
+
+        void put(long n, Transfer kind, long period, int from, int to, double quantity, double price){
+            int offset = HEADER + (int) n * RECORD;
+            file.putLong(offset, period);
+            file.putInt(offset + 8, from);
+            file.putInt(offset + 12, to);
+            file.putDouble(offset + 16, quantity);
+            file.putDouble(offset + 24, price);
+            file.putInt(offset + 32, kind.ordinal() + 1);
+        }
+
+        /** write number of records and flush file */
+        void close(long records){
+            file.putLong(WRITTEN, records);
+            file.force();
+        }
+    }
+
+    /** @param directory directory of segments (created if missing)
+     * @param segmentCapacity number of records of one segment
+     * @throws IOException when directory or first segment can't be created*/
+    public SettlementJournal(Path directory, int segmentCapacity) throws IOException {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        Files.createDirectories(directory);
+
+        Path namesPath = directory.resolve(NAMES);
+        if(Files.exists(namesPath)){ // ids of names stay the same in segments of all runs
+            for(String line : Files.readAllLines(namesPath, StandardCharsets.UTF_8)){
+                int separator = line.indexOf(';');
+                if(separator > 0){
+                    int id = Integer.parseInt(line.substring(0, separator));
+                    nameIds.put(line.substring(separator + 1), id);
+                    nextName.set(Math.max(nextName.get(), id + 1));
+                }
+            }
+        }
+        names = Files.newBufferedWriter(namesPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+        int last = 0;
+        try(DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for(Path s : segments){
+                last = Math.max(last, segmentNumber(s));
+            }
+        }
+        current = new Segment(segmentPath(directory, last + 1), last + 1, segmentCapacity);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    private static SettlementJournal open(){
+        String path = System.getProperty("wsd.settlement");
+        if(path == null){
+            return null;
+        }
+        try {
+            return new SettlementJournal(Paths.get(path), Integer.getInteger("wsd.settlementRecords", 1 << 20));
+        } catch (IOException ex) {
+            LoggerFactory.getLogger("settlement").warn("settlement journal " + path + " not opened - " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /** @return journal of this JVM, null if journal isn't enabled*/
+    public static SettlementJournal shared(){
+        return shared;
+    }
+
+    static Path segmentPath(Path directory, int number){
+        return directory.resolve(String.format("%08d", number) + SUFFIX);
+    }
+
+    /** @return number of segment, 0 for other files*/
+    static int segmentNumber(Path segment){
+        String name = segment.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /** record transfer (nothing when journal isn't enabled)
+     * @param kind kind of transfer
+     * @param period period of transfer
+     * @param from local name of agent (or provider) sending medium
+     * @param to local name of agent receiving medium
+     * @param quantity amount of medium
+     * @param price price of medium (0 if there is none)*/
+    public static void record(Transfer kind, long period, String from, String to, double quantity, double price){
+        if(shared != null && quantity != 0){
+            shared.append(kind, period, shared.name(from), shared.name(to), quantity, price);
+        }
+    }
+
+    /** @param name agent or provider name
+     * @return id of name in journal*/
+    public int name(String name){
+        Integer id = nameIds.get(name);
+        return id != null ? id : nameIds.computeIfAbsent(name, this::newName);
+    }
+
+    private int newName(String name){
+        int id = nextName.getAndIncrement();
+        synchronized (names){
+            try {
+                names.write(id + ";" + name);
+                names.newLine();
+                names.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        return id;
+    }
+
+    /** put record to slot of current segment, writer that gets slot behind end of segment creates next one*/
+    public void append(Transfer kind, long period, int from, int to, double quantity, double price){
+        while(!failed){
+            Segment s = current;
+            long n = s.claimed.getAndIncrement();
+            if(n < s.capacity){
+                s.put(n, kind, period, from, to, quantity, price);
+                if(s.written.incrementAndGet() == s.capacity){ // last writer of segment
+                    s.close(s.capacity);
+                }
+                return;
+            }
+            next(s);
+        }
+        lost.increment();
+    }
+
+    private synchronized void next(Segment full){
+        if(current != full || failed){ // other writer already created it
+            return;
+        }
+        try {
+            current = new Segment(segmentPath(directory, full.number + 1), full.number + 1, segmentCapacity);
+        } catch (IOException ex) {
+            failed = true;
+            logger.warn("settlement segment " + (full.number + 1) + " not created, transfers aren't recorded - " + ex.getMessage());
+        }
+    }
+
+    /** @return number of transfers not recorded because segment couldn't be created*/
+    public long getLost(){
+        return lost.sum();
+    }
+
+    /** write number of records of current segment and flush it */
+    public synchronized void close(){
+        Segment s = current;
+        long records = Math.min(s.claimed.get(), s.capacity);
+        if(records < s.capacity){ // full segment was closed by it's last writer
+            s.close(records);
+        }
+        synchronized (names){
+            try {
+                names.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if(getLost() > 0){
+            logger.warn(getLost() + " transfers not recorded");
+        }
+    }
+}
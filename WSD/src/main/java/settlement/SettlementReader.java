@@ -0,0 +1,124 @@
+package settlement;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** sequential scan of settlement journal (segments in order of creation), prints transfers as text
+ * (period;kind;from;to;quantity;price) or bill of each agent (agent;received;sent;paid;earned),
+ * usage: settlement.SettlementReader directory [bill]
+ * */
+public class SettlementReader {
+
+    /** receives transfers of journal in order */
+    public interface Visitor {
+        void transfer(long period, Transfer kind, int from, int to, double quantity, double price);
+    }
+
+    /** @param directory directory of journal
+     * @return names by their ids*/
+    public static Map<Integer, String> names(Path directory) throws IOException {
+        Map<Integer, String> names = new HashMap<>();
+        for(String line : Files.readAllLines(directory.resolve(SettlementJournal.NAMES), StandardCharsets.UTF_8)){
+            int separator = line.indexOf(';');
+            if(separator > 0){
+                names.put(Integer.parseInt(line.substring(0, separator)), line.substring(separator + 1));
+            }
+        }
+        return names;
+    }
+
+    /** pass each complete record of all segments to visitor
+     * @param directory directory of journal
+     * @param visitor receiver of transfers
+     * @return number of transfers*/
+    public static long scan(Path directory, Visitor visitor) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try(DirectoryStream<Path> s = Files.newDirectoryStream(directory, "*" + SettlementJournal.SUFFIX)) {
+            for(Path p : s){
+                if(SettlementJournal.segmentNumber(p) > 0){
+                    segments.add(p);
+                }
+            }
+        }
+        segments.sort((a, b) -> Integer.compare(SettlementJournal.segmentNumber(a), SettlementJournal.segmentNumber(b)));
+
+        Transfer[] kinds = Transfer.values();
+        long transfers = 0;
+        for(Path p : segments){
+            ByteBuffer file;
+            try(FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+                file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if(file.getInt(0) != SettlementJournal.MAGIC || file.getInt(4) != SettlementJournal.RECORD){
+                throw new IOException(p + " is not settlement segment");
+            }
+
+            long written = file.getLong(SettlementJournal.WRITTEN);
+            long records = written > 0 ? written : file.getInt(8); // segment not closed (crash), look at all slots
+            for(int n = 0; n < records; ++n){
+                int offset = SettlementJournal.HEADER + n * SettlementJournal.RECORD;
+                int kind = file.getInt(offset + 32);
+                if(kind == 0){ // slot not written
+                    continue;
+                }
+                visitor.transfer(file.getLong(offset), kinds[kind - 1], file.getInt(offset + 8), file.getInt(offset + 12),
+                        file.getDouble(offset + 16), file.getDouble(offset + 24));
+                ++transfers;
+            }
+        }
+        return transfers;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("usage: settlement.SettlementReader directory [bill]");
+            return;
+        }
+
+        Path directory = Paths.get(args[0]);
+        Map<Integer, String> names = names(directory);
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
+        if(args.length > 1 && "bill".equals(args[1])){
+            Map<String, double[]> bills = new TreeMap<>(); // received, sent, paid, earned
+            scan(directory, (period, kind, from, to, quantity, price) -> {
+                double[] receiver = bills.computeIfAbsent(names.get(to), n -> new double[4]);
+                double[] sender = bills.computeIfAbsent(names.get(from), n -> new double[4]);
+                receiver[0] += quantity;
+                receiver[2] += quantity * price;
+                sender[1] += quantity;
+                sender[3] += quantity * price;
+            });
+            for(Map.Entry<String, double[]> b : bills.entrySet()){
+                double[] v = b.getValue();
+                out.write(b.getKey() + ";" + v[0] + ";" + v[1] + ";" + v[2] + ";" + v[3]);
+                out.newLine();
+            }
+        } else {
+            scan(directory, (period, kind, from, to, quantity, price) -> {
+                try {
+                    out.write(period + ";" + kind + ";" + names.get(from) + ";" + names.get(to) + ";" + quantity + ";" + price);
+                    out.newLine();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        out.flush();
+    }
+}
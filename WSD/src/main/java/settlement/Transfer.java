@@ -0,0 +1,18 @@
+package settlement;
+
+/** kinds of energy transfers recorded in {@link SettlementJournal}
+ * */
+public enum Transfer {
+    /** building supplies consumer (SUPPLY) */
+    SUPPLY,
+    /** battery sends shortage to consumer (REQUEST_MEDIUM) */
+    BATTERY,
+    /** building keeps medium offered by other building or battery (after selecting offers) */
+    BUILDING,
+    /** building charges battery (CHARGE_BATTERY) */
+    CHARGE,
+    /** provider covers demand of building's consumers (summary of settled period) */
+    PROVIDER,
+    /** estate market allocates medium bought or sold by building (MARKET_ALLOCATION) */
+    MARKET,
+}
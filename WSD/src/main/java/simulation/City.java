@@ -0,0 +1,188 @@
+package simulation;
+
+import agents.Market;
+import jade.core.AID;
+import messages.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/** headless city - runs building, battery and consumer logic without agent platform on virtual clock, periods go through
+ * the same phases clock sends to agents,
+ * usage: simulation.City scenarioDir [periods] [periodMinutes] [seed]
+ * */
+public class City {
+
+    /** consumers send offers after buildings got battery state (as part of period length) */
+    private static final double OFFERS = 0.1;
+
+    private final static String regex = ";";
+
+    final Simulation simulation = new Simulation();
+    final Random random;
+    final PeriodStats stats = new PeriodStats();
+    private final PeriodStats total = new PeriodStats();
+    private final long messageLatency;
+
+    private final List<SimBuilding> buildings = new ArrayList<>();
+    private final List<SimBattery> batteries = new ArrayList<>();
+    private final List<SimConsumer> consumers = new ArrayList<>();
+    private final Map<String, SimBuilding> buildingsByName = new HashMap<>();
+    private final Map<String, List<SimBuilding>> estates = new HashMap<>();
+    private final Map<String, SimMarket> markets = new HashMap<>();
+    private final Map<String, AID> aids = new HashMap<>(); // offers are kept by agent like in Building
+    private long period;
+    /** buildings trade through estate markets instead of asking each neighbour */
+    final boolean trading = Market.ENABLED;
+
+    private Logger logger = LoggerFactory.getLogger("city");
+
+    /** @param seed seed of random prices and capacity changes
+     * @param messageLatency virtual delay of each message in milliseconds*/
+    public City(long seed, long messageLatency){
+        this.random = new Random(seed);
+        this.messageLatency = messageLatency;
+    }
+
+    /** load agents from scenario directory containing buildings.txt, batteries.txt and consumers.txt
+     * @param dir scenario directory
+     * @throws IOException when scenario files can't be read*/
+    public void load(Path dir) throws IOException {
+        for(String[] parts : read(dir.resolve("buildings.txt"))){
+            SimBuilding b = new SimBuilding(this, parts);
+            buildings.add(b);
+            buildingsByName.put(b.name, b);
+            for(String e : b.estateIds){
+                estates.computeIfAbsent(e, k -> new ArrayList<>()).add(b);
+            }
+        }
+
+        for(Map.Entry<String, List<SimBuilding>> e : estates.entrySet()){
+            markets.put(e.getKey(), new SimMarket(this, e.getValue().size()));
+        }
+
+        for(String[] parts : read(dir.resolve("batteries.txt"))){
+            SimBattery battery = new SimBattery(this, parts);
+            battery.building = buildingsByName.get(battery.buildingName);
+            if(battery.building != null){
+                battery.building.declareBattery(battery);
+            }
+            batteries.add(battery);
+        }
+
+        for(String[] parts : read(dir.resolve("consumers.txt"))){
+            SimConsumer c = new SimConsumer(this, parts);
+            c.building = buildingsByName.get(c.buildingName);
+            if(c.building != null){
+                c.building.acceptConsumer(c);
+                c.battery = c.building.battery;
+                if(c.battery != null){
+                    c.battery.subscribe(c);
+                }
+                consumers.add(c);
+            }
+        }
+    }
+
+    private static List<String[]> read(Path file) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)){
+            if(!line.trim().isEmpty()){
+                lines.add(line.trim().split(regex));
+            }
+        }
+        return lines;
+    }
+
+    /** run given number of periods as fast as possible
+     * @param periods number of periods
+     * @param periodLength length of period in virtual milliseconds
+     * @return totals of all periods*/
+    public PeriodStats run(int periods, long periodLength){
+        for(int p = 0; p < periods; ++p){
+            long start = simulation.now();
+            stats.reset();
+
+            long current = period;
+
+            for(SimBattery b : batteries){
+                simulation.schedule(0, b::startPeriod); // price curves of period
+            }
+            for(SimBuilding b : buildings){
+                simulation.schedule(0, () -> b.startPeriod(current));
+                simulation.schedule((long) (periodLength*Phase.OFFERS_DUE.getOffset()), b::offersDue);
+                simulation.schedule((long) (periodLength*Phase.SETTLE.getOffset()), b::settle);
+                simulation.schedule((long) (periodLength*Phase.CLEANUP.getOffset()), b::cleanUp);
+            }
+            for(SimBattery b : batteries){
+                simulation.schedule((long) (periodLength*Phase.CLEANUP.getOffset()), b::cleanUp);
+            }
+            for(SimConsumer c : consumers){
+                simulation.schedule((long) (periodLength*OFFERS), () -> c.phase(Phase.PREDICT, current));
+                simulation.schedule((long) (periodLength*Phase.CLEANUP.getOffset()), () -> c.phase(Phase.CLEANUP, current));
+            }
+
+            simulation.runUntil(start + periodLength);
+            ++period;
+
+            logger.debug("period {}: {}", p, stats);
+            total.add(stats);
+        }
+        return total;
+    }
+
+    void deliver(Runnable message){
+        simulation.schedule(messageLatency, message);
+    }
+
+    List<SimBuilding> estate(String estateId){
+        return estates.getOrDefault(estateId, Collections.emptyList());
+    }
+
+    SimMarket market(String estateId){
+        return markets.get(estateId);
+    }
+
+    /** random price from range [lower, upper) */
+    double price(double lower, double upper){
+        return lower + random.nextDouble() * (upper - lower);
+    }
+
+    SimBuilding building(String name){
+        return buildingsByName.get(name);
+    }
+
+    /** @param name local name of agent
+     * @return AID agent is kept by in offer books*/
+    AID aid(String name){
+        return aids.computeIfAbsent(name, n -> new AID(n, AID.ISLOCALNAME));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("usage: simulation.City scenarioDir [periods] [periodMinutes] [seed]");
+            return;
+        }
+
+        int periods = args.length > 1 ? Integer.parseInt(args[1]) : 4 * 24 * 365; // a year of 15 minute periods
+        long periodLength = (args.length > 2 ? Long.parseLong(args[2]) : 15) * 60_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        City city = new City(seed, 0);
+        city.load(Paths.get(args[0]));
+
+        long start = System.nanoTime();
+        PeriodStats total = city.run(periods, periodLength);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        city.logger.info(periods + " periods (" + city.buildings.size() + " buildings, " + city.batteries.size() + " batteries, "
+                + city.consumers.size() + " consumers) in " + elapsed + " ms, " + city.simulation.getProcessed() + " events");
+        city.logger.info("total: " + total);
+    }
+}
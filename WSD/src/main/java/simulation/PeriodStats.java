@@ -0,0 +1,42 @@
+package simulation;
+
+/** medium flows counted during single period of headless simulation
+ * */
+public class PeriodStats {
+    /** demand sent by consumers as offers */
+    public double demand;
+    /** medium sent by buildings to consumers */
+    public double buildingSupply;
+    /** medium consumers got from batteries */
+    public double batterySupply;
+    /** medium consumers have to get from providers */
+    public double providerDemand;
+    /** medium buildings accepted from other buildings and batteries */
+    public double traded;
+    /** medium sent to batteries */
+    public double charged;
+
+    void reset(){
+        demand = 0;
+        buildingSupply = 0;
+        batterySupply = 0;
+        providerDemand = 0;
+        traded = 0;
+        charged = 0;
+    }
+
+    void add(PeriodStats o){
+        demand += o.demand;
+        buildingSupply += o.buildingSupply;
+        batterySupply += o.batterySupply;
+        providerDemand += o.providerDemand;
+        traded += o.traded;
+        charged += o.charged;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("demand=%.3f building=%.3f battery=%.3f provider=%.3f traded=%.3f charged=%.3f",
+                demand, buildingSupply, batterySupply, providerDemand, traded, charged);
+    }
+}
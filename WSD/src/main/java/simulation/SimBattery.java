@@ -0,0 +1,118 @@
+package simulation;
+
+import agents.BatteryRules;
+import forecast.HoltWinters;
+import messages.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** headless counterpart of {@link agents.Battery}
+ * */
+class SimBattery {
+
+    final String name;
+    final String buildingName;
+    final int totalCapacity;
+    private final City city;
+
+    SimBuilding building;
+    double currentCapacity = 0.7;
+    private BatteryState batteryState;
+    private PriceCurve curve; // current price curve, new version when state band changes
+    private final List<SimConsumer> subscribers = new ArrayList<>();
+    private double periodDraw; // medium drawn by consumers in current period
+    private boolean periodStarted;
+    private final HoltWinters drawForecast = new HoltWinters();
+
+    SimBattery(City city, String[] parts){
+        this.city = city;
+        this.name = parts[0];
+        this.buildingName = parts[1];
+        this.totalCapacity = Integer.parseInt(parts[2]);
+    }
+
+    /** @param consumer consumer that gets price curve of each period*/
+    void subscribe(SimConsumer consumer){
+        subscribers.add(consumer);
+    }
+
+    private void updateCapacityInfo(){
+        BatteryState previousState = batteryState;
+        batteryState = BatteryRules.state(currentCapacity);
+        if(batteryState != previousState){
+            curve = new PriceCurve(curve == null ? 0 : curve.getVersion() + 1, batteryState,
+                    BatteryRules.priceLB(batteryState), BatteryRules.priceUB(batteryState), BatteryRules.maxDraw(totalCapacity));
+        }
+    }
+
+    /** predict capacity and send price curve of new period to consumers */
+    void startPeriod(){
+        currentCapacity += (city.random.nextBoolean() ? 1 : -1) * city.random.nextDouble() * 0.05;
+        updateCapacityInfo();
+        PriceCurve published = curve;
+        for(SimConsumer c : subscribers){
+            city.deliver(() -> c.curve(published));
+        }
+    }
+
+    /** send building current capacity and state */
+    void informBuilding(){
+        updateCapacityInfo();
+        double capacity = currentCapacity;
+        BatteryState state = batteryState;
+        city.deliver(() -> building.batteryCapacity(capacity, state));
+    }
+
+    void charge(double quantity){
+        currentCapacity += quantity/totalCapacity;
+        city.stats.charged += quantity;
+        updateCapacityInfo();
+    }
+
+    /** consumer requests medium, battery sends at most {@link BatteryRules#maxDraw(double)}, request priced by old
+     * version of price curve is refused with current curve */
+    void requestMedium(SimConsumer consumer, double quantity, long version){
+        if(version >= 0 && version != curve.getVersion()){
+            PriceCurve current = curve;
+            city.deliver(() -> consumer.refused(current));
+            return;
+        }
+
+        double sent;
+        if(quantity <= BatteryRules.maxDraw(totalCapacity)){
+            currentCapacity -= quantity/totalCapacity;
+            sent = quantity;
+        } else {
+            currentCapacity -= 0.05;
+            sent = BatteryRules.maxDraw(totalCapacity);
+        }
+        periodDraw += sent;
+        updateCapacityInfo();
+        city.deliver(() -> consumer.mediumReceived(sent));
+    }
+
+    /** reserve medium for building - percentage of state less medium consumers are expected to draw */
+    void reserveMedium(SimBuilding sender){
+        updateCapacityInfo();
+        double excess = BatteryRules.keepForConsumers(BatteryRules.getExcess(batteryState, currentCapacity, totalCapacity),
+                currentCapacity, totalCapacity, drawForecast.forecast(0));
+        currentCapacity -= excess/totalCapacity;
+        updateCapacityInfo();
+        city.deliver(() -> sender.mediumOffered(name, excess, 0));
+    }
+
+    void mediumReturned(double returned){
+        currentCapacity += returned/totalCapacity;
+        updateCapacityInfo();
+    }
+
+    /** draws of finished period update forecast */
+    void cleanUp(){
+        if(periodStarted){
+            drawForecast.observe(periodDraw);
+        }
+        periodStarted = true;
+        periodDraw = 0;
+    }
+}
@@ -0,0 +1,287 @@
+package simulation;
+
+import agents.BuildingRules;
+import agents.ConsumerForecasts;
+import agents.DemandIndex;
+import jade.core.AID;
+import messages.BatteryState;
+import messages.OfferBook;
+
+import java.util.*;
+
+/** headless counterpart of {@link agents.Building}, messages are replaced by events scheduled in {@link City}, offers
+ * are kept and settled by the same {@link BuildingRules} entry points Building uses, agents are known by their names
+ * ({@link City#aid(String)} only at the books)
+ * */
+class SimBuilding {
+
+    final String name;
+    final List<String> estateIds = new LinkedList<>();
+    private final City city;
+
+    SimBattery battery;
+    private double predictedProduction, actualProduction, totalDemand, batteryTotalCapacity, excessiveProduction;
+    private int consumersCount, offersCount, neighboursCount;
+    private long period;
+    private final Map<SimMarket, Double> marketOrders = new HashMap<>();
+    private final OfferBook consumerOffers = new OfferBook(), buildingOffers = new OfferBook(), reservedMedium = new OfferBook();
+    private final DemandIndex consumerDemands = new DemandIndex();
+    private final Set<AID> forecastOffers = new HashSet<>(); // consumers whose forecast is used as offer in this period
+    private final ConsumerForecasts consumerForecasts = new ConsumerForecasts(); // used when offer doesn't come in time
+    private double reservedTotal;
+    private final Map<String, SimConsumer> consumers = new HashMap<>();
+    private BatteryState batteryState;
+    private boolean negotiationsStarted = false, supplyPlanNotStarted = true, predicted = false;
+
+    SimBuilding(City city, String[] parts){
+        this.city = city;
+        this.name = parts[0];
+        predictedProduction = Double.parseDouble(parts[1]);
+        actualProduction = predictedProduction;
+        estateIds.addAll(Arrays.asList(parts[2].split("-")));
+    }
+
+    void declareBattery(SimBattery b){
+        battery = b;
+        batteryTotalCapacity = b.totalCapacity;
+    }
+
+    void acceptConsumer(SimConsumer c){
+        consumers.put(c.name, c);
+        ++consumersCount;
+    }
+
+    /** predict production and ask battery for it's state */
+    void startPeriod(long period){
+        this.period = period;
+        actualProduction = predictedProduction;
+        if(battery != null){
+            city.deliver(() -> battery.informBuilding());
+        } else {
+            predictionDone();
+        }
+    }
+
+    void batteryCapacity(double capacity, BatteryState state){
+        batteryState = state;
+        predictionDone();
+    }
+
+    /** production and battery state are known, start supply plan if all offers came before */
+    private void predictionDone(){
+        predicted = true;
+        if(supplyPlanNotStarted && offersCount > 0 && offersCount == consumersCount){
+            createSupplyPlan();
+        }
+    }
+
+    /** start supply plan regardless of missing offers, consumers that don't have one get their forecast */
+    void offersDue(){
+        if(supplyPlanNotStarted){
+            consumerForecasts.forecastMissing(consumerOffers, consumerDemands, forecastOffers, (aid, demand) -> {
+                totalDemand += demand;
+                city.stats.demand += demand;
+                ++offersCount;
+            });
+            createSupplyPlan();
+        }
+    }
+
+    void saveOffer(SimConsumer consumer, long period, String provider, double demand){
+        if(period != this.period){ // period is already settled
+            return;
+        }
+        AID aid = city.aid(consumer.name);
+        consumerForecasts.observe(aid, provider, demand);
+
+        int rows = consumerOffers.size();
+        double added = BuildingRules.saveOffer(consumerOffers, consumerDemands, forecastOffers, aid, provider, demand);
+        if(Double.isNaN(added)){ // forecast of consumer was already settled, offer is too late
+            return;
+        }
+        totalDemand += added;
+        city.stats.demand += added;
+        if(consumerOffers.size() == rows){ // offer replaced it's forecast
+            return;
+        }
+
+        if(++offersCount == consumersCount && predicted){
+            createSupplyPlan();
+        }
+    }
+
+    private void createSupplyPlan(){
+        supplyPlanNotStarted = false;
+
+        if(negotiationsStarted){
+            if(neighboursCount == 0){
+                selectOffers();
+            }
+        } else {
+            if(battery != null && batteryState != null) {
+                checkBatteryState();
+            }
+            if(city.trading){
+                negotiationsStarted = true;
+                startTrading();
+            }
+            else if(actualProduction < totalDemand){
+                negotiationsStarted = true;
+                startNegotiations();
+            }
+
+            if(negotiationsStarted && neighboursCount == 0){ // nobody to negotiate with
+                selectOffers();
+            }
+        }
+    }
+
+    private void checkBatteryState(){
+        double quantity = BuildingRules.batteryCharge(batteryState, Double.NaN, actualProduction, batteryTotalCapacity); // no dispatcher
+        if(quantity > 0){
+            actualProduction -= quantity;
+            city.deliver(() -> battery.charge(quantity));
+        }
+    }
+
+    private void startNegotiations(){
+        for(String e : estateIds){
+            for(SimBuilding b : city.estate(e)){
+                city.deliver(() -> b.reserveMedium(this));
+                ++neighboursCount;
+            }
+        }
+
+        if(battery != null){
+            city.deliver(() -> battery.reserveMedium(this));
+            ++neighboursCount;
+        }
+    }
+
+    private void startTrading(){
+        boolean bid = actualProduction < totalDemand;
+        double quantity = bid ? totalDemand - actualProduction : Math.max(0, getExcess());
+        double price = bid ? BuildingRules.MAX_PRICE : city.price(BuildingRules.MIN_PRICE, BuildingRules.MAX_PRICE);
+
+        int allNeighbours = 0;
+        for(String e : estateIds){
+            allNeighbours += city.estate(e).size() - 1;
+        }
+
+        for(String e : estateIds){
+            SimMarket market = city.market(e);
+            double order = BuildingRules.marketShare(quantity, city.estate(e).size() - 1, allNeighbours);
+            marketOrders.put(market, order);
+            if(!bid){
+                actualProduction -= order;
+            }
+            city.deliver(() -> market.saveOrder(this, bid, order, price));
+            ++neighboursCount;
+        }
+
+        if(bid && battery != null){
+            city.deliver(() -> battery.reserveMedium(this));
+            ++neighboursCount;
+        }
+    }
+
+    void receiveAllocation(SimMarket market, double allocated, boolean bid, double price){
+        if(bid){
+            actualProduction += allocated;
+            city.stats.traded += allocated;
+        } else {
+            actualProduction += marketOrders.get(market) - allocated;
+        }
+        --neighboursCount;
+        createSupplyPlan();
+    }
+
+    void reserveMedium(SimBuilding sender){
+        double excessiveProd = Math.max(0, getExcess());
+        actualProduction -= excessiveProd;
+
+        double price = city.price(BuildingRules.MIN_PRICE, BuildingRules.MAX_PRICE);
+        reservedMedium.add(city.aid(sender.name), null, excessiveProd, price);
+        reservedTotal += excessiveProd;
+        city.deliver(() -> sender.mediumOffered(name, excessiveProd, price));
+    }
+
+    /** other building or battery offers medium
+     * @param sender building or battery that reserved medium
+     * @param mediumQuantity reserved medium
+     * @param price price of medium*/
+    void mediumOffered(String sender, double mediumQuantity, double price){
+        if(mediumQuantity > 0){
+            buildingOffers.add(city.aid(sender), null, mediumQuantity, price);
+        }
+        --neighboursCount;
+        createSupplyPlan();
+    }
+
+    /** other building returns excess of medium that has been reserved */
+    void mediumReturned(String sender, double returned){
+        int rm = reservedMedium.find(city.aid(sender));
+        if(rm >= 0){
+            reservedMedium.setDemand(rm, reservedMedium.demand(rm) - returned);
+            reservedTotal -= returned;
+            if(reservedMedium.demand(rm) == 0){
+                reservedMedium.remove(rm);
+            }
+        }
+        actualProduction += returned;
+        createSupplyPlan();
+    }
+
+    private void selectOffers(){
+        actualProduction = BuildingRules.selectOffers(buildingOffers, actualProduction, totalDemand, (o, kept, returned) -> {
+            city.stats.traded += kept;
+            String offered = buildingOffers.aid(o).getLocalName();
+            if(battery != null && offered.equals(battery.name)){
+                city.deliver(() -> battery.mediumReturned(returned));
+            } else {
+                SimBuilding b = city.building(offered);
+                city.deliver(() -> b.mediumReturned(name, returned));
+            }
+        });
+    }
+
+    private double getExcess(){
+        return BuildingRules.getExcess(actualProduction, consumersCount, consumerDemands, reservedTotal);
+    }
+
+    /** send medium to consumers and charge battery with excessive production */
+    void settle(){
+        forecastOffers.clear(); // offers coming after this don't replace forecasts
+        long settled = period;
+        excessiveProduction += BuildingRules.supplyConsumers(consumerOffers, actualProduction, consumersCount, (co, supply) -> {
+            city.stats.buildingSupply += supply;
+            SimConsumer c = consumers.get(consumerOffers.aid(co).getLocalName());
+            city.deliver(() -> c.supplied(settled, supply));
+        });
+
+        if(battery != null){
+            double excess = excessiveProduction;
+            city.deliver(() -> battery.charge(excess));
+        }
+    }
+
+    /** clean state of finished period */
+    void cleanUp(){
+        actualProduction = 0;
+        totalDemand = 0;
+        excessiveProduction = 0;
+        offersCount = 0;
+        neighboursCount = 0;
+        consumerOffers.clear();
+        buildingOffers.clear();
+        reservedMedium.clear();
+        consumerDemands.clear();
+        forecastOffers.clear();
+        reservedTotal = 0;
+        marketOrders.clear();
+        batteryState = null;
+        negotiationsStarted = false;
+        supplyPlanNotStarted = true;
+        predicted = false;
+    }
+}
@@ -0,0 +1,70 @@
+package simulation;
+
+import agents.ConsumerLogic;
+import journal.EventLog;
+import messages.Phase;
+import messages.PriceCurve;
+import org.slf4j.helpers.NOPLogger;
+
+/** headless counterpart of {@link agents.Consumer} - decisions are made by {@link ConsumerLogic}, it's messages are
+ * delivered through {@link City}
+ * */
+class SimConsumer implements ConsumerLogic.Outbox {
+
+    final String name;
+    final String buildingName;
+    private final City city;
+    private final ConsumerLogic logic;
+
+    SimBuilding building;
+    SimBattery battery;
+
+    SimConsumer(City city, String[] parts){
+        this.city = city;
+        this.name = parts[0];
+        this.buildingName = parts[1];
+        this.logic = new ConsumerLogic(name, parts[2], Double.parseDouble(parts[3]), new EventLog(name, NOPLogger.NOP_LOGGER),
+                this, city.random);
+    }
+
+    /** @param phase phase started by clock
+     * @param period period of phase*/
+    void phase(Phase phase, long period){
+        logic.phase(phase, period, building != null);
+    }
+
+    /** building sent medium for offer of period */
+    void supplied(long period, double quantity){
+        logic.supplied(period, quantity);
+    }
+
+    /** battery published price curve */
+    void curve(PriceCurve curve){
+        logic.curve(curve);
+    }
+
+    /** battery refused request priced by old curve */
+    void refused(PriceCurve curve){
+        logic.refused(curve);
+    }
+
+    void mediumReceived(double quantity){
+        city.stats.batterySupply += quantity;
+        logic.mediumReceived(quantity);
+    }
+
+    @Override
+    public void offer(long period, String provider, double demand){
+        city.deliver(() -> building.saveOffer(this, period, provider, demand));
+    }
+
+    @Override
+    public void requestMedium(long period, double quantity, double price, long version){
+        city.deliver(() -> battery.requestMedium(this, quantity, version));
+    }
+
+    @Override
+    public void providerNeeded(String providerId, double demand){
+        city.stats.providerDemand += demand;
+    }
+}
@@ -0,0 +1,47 @@
+package simulation;
+
+import agents.DoubleAuction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** headless counterpart of {@link agents.Market}
+ * */
+class SimMarket {
+
+    private final City city;
+    private final int membersCount;
+    private final DoubleAuction auction = new DoubleAuction();
+    private final List<SimBuilding> participants = new ArrayList<>();
+    private final List<Integer> orders = new ArrayList<>();
+
+    SimMarket(City city, int membersCount){
+        this.city = city;
+        this.membersCount = membersCount;
+    }
+
+    void saveOrder(SimBuilding sender, boolean bid, double quantity, double price){
+        participants.add(sender);
+        orders.add(auction.order(bid, quantity, price));
+
+        if(participants.size() >= membersCount){
+            clearMarket();
+        }
+    }
+
+    private void clearMarket(){
+        double price = auction.clear();
+
+        for(int i = 0; i < participants.size(); ++i){
+            SimBuilding b = participants.get(i);
+            int order = orders.get(i);
+            double allocated = auction.allocated(order);
+            boolean bid = auction.isBid(order);
+            city.deliver(() -> b.receiveAllocation(this, allocated, bid, price));
+        }
+
+        participants.clear();
+        orders.clear();
+        auction.reset();
+    }
+}
@@ -0,0 +1,56 @@
+package simulation;
+
+import java.util.PriorityQueue;
+
+/** discrete-event scheduler with virtual clock, events run in order of time and then order of scheduling
+ * */
+public class Simulation {
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now, sequence, processed;
+
+    /** @return current virtual time in milliseconds*/
+    public long now(){
+        return now;
+    }
+
+    /** @return number of events processed so far*/
+    public long getProcessed(){
+        return processed;
+    }
+
+    /** schedule action after delay counted from current virtual time
+     * @param delay delay in virtual milliseconds
+     * @param action action to run*/
+    public void schedule(long delay, Runnable action){
+        events.add(new Event(now + delay, sequence++, action));
+    }
+
+    /** process events until queue is empty or virtual time passes given limit
+     * @param until last virtual time (inclusive) to process*/
+    public void runUntil(long until){
+        while(!events.isEmpty() && events.peek().time <= until){
+            Event e = events.poll();
+            now = e.time;
+            e.action.run();
+            ++processed;
+        }
+        now = Math.max(now, until);
+    }
+
+    private static final class Event implements Comparable<Event> {
+        private final long time, seq;
+        private final Runnable action;
+
+        private Event(long time, long seq, Runnable action){
+            this.time = time;
+            this.seq = seq;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return time != o.time ? Long.compare(time, o.time) : Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -1,59 +1,182 @@
 package utils;
 
-import jade.core.behaviours.CyclicBehaviour;
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
 import jade.core.behaviours.OneShotBehaviour;
-import jade.lang.acl.ACLMessage;
 import jade.wrapper.AgentController;
 import jade.wrapper.ContainerController;
 import jade.core.Agent;
 
-import java.io.*;
-import java.util.Scanner;
+import java.util.*;
+import java.util.function.Predicate;
+
+import agents.Aggregator;
+import agents.Clock;
+import agents.ConsumerBridge;
+import agents.Dispatcher;
+import agents.Market;
 import messages.ServiceType;
 
+/** creates city agents, modes:
+ * <ul>
+ * <li>default - all agents in container of agent creator</li>
+ * <li>-Dwsd.shards=N - city is split by {@link ShardPlanner} into N peripheral containers of this JVM</li>
+ * <li>-Dwsd.shards=N -Dwsd.remoteShards=true - only clock is created, shards are started in other JVMs by {@link ShardLauncher}</li>
+ * <li>arguments shard;shards (used by {@link ShardLauncher}) - agents of single shard in container of agent creator</li>
+ * </ul>
+ * with -Dwsd.lightConsumers=true consumers of each shard are lightweight actors hosted by {@link ConsumerBridge} agents
+ * */
 public class AgentCreator extends Agent {
     private ContainerController cc;
     private AgentController ac;
 
-    private ClassLoader classLoader = AgentCreator.class.getClassLoader();
-
-    private final static String regex = ";";
-
     @Override
     protected void setup() {
+        addBehaviour(DirectoryCache.shared().subscribe(this)); // keep DF lookups of all agents in this JVM up to date
+
+        Object[] args = getArguments();
+        int shards = Integer.getInteger("wsd.shards", 0);
+
         addBehaviour(new OneShotBehaviour() {
             @Override
             public void action() {
-                createAgents("buildings.txt", "agents.Building", ServiceType.BUILDING);
-                createAgents("batteries.txt", "agents.Battery", ServiceType.BATTERY);
-                createAgents("consumers.txt", "agents.Consumer", ServiceType.CONSUMER);
+                if(args != null && args.length >= 2){ // started by shard launcher
+                    int shard = Integer.parseInt(args[0].toString());
+                    createShard(getContainerController(), new ShardPlanner(ScenarioLoader.read("buildings.txt"), Integer.parseInt(args[1].toString())), shard);
+                    return;
+                }
+
+                createClock();
+
+                if(shards <= 0){
+                    createShard(getContainerController(), null, 0);
+                } else if(!Boolean.getBoolean("wsd.remoteShards")){
+                    ShardPlanner planner = new ShardPlanner(ScenarioLoader.read("buildings.txt"), shards);
+                    for(int s = 0; s < shards; ++s){
+                        Profile profile = new ProfileImpl(false);
+                        profile.setParameter(Profile.CONTAINER_NAME, "shard-" + s);
+                        createShard(Runtime.instance().createAgentContainer(profile), planner, s);
+                    }
+                }
             }
         });
     }
 
+    /** create agents of single shard (buildings, their markets, batteries and consumers)
+     * @param container container of shard agents
+     * @param planner shard plan, null if all agents belong to one shard
+     * @param shard index of shard
+     * */
+    private void createShard(ContainerController container, ShardPlanner planner, int shard){
+        cc = container;
+
+        Predicate<String[]> building = parts -> planner == null || planner.shardOfBuilding(parts[0]) == shard;
+        Predicate<String[]> buildingOf = parts -> planner == null || planner.shardOfBuilding(parts[1]) == shard; // batteries and consumers follow their building
+
+        createAgents("buildings.txt", "agents.Building", ServiceType.BUILDING, building);
+        Predicate<String> estate = e -> planner == null || planner.shardOfEstate(e) == shard;
+        if(Market.ENABLED){
+            createMarkets("buildings.txt", estate);
+        }
+        createAggregators("buildings.txt", estate);
+        createAgents("batteries.txt", "agents.Battery", ServiceType.BATTERY, buildingOf);
+        if(ConsumerBridge.ENABLED){ // consumers as lightweight actors hosted by few bridge agents
+            ScenarioLoader.fromProperties(cc).loadBridges("consumers.txt", "agents.ConsumerBridge", ServiceType.CONSUMER,
+                    ConsumerBridge.NAME, ConsumerBridge.SIZE, buildingOf);
+        } else {
+            createAgents("consumers.txt", "agents.Consumer", ServiceType.CONSUMER, buildingOf);
+        }
+    }
+
+    /** create clock that drives periods of all agents, time scale factor is taken from wsd.timeScale property (default 1),
+     * city aggregator (it waits for one summary from each estate that is first estate of some building)
+     * and battery dispatcher when enabled (it waits for report of each building)
+     * */
+    private void createClock(){
+        cc = getContainerController();
+
+        try {
+            ac = cc.createNewAgent(Clock.NAME, "agents.Clock", new Object[]{Clock.TIME_SCALE});
+            ac.start();
+
+            ac = cc.createNewAgent(Aggregator.CITY, "agents.Aggregator",
+                    new Object[]{ServiceType.AGGREGATOR, new String[]{Aggregator.CITY, "", String.valueOf(firstEstates("buildings.txt").size())}});
+            ac.start();
+
+            if(Dispatcher.ENABLED){
+                ac = cc.createNewAgent(Dispatcher.NAME, "agents.Dispatcher",
+                        new Object[]{ServiceType.DISPATCHER, new String[]{Dispatcher.NAME, "", String.valueOf(ScenarioLoader.read("buildings.txt").size())}});
+                ac.start();
+            }
+        } catch (jade.wrapper.StaleProxyException spe){
+            spe.printStackTrace();
+        }
+    }
+
     /** create all agents with specific parameters obtained from 'databases'
      * @param fileName file that contains agent arguments
      * @param className class implementing agent
      * @param serviceType service that agent provides
+     * @param filter agents to create
      * */
-    private void createAgents(String fileName, String className, ServiceType serviceType){
-        cc = getContainerController();
+    private void createAgents(String fileName, String className, ServiceType serviceType, Predicate<String[]> filter){
+        ScenarioLoader.fromProperties(cc).load(fileName, className, serviceType, filter);
+    }
+
+    /** create aggregator for each estate that is first estate of some building (buildings send summaries there)
+     * @param fileName file that contains building arguments
+     * @param filter estates to create aggregators for
+     * */
+    private void createAggregators(String fileName, Predicate<String> filter){
+        try {
+            for(Map.Entry<String, Integer> e : firstEstates(fileName).entrySet()){
+                if(filter.test(e.getKey())){
+                    String name = Aggregator.estateName(e.getKey());
+                    ac = cc.createNewAgent(name, "agents.Aggregator",
+                            new Object[]{ServiceType.AGGREGATOR, new String[]{name, e.getKey(), String.valueOf(e.getValue())}});
+                    ac.start();
+                }
+            }
+        } catch (jade.wrapper.StaleProxyException spe){
+            spe.printStackTrace();
+        }
+    }
+
+    /** @param fileName file that contains building arguments
+     * @return number of buildings by their first estate*/
+    private static Map<String, Integer> firstEstates(String fileName){
+        Map<String, Integer> estates = new LinkedHashMap<>();
+        for(String[] parts : ScenarioLoader.read(fileName)){
+            estates.merge(parts[2].split("-")[0], 1, Integer::sum);
+        }
+        return estates;
+    }
 
-        File clientsFile = new File(classLoader.getResource(fileName).getFile());
+    /** create market agent for each estate found in buildings file
+     * @param fileName file that contains building arguments
+     * @param filter estates to create markets for
+     * */
+    private void createMarkets(String fileName, Predicate<String> filter){
+        Set<String> estateIds = new LinkedHashSet<>();
 
-        try (Scanner scanner = new Scanner(clientsFile)) {
-            while (scanner.hasNextLine()) { // each line represents single agent
-                String line = scanner.nextLine();
-                String[] parts = line.split(regex); // initial parameters of each agent
+        try {
+            for(String[] parts : ScenarioLoader.read(fileName)){
+                for(String e : parts[2].split("-")){ // estates of building
+                    estateIds.add(e);
+                }
+            }
 
-                ac = cc.createNewAgent(parts[0], className, new Object[]{serviceType, parts}); // agent's name, class implementing agent, agent parameters
-                ac.start();
+            for(String e : estateIds){
+                if(filter.test(e)){
+                    String name = "rynek-" + e;
+                    ac = cc.createNewAgent(name, "agents.Market", new Object[]{ServiceType.MARKET, new String[]{name, e}});
+                    ac.start();
+                }
             }
 
         } catch (jade.wrapper.StaleProxyException spe){
             spe.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,149 @@
+package utils;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.domain.DFService;
+import jade.domain.FIPAAgentManagement.DFAgentDescription;
+import jade.domain.FIPAAgentManagement.SearchConstraints;
+import jade.domain.FIPAAgentManagement.ServiceDescription;
+import jade.domain.FIPAException;
+import jade.lang.acl.ACLMessage;
+import jade.proto.SubscriptionInitiator;
+import jade.util.leap.Iterator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** directory facilitator lookups shared by all agents in JVM, cache is kept fresh by DF subscription of one agent
+ * (see {@link #subscribe(Agent)}); until first notification arrives every lookup goes to DF, after that only lookups
+ * that miss cache (notification of new registration may still be on it's way)
+ * */
+public class DirectoryCache {
+
+    private static final DirectoryCache shared = new DirectoryCache();
+
+    /** service type -> service name -> agent providing it */
+    private final Map<String, Map<String, AID>> services = new ConcurrentHashMap<>();
+    /** agent -> types of services it provides (needed to forget agent after deregistration) */
+    private final Map<AID, Set<String>> types = new ConcurrentHashMap<>();
+    private volatile boolean subscribed = false;
+    private final LongAdder searches = new LongAdder(), hits = new LongAdder();
+
+    /** @return cache shared by agents in this JVM*/
+    public static DirectoryCache shared(){
+        return shared;
+    }
+
+    /** find all agents providing service of given type
+     * @param agent agent asking (used only when DF has to be searched)
+     * @param type type of service
+     * @return agents providing service
+     * @throws FIPAException when DF search fails*/
+    public Collection<AID> search(Agent agent, String type) throws FIPAException {
+        Map<String, AID> providers = services.get(type);
+        if(subscribed && providers != null && !providers.isEmpty()){
+            hits.increment();
+        } else {
+            ServiceDescription sd = new ServiceDescription();
+            sd.setType(type);
+            dfSearch(agent, sd);
+            providers = services.get(type);
+        }
+        return providers == null ? Collections.<AID>emptyList() : Collections.unmodifiableCollection(providers.values());
+    }
+
+    /** find agent providing service of given type and name
+     * @param agent agent asking (used only when DF has to be searched)
+     * @param type type of service
+     * @param name name of service (agents register their local name)
+     * @return agent providing service or null if there is none
+     * @throws FIPAException when DF search fails*/
+    public AID find(Agent agent, String type, String name) throws FIPAException {
+        AID aid = subscribed ? cached(type, name) : null;
+        if(aid != null){
+            hits.increment();
+            return aid;
+        }
+        ServiceDescription sd = new ServiceDescription();
+        sd.setType(type);
+        sd.setName(name);
+        dfSearch(agent, sd);
+        return cached(type, name);
+    }
+
+    private AID cached(String type, String name){
+        Map<String, AID> providers = services.get(type);
+        return providers == null ? null : providers.get(name);
+    }
+
+    private void dfSearch(Agent agent, ServiceDescription sd) throws FIPAException {
+        DFAgentDescription template = new DFAgentDescription();
+        template.addServices(sd);
+        searches.increment();
+        for(DFAgentDescription dfd : DFService.search(agent, template)){
+            update(dfd);
+        }
+    }
+
+    /** create behaviour that subscribes to all DF registrations and keeps cache up to date,
+     * should be added to single long living agent (e.g. agent creator)
+     * @param agent subscribing agent
+     * @return subscription behaviour*/
+    public SubscriptionInitiator subscribe(Agent agent){
+        DFAgentDescription template = new DFAgentDescription(); // empty template matches every registration
+        SearchConstraints sc = new SearchConstraints();
+        sc.setMaxResults(-1L);
+
+        return new SubscriptionInitiator(agent, DFService.createSubscriptionMessage(agent, agent.getDefaultDF(), template, sc)) {
+            @Override
+            protected void handleInform(ACLMessage inform) {
+                try {
+                    for(DFAgentDescription dfd : DFService.decodeNotification(inform.getContent())){
+                        update(dfd);
+                    }
+                    subscribed = true; // first notification contains all current registrations
+                } catch (FIPAException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+    }
+
+    /** replace cached services of agent with services from description (no services means deregistration)
+     * @param dfd agent description from DF*/
+    private void update(DFAgentDescription dfd){
+        AID aid = dfd.getName();
+
+        Set<String> old = types.remove(aid);
+        if(old != null){
+            for(String type : old){
+                Map<String, AID> providers = services.get(type);
+                if(providers != null){
+                    providers.values().remove(aid);
+                }
+            }
+        }
+
+        Set<String> current = new HashSet<>();
+        Iterator it = dfd.getAllServices();
+        while(it.hasNext()){
+            ServiceDescription sd = (ServiceDescription) it.next();
+            services.computeIfAbsent(sd.getType(), k -> new ConcurrentHashMap<>()).put(sd.getName(), aid);
+            current.add(sd.getType());
+        }
+        if(!current.isEmpty()){
+            types.put(aid, current);
+        }
+    }
+
+    /** @return number of searches sent to DF (lookups before first notification and cache misses)*/
+    public long getSearches(){
+        return searches.sum();
+    }
+
+    /** @return number of lookups answered from cache*/
+    public long getHits(){
+        return hits.sum();
+    }
+}
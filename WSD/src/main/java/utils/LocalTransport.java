@@ -0,0 +1,128 @@
+package utils;
+
+import jade.core.AID;
+import jade.core.Agent;
+import jade.lang.acl.ACLMessage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import metrics.TransportMetrics;
+
+/** in-JVM fast path of messages (-Dwsd.localTransport=true) - message for agent of this JVM that reads messages with
+ * {@link OntologyDispatcher} goes to lock-free mailbox of that agent instead of JADE messaging service (no cloning for
+ * each receiver, routing or envelope), all local receivers read the same message object, agent is woken by one doorbell
+ * message per batch of messages, other receivers (other JVMs, DF, agents without dispatcher) get message through ACL
+ * */
+public final class LocalTransport {
+
+    /** messages for agents of this JVM go through local mailboxes */
+    public static final boolean ENABLED = Boolean.getBoolean("wsd.localTransport");
+
+    /** ontology of message that wakes agent when it's mailbox gets first message */
+    static final String DOORBELL = "wsd-local";
+
+    private static final Map<String, Mailbox> mailboxes = new ConcurrentHashMap<>(); // by full name of agent
+    private static final TransportMetrics metrics = TransportMetrics.shared();
+
+    private LocalTransport(){}
+
+    /** messages of one agent waiting for it's dispatcher */
+    static final class Mailbox {
+        private final Agent agent;
+        private final Queue<ACLMessage> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean rung = new AtomicBoolean();
+
+        Mailbox(Agent agent){
+            this.agent = agent;
+        }
+
+        private void deliver(ACLMessage msg){
+            queue.add(msg);
+            if(rung.compareAndSet(false, true)){ // agent may be waiting for messages
+                ACLMessage doorbell = new ACLMessage(ACLMessage.INFORM);
+                doorbell.setOntology(DOORBELL);
+                agent.postMessage(doorbell);
+            }
+        }
+
+        /** doorbell was received, messages that come after this ring it again */
+        void open(){
+            rung.set(false);
+        }
+
+        /** @return next message, null if mailbox is empty*/
+        ACLMessage poll(){
+            return queue.poll();
+        }
+    }
+
+    /** @param agent agent whose dispatcher reads local messages
+     * @return mailbox of agent*/
+    static Mailbox register(Agent agent){
+        Mailbox mailbox = new Mailbox(agent);
+        mailboxes.put(agent.getAID().getName(), mailbox);
+        return mailbox;
+    }
+
+    /** messages for agent go through ACL again (called when agent is taken down)
+     * @param agent agent*/
+    public static void deregister(Agent agent){
+        mailboxes.remove(agent.getAID().getName());
+    }
+
+    /** send message to local receivers through their mailboxes and to the rest through ACL
+     * @param sender sending agent
+     * @param msg message (not changed after sending)*/
+    public static void send(Agent sender, ACLMessage msg){
+        if(!ENABLED){
+            sender.send(msg);
+            return;
+        }
+        if(msg.getSender() == null){
+            msg.setSender(sender.getAID());
+        }
+
+        List<Mailbox> local = null;
+        List<AID> remote = null;
+        for(Iterator<?> it = msg.getAllReceiver(); it.hasNext(); ){
+            AID receiver = (AID) it.next();
+            Mailbox mailbox = mailboxes.get(receiver.getName());
+            if(mailbox != null){
+                if(local == null){
+                    local = new ArrayList<>();
+                }
+                local.add(mailbox);
+            } else {
+                if(remote == null){
+                    remote = new ArrayList<>();
+                }
+                remote.add(receiver);
+            }
+        }
+
+        if(remote != null){
+            ACLMessage acl = msg;
+            if(local != null){ // only remote receivers get ACL message
+                acl = (ACLMessage) msg.clone();
+                acl.clearAllReceiver();
+                for(AID r : remote){
+                    acl.addReceiver(r);
+                }
+            }
+            sender.send(acl);
+            metrics.remote(remote.size());
+        }
+        if(local != null){
+            for(Mailbox m : local){
+                m.deliver(msg);
+            }
+            metrics.local(local.size());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package utils;
+
+import jade.core.Agent;
+import jade.core.behaviours.CyclicBehaviour;
+import jade.lang.acl.ACLMessage;
+import jade.lang.acl.MessageTemplate;
+import messages.StatusType;
+import metrics.AgentMetrics;
+import org.slf4j.Logger;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/** cyclic behaviour that passes each incoming message to handler registered for it's ontology (also messages of
+ * agent's local mailbox), messages with unknown ontology (or without handler) go to single not understood path
+ * */
+public class OntologyDispatcher extends CyclicBehaviour {
+
+    /** reaction for incoming message */
+    public interface Handler {
+        void handle(ACLMessage msg);
+    }
+
+    private static final Map<String, StatusType> ontologies = new HashMap<>();
+    static {
+        for(StatusType st : StatusType.values()){
+            ontologies.put(st.toString(), st);
+        }
+    }
+
+    private final EnumMap<StatusType, Handler> handlers = new EnumMap<>(StatusType.class);
+    private final long[] received = new long[StatusType.values().length];
+    private long notUnderstood;
+    private final Logger logger;
+    private MessageTemplate template;
+    private AgentMetrics metrics;
+    private boolean replyNotUnderstood = false;
+    private LocalTransport.Mailbox mailbox;
+
+    /** @param agent agent receiving messages
+     * @param logger agent's logger*/
+    public OntologyDispatcher(Agent agent, Logger logger){
+        super(agent);
+        this.logger = logger;
+    }
+
+    /** register handler for ontology (replaces previous one)
+     * @param ontology status passed as ontology
+     * @param handler reaction for message
+     * @return this dispatcher*/
+    public OntologyDispatcher on(StatusType ontology, Handler handler){
+        handlers.put(ontology, handler);
+        return this;
+    }
+
+    /** @param reply true if sender of not understood message should get NOT_UNDERSTOOD answer
+     * @return this dispatcher*/
+    public OntologyDispatcher replyNotUnderstood(boolean reply){
+        replyNotUnderstood = reply;
+        return this;
+    }
+
+    /** @param template only messages matching template are dispatched (other behaviours may receive the rest), null for all messages
+     * @return this dispatcher*/
+    public OntologyDispatcher setTemplate(MessageTemplate template){
+        this.template = template;
+        return this;
+    }
+
+    /** @param metrics metrics of agent type counting handled messages too, null for none
+     * @return this dispatcher*/
+    public OntologyDispatcher setMetrics(AgentMetrics metrics){
+        this.metrics = metrics;
+        return this;
+    }
+
+    /** @param ontology ontology of message
+     * @return status passed as given ontology, null if there is no such status*/
+    public static StatusType ontology(String ontology){
+        return ontologies.get(ontology);
+    }
+
+    /** dispatcher without template reads local messages of agent too ({@link LocalTransport}) */
+    @Override
+    public void onStart() {
+        if(LocalTransport.ENABLED && template == null){
+            mailbox = LocalTransport.register(myAgent);
+        }
+    }
+
+    @Override
+    public void action() {
+        ACLMessage msg = template == null ? myAgent.receive() : myAgent.receive(template);
+        if(msg != null){
+            if(mailbox != null && LocalTransport.DOORBELL.equals(msg.getOntology())){
+                mailbox.open();
+                for(ACLMessage local = mailbox.poll(); local != null; local = mailbox.poll()){
+                    dispatch(local);
+                }
+            } else {
+                dispatch(msg);
+            }
+        } else block();
+    }
+
+    /** pass message to it's handler
+     * @param msg received message*/
+    public void dispatch(ACLMessage msg){
+        StatusType st = msg.getOntology() == null ? null : ontologies.get(msg.getOntology());
+        Handler handler = st == null ? null : handlers.get(st);
+
+        if(handler != null){
+            ++received[st.ordinal()];
+            if(metrics != null){
+                metrics.received(st);
+            }
+            handler.handle(msg);
+        } else {
+            notUnderstood(msg);
+        }
+    }
+
+    private void notUnderstood(ACLMessage msg){
+        ++notUnderstood;
+        if(metrics != null){
+            metrics.notUnderstood();
+        }
+        logger.info("message from" + msg.getSender() + " not understood");
+
+        if(replyNotUnderstood && msg.getPerformative() != ACLMessage.NOT_UNDERSTOOD){ // never answer not understood with not understood
+            ACLMessage reply = msg.createReply();
+            reply.setPerformative(ACLMessage.NOT_UNDERSTOOD);
+            reply.setContent(msg.getContent());
+            myAgent.send(reply);
+        }
+    }
+
+    /** @param ontology status passed as ontology
+     * @return number of messages handled for given ontology*/
+    public long getReceived(StatusType ontology){
+        return received[ontology.ordinal()];
+    }
+
+    /** @return number of messages that weren't understood*/
+    public long getNotUnderstood(){
+        return notUnderstood;
+    }
+}
@@ -0,0 +1,147 @@
+package utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/** writes synthetic scenario (buildings.txt, batteries.txt, consumers.txt) in format of daneTestowe, the same seed
+ * and parameters give the same city,
+ * usage: utils.ScenarioGenerator dir [name=value ...], parameters (defaults in brackets):
+ * <ul>
+ * <li>agents - approximate number of buildings, batteries and consumers together, sets buildings if given</li>
+ * <li>buildings (100) - number of buildings</li>
+ * <li>estateSize (10) - number of buildings whose first estate is the same</li>
+ * <li>overlap (0.2) - probability that building belongs also to next estate (each one up to estatesMax)</li>
+ * <li>estatesMax (2) - maximum number of estates of building</li>
+ * <li>consumersMin, consumersMax (1, 4) - number of consumers of building (uniform)</li>
+ * <li>demandMin, demandMax (5, 20) - demand of consumer (uniform, integer)</li>
+ * <li>providers (3) - number of providers</li>
+ * <li>supplyMin, supplyMax (0.5, 1.5) - production of building as part of demand of it's consumers</li>
+ * <li>coverage (0.7) - part of buildings having batteries</li>
+ * <li>batteriesMax (2) - maximum number of batteries of building having them</li>
+ * <li>capacityMin, capacityMax (20, 100) - total capacity of battery (uniform, integer)</li>
+ * <li>seed (0)</li>
+ * </ul>
+ * */
+public class ScenarioGenerator {
+
+    private final static String regex = ";";
+
+    private final Map<String, String> parameters;
+    private final Random random;
+
+    /** @param parameters values of parameters by name, missing ones have default values*/
+    public ScenarioGenerator(Map<String, String> parameters){
+        this.parameters = parameters;
+        this.random = new Random(getLong("seed", 0));
+    }
+
+    /** generate scenario and write it's files
+     * @param dir directory of scenario (created if missing)
+     * @return number of buildings, batteries and consumers
+     * @throws IOException when files can't be written*/
+    public int[] generate(Path dir) throws IOException {
+        int consumersMin = getInt("consumersMin", 1), consumersMax = Math.max(consumersMin, getInt("consumersMax", 4));
+        int batteriesMax = Math.max(1, getInt("batteriesMax", 2));
+        double coverage = getDouble("coverage", 0.7);
+
+        int buildings = getInt("buildings", 100);
+        if(parameters.containsKey("agents")){ // building with it's consumers and batteries on average
+            double perBuilding = 1 + (consumersMin + consumersMax) / 2.0 + coverage * (1 + batteriesMax) / 2.0;
+            buildings = Math.max(1, (int) Math.round(getInt("agents", 0) / perBuilding));
+        }
+
+        int estateSize = Math.max(1, getInt("estateSize", 10)), estatesMax = Math.max(1, getInt("estatesMax", 2));
+        int estates = (buildings + estateSize - 1) / estateSize;
+        double overlap = getDouble("overlap", 0.2);
+        int demandMin = getInt("demandMin", 5), demandMax = Math.max(demandMin, getInt("demandMax", 20));
+        int providers = Math.max(1, getInt("providers", 3));
+        double supplyMin = getDouble("supplyMin", 0.5), supplyMax = Math.max(supplyMin, getDouble("supplyMax", 1.5));
+        int capacityMin = getInt("capacityMin", 20), capacityMax = Math.max(capacityMin, getInt("capacityMax", 100));
+
+        Files.createDirectories(dir);
+        int consumersCount = 0, batteriesCount = 0;
+
+        try(BufferedWriter buildingsFile = Files.newBufferedWriter(dir.resolve("buildings.txt"), StandardCharsets.UTF_8);
+            BufferedWriter batteriesFile = Files.newBufferedWriter(dir.resolve("batteries.txt"), StandardCharsets.UTF_8);
+            BufferedWriter consumersFile = Files.newBufferedWriter(dir.resolve("consumers.txt"), StandardCharsets.UTF_8)) {
+
+            for(int b = 1; b <= buildings; ++b){
+                String building = "budynek" + b;
+
+                int demand = 0;
+                int consumers = consumersMin + random.nextInt(consumersMax - consumersMin + 1);
+                for(int c = 0; c < consumers; ++c){
+                    int consumerDemand = demandMin + random.nextInt(demandMax - demandMin + 1);
+                    demand += consumerDemand;
+                    writeLine(consumersFile, consumersCount++, "konsument" + consumersCount + regex + building + regex
+                            + "dostawca" + (1 + random.nextInt(providers)) + regex + consumerDemand);
+                }
+
+                /* first estate by position, next ones (following estates) with overlap probability */
+                int estate = (b - 1) / estateSize;
+                StringBuilder estateIds = new StringBuilder("osiedle").append(estate + 1);
+                for(int e = 1; e < estatesMax && e < estates && random.nextDouble() < overlap; ++e){
+                    estateIds.append('-').append("osiedle").append((estate + e) % estates + 1);
+                }
+
+                long production = Math.round(demand * (supplyMin + random.nextDouble() * (supplyMax - supplyMin)));
+                writeLine(buildingsFile, b - 1, building + regex + production + regex + estateIds);
+
+                if(random.nextDouble() < coverage){
+                    int batteries = 1 + random.nextInt(batteriesMax);
+                    for(int a = 0; a < batteries; ++a){
+                        writeLine(batteriesFile, batteriesCount++, "akumulator" + batteriesCount + regex + building + regex
+                                + (capacityMin + random.nextInt(capacityMax - capacityMin + 1)));
+                    }
+                }
+            }
+        }
+
+        return new int[]{buildings, batteriesCount, consumersCount};
+    }
+
+    /** lines are separated, without new line at the end (like files of daneTestowe) */
+    private static void writeLine(BufferedWriter writer, int index, String line) throws IOException {
+        if(index > 0){
+            writer.newLine();
+        }
+        writer.write(line);
+    }
+
+    private int getInt(String name, int defaultValue){
+        return parameters.containsKey(name) ? Integer.parseInt(parameters.get(name)) : defaultValue;
+    }
+
+    private long getLong(String name, long defaultValue){
+        return parameters.containsKey(name) ? Long.parseLong(parameters.get(name)) : defaultValue;
+    }
+
+    private double getDouble(String name, double defaultValue){
+        return parameters.containsKey(name) ? Double.parseDouble(parameters.get(name)) : defaultValue;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("usage: utils.ScenarioGenerator dir [name=value ...]");
+            return;
+        }
+
+        Map<String, String> parameters = new HashMap<>();
+        for(int i = 1; i < args.length; ++i){
+            String[] parameter = args[i].split("=", 2);
+            if(parameter.length != 2){
+                System.err.println("parameter " + args[i] + " should be name=value");
+                return;
+            }
+            parameters.put(parameter[0], parameter[1]);
+        }
+
+        int[] counts = new ScenarioGenerator(parameters).generate(Paths.get(args[0]));
+        System.out.println(counts[0] + " buildings, " + counts[1] + " batteries, " + counts[2] + " consumers written to " + args[0]);
+    }
+}
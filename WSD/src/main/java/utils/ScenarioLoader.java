@@ -0,0 +1,202 @@
+package utils;
+
+import jade.wrapper.AgentController;
+import jade.wrapper.ContainerController;
+import jade.wrapper.StaleProxyException;
+import messages.ServiceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/** streams scenario files (buildings.txt, batteries.txt, consumers.txt) and creates agents in parallel batches,
+ * batches are started one after another with small delay, so that DF isn't flooded with registrations,
+ * files are read from directory given by wsd.scenario property or from classpath (also inside jar)
+ * */
+public class ScenarioLoader {
+
+    private final static String regex = ";";
+
+    private final ContainerController cc;
+    private final int threads, batchSize;
+    private final long batchDelay;
+    private long startNanos;
+
+    private Logger logger = LoggerFactory.getLogger("loader");
+
+    /** @param cc container to create agents in
+     * @param threads number of threads creating agents
+     * @param batchSize number of agents created and started together
+     * @param batchDelay delay between starts of batches in milliseconds*/
+    public ScenarioLoader(ContainerController cc, int threads, int batchSize, long batchDelay){
+        this.cc = cc;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+    }
+
+    /** loader configured by wsd.loaderThreads, wsd.startBatch and wsd.startDelay properties
+     * @param cc container to create agents in
+     * @return loader*/
+    public static ScenarioLoader fromProperties(ContainerController cc){
+        return new ScenarioLoader(cc, Integer.getInteger("wsd.loaderThreads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("wsd.startBatch", 500), Long.getLong("wsd.startDelay", 50L));
+    }
+
+    /** lazily read lines of scenario file, stream has to be closed
+     * @param fileName name of scenario file
+     * @return non empty lines split by ";"
+     * @throws IOException when file can't be opened*/
+    public static Stream<String[]> lines(String fileName) throws IOException {
+        BufferedReader reader;
+        String dir = System.getProperty("wsd.scenario");
+
+        if(dir != null){
+            reader = Files.newBufferedReader(Paths.get(dir).resolve(fileName), StandardCharsets.UTF_8);
+        } else {
+            InputStream in = ScenarioLoader.class.getClassLoader().getResourceAsStream(fileName);
+            if(in == null){
+                throw new FileNotFoundException(fileName);
+            }
+            reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        return reader.lines().onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).filter(line -> !line.trim().isEmpty()).map(line -> line.split(regex));
+    }
+
+    /** read whole (small) scenario file
+     * @param fileName name of scenario file
+     * @return non empty lines split by ";"*/
+    public static List<String[]> read(String fileName){
+        List<String[]> lines = new ArrayList<>();
+        try (Stream<String[]> s = lines(fileName)) {
+            s.forEach(lines::add);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return lines;
+    }
+
+    /** create and start agents from scenario file, only few batches are kept in memory at once
+     * @param fileName file that contains agent arguments
+     * @param className class implementing agent
+     * @param serviceType service that agent provides
+     * @param filter agents to create
+     * @return number of started agents*/
+    public int load(String fileName, String className, ServiceType serviceType, Predicate<String[]> filter){
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<List<AgentController>>> window = new ArrayDeque<>();
+        long start = System.nanoTime();
+        int started = 0;
+        startNanos = 0;
+
+        try (Stream<String[]> s = lines(fileName)) {
+            List<String[]> batch = new ArrayList<>(batchSize);
+            Iterator<String[]> it = s.filter(filter).iterator();
+
+            while(it.hasNext()){
+                batch.add(it.next());
+                if(batch.size() == batchSize || !it.hasNext()){
+                    List<String[]> created = batch;
+                    window.add(executor.submit(() -> create(created, className, serviceType)));
+                    batch = new ArrayList<>(batchSize);
+
+                    if(window.size() > threads){ // don't read whole file ahead of starting agents
+                        started += start(window.poll());
+                    }
+                }
+            }
+            while(!window.isEmpty()){
+                started += start(window.poll());
+            }
+
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long total = (System.nanoTime() - start) / 1_000_000;
+        logger.info(fileName + ": " + started + " agents in " + total + " ms (reading, creating and waiting between batches " + (total - startNanos / 1_000_000)
+                + " ms, starting " + startNanos / 1_000_000 + " ms)");
+        return started;
+    }
+
+    /** create and start bridge agents hosting lightweight consumers, each bridge gets next bridgeSize lines of file
+     * @param fileName file that contains consumer arguments
+     * @param className class implementing bridge
+     * @param serviceType service that consumers provide
+     * @param namePrefix prefix of bridge name (name of it's first consumer follows)
+     * @param bridgeSize number of consumers per bridge
+     * @param filter consumers to create
+     * @return number of consumers*/
+    public int loadBridges(String fileName, String className, ServiceType serviceType, String namePrefix, int bridgeSize,
+                           Predicate<String[]> filter){
+        long start = System.nanoTime();
+        int consumers = 0, bridges = 0;
+
+        try (Stream<String[]> s = lines(fileName)) {
+            List<String[]> bridge = new ArrayList<>(bridgeSize);
+            Iterator<String[]> it = s.filter(filter).iterator();
+
+            while(it.hasNext()){
+                bridge.add(it.next());
+                if(bridge.size() == bridgeSize || !it.hasNext()){
+                    String name = namePrefix + bridge.get(0)[0];
+                    cc.createNewAgent(name, className, new Object[]{serviceType, new String[]{name}, bridge}).start();
+                    consumers += bridge.size();
+                    ++bridges;
+                    bridge = new ArrayList<>(bridgeSize);
+                }
+            }
+
+        } catch (IOException | StaleProxyException e) {
+            e.printStackTrace();
+        }
+
+        logger.info(fileName + ": " + consumers + " consumers in " + bridges + " bridges in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return consumers;
+    }
+
+    private List<AgentController> create(List<String[]> batch, String className, ServiceType serviceType) throws StaleProxyException {
+        List<AgentController> controllers = new ArrayList<>(batch.size());
+        for(String[] parts : batch){
+            controllers.add(cc.createNewAgent(parts[0], className, new Object[]{serviceType, parts})); // agent's name, class implementing agent, agent parameters
+        }
+        return controllers;
+    }
+
+    /** wait for batch to be created, start it's agents and wait before next batch */
+    private int start(Future<List<AgentController>> batch) throws InterruptedException, ExecutionException {
+        List<AgentController> controllers = batch.get();
+        long t = System.nanoTime();
+
+        for(AgentController ac : controllers){
+            try {
+                ac.start();
+            } catch (StaleProxyException spe) {
+                spe.printStackTrace();
+            }
+        }
+        startNanos += System.nanoTime() - t;
+
+        if(batchDelay > 0){
+            Thread.sleep(batchDelay);
+        }
+        return controllers.size();
+    }
+}
@@ -0,0 +1,27 @@
+package utils;
+
+import jade.core.Profile;
+import jade.core.ProfileImpl;
+import jade.core.Runtime;
+import jade.wrapper.ContainerController;
+import jade.wrapper.StaleProxyException;
+
+/** starts single shard of city in this JVM - peripheral container joins main container and it's agent creator creates
+ * agents of the shard, main container should be started with -Dwsd.shards=N -Dwsd.remoteShards=true,
+ * usage: utils.ShardLauncher shard shards [mainHost] [mainPort]
+ * */
+public class ShardLauncher {
+
+    public static void main(String[] args) throws StaleProxyException {
+        if(args.length < 2){
+            System.err.println("usage: utils.ShardLauncher shard shards [mainHost] [mainPort]");
+            return;
+        }
+
+        Profile profile = new ProfileImpl(args.length > 2 ? args[2] : "localhost", args.length > 3 ? Integer.parseInt(args[3]) : 1099, null);
+        profile.setParameter(Profile.CONTAINER_NAME, "shard-" + args[0]);
+
+        ContainerController cc = Runtime.instance().createAgentContainer(profile);
+        cc.createNewAgent("city-" + args[0], "utils.AgentCreator", new Object[]{args[0], args[1]}).start();
+    }
+}
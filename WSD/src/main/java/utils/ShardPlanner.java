@@ -0,0 +1,90 @@
+package utils;
+
+import java.util.*;
+
+/** splits city into shards - buildings of estates that share neighbours (e.g. osiedle1-osiedle2) always land in
+ * the same shard, groups are spread over shards so that each shard gets similar number of buildings
+ * */
+public class ShardPlanner {
+
+    private final Map<String, Integer> estateShard = new HashMap<>(), buildingShard = new HashMap<>();
+    private final int shards;
+
+    /** @param buildings lines of buildings file split by ";" (name;production;estate1-estate2...)
+     * @param shards number of shards*/
+    public ShardPlanner(List<String[]> buildings, int shards){
+        this.shards = shards;
+
+        /* union estates of each building */
+        Map<String, String> parent = new HashMap<>();
+        for(String[] parts : buildings){
+            String[] estates = parts[2].split("-");
+            for(String e : estates){
+                parent.putIfAbsent(e, e);
+            }
+            for(int i = 1; i < estates.length; ++i){
+                parent.put(find(parent, estates[i]), find(parent, estates[0]));
+            }
+        }
+
+        /* size of each group of estates (number of buildings) */
+        Map<String, Integer> groupSize = new HashMap<>();
+        for(String[] parts : buildings){
+            groupSize.merge(find(parent, parts[2].split("-")[0]), 1, Integer::sum);
+        }
+
+        /* biggest groups first, each to the least loaded shard */
+        List<Map.Entry<String, Integer>> groups = new ArrayList<>(groupSize.entrySet());
+        groups.sort((a, b) -> b.getValue() != a.getValue().intValue() ? b.getValue() - a.getValue() : a.getKey().compareTo(b.getKey()));
+
+        int[] load = new int[shards];
+        Map<String, Integer> groupShard = new HashMap<>();
+        for(Map.Entry<String, Integer> g : groups){
+            int least = 0;
+            for(int s = 1; s < shards; ++s){
+                if(load[s] < load[least]){
+                    least = s;
+                }
+            }
+            load[least] += g.getValue();
+            groupShard.put(g.getKey(), least);
+        }
+
+        for(String e : parent.keySet()){
+            estateShard.put(e, groupShard.getOrDefault(find(parent, e), 0));
+        }
+        for(String[] parts : buildings){
+            buildingShard.put(parts[0], estateShard.get(parts[2].split("-")[0]));
+        }
+    }
+
+    private static String find(Map<String, String> parent, String e){
+        String root = e;
+        while(!parent.get(root).equals(root)){
+            root = parent.get(root);
+        }
+        while(!parent.get(e).equals(root)){ // path compression
+            String next = parent.get(e);
+            parent.put(e, root);
+            e = next;
+        }
+        return root;
+    }
+
+    /** @param buildingName name of building
+     * @return shard of building (0 for unknown building)*/
+    public int shardOfBuilding(String buildingName){
+        return buildingShard.getOrDefault(buildingName, 0);
+    }
+
+    /** @param estateId estate id
+     * @return shard of estate (0 for unknown estate)*/
+    public int shardOfEstate(String estateId){
+        return estateShard.getOrDefault(estateId, 0);
+    }
+
+    /** @return number of shards*/
+    public int getShards(){
+        return shards;
+    }
+}
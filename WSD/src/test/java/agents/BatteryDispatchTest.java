@@ -0,0 +1,97 @@
+package agents;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatteryDispatchTest {
+
+    @Test
+    public void surplusChargesBatteryUpToRate(){
+        BatteryDispatch dispatch = new BatteryDispatch();
+        int row = dispatch.add(0, 25, 0.5, 100);
+        dispatch.solve();
+
+        assertEquals(BatteryDispatch.RATE * 100, dispatch.setpoint(row), 1e-9);
+        assertEquals(15, dispatch.getSpilled(), 1e-9);
+        assertEquals(0, dispatch.getUnmet(), 0);
+    }
+
+    @Test
+    public void deficitDischargesFullerBatteryFirst(){
+        BatteryDispatch dispatch = new BatteryDispatch();
+        int empty = dispatch.add(0, -6, 0.3, 100);
+        int full = dispatch.add(0, 0, 0.9, 100);
+        dispatch.solve();
+
+        assertEquals(-6, dispatch.setpoint(full), 1e-9);
+        assertEquals(0, dispatch.setpoint(empty), 1e-9);
+    }
+
+    @Test
+    public void batteryIsNotDischargedBelowMinimum(){
+        BatteryDispatch dispatch = new BatteryDispatch();
+        int row = dispatch.add(0, -20, BatteryDispatch.MIN_CHARGE + 0.02, 100);
+        int none = dispatch.add(0, 0, 0, 0);
+        dispatch.solve();
+
+        assertEquals(-2, dispatch.setpoint(row), 1e-6);
+        assertEquals(18, dispatch.getUnmet(), 1e-6);
+        assertFalse(dispatch.hasBattery(none));
+        assertEquals(0, dispatch.setpoint(none), 0);
+    }
+
+    @Test
+    public void ownGroupIsServedFirst(){
+        BatteryDispatch dispatch = new BatteryDispatch();
+        int own = dispatch.add(0, -5, 0.5, 100);
+        int other = dispatch.add(1, 0, 0.9, 100); // fuller, but in other group
+        dispatch.solve();
+
+        assertEquals(-5, dispatch.setpoint(own), 1e-9);
+        assertEquals(0, dispatch.setpoint(other), 1e-9);
+    }
+
+    /** random fleets - rate and charge limits hold, batteries never charge and discharge in the same period and net
+     * load of city is covered by setpoints and unmet (or spilled) medium */
+    @Test
+    public void setpointsBalanceNetLoad(){
+        Random random = new Random(5);
+        BatteryDispatch dispatch = new BatteryDispatch();
+        for(int n : new int[]{10, 1000, 5000}){
+            for(int period = 0; period < 50; ++period){
+                dispatch.clear();
+                double[] charge = new double[n], capacity = new double[n];
+                double cityNet = 0;
+                for(int i = 0; i < n; ++i){
+                    charge[i] = random.nextDouble();
+                    capacity[i] = random.nextInt(4) == 0 ? 0 : 20 + random.nextInt(80);
+                    double net = random.nextGaussian() * 10 - (period % 2 == 0 ? 3 : -3);
+                    cityNet += net;
+                    dispatch.add(i / 10, net, charge[i], capacity[i]);
+                }
+                dispatch.solve();
+
+                double total = 0;
+                boolean charging = false, discharging = false;
+                for(int i = 0; i < n; ++i){
+                    double s = dispatch.setpoint(i);
+                    total += s;
+                    charging |= s > 1e-12;
+                    discharging |= s < -1e-12;
+                    if(s < 0){
+                        assertTrue(-s <= Math.min(BatteryDispatch.RATE, Math.max(0, charge[i] - BatteryDispatch.MIN_CHARGE)) * capacity[i] + 1e-9);
+                    } else {
+                        assertTrue(s <= Math.min(BatteryDispatch.RATE, 1 - charge[i]) * capacity[i] + 1e-9);
+                    }
+                }
+                assertFalse(charging && discharging);
+
+                double residual = cityNet < 0 ? cityNet - total + dispatch.getUnmet() : cityNet - total - dispatch.getSpilled();
+                assertEquals(0, residual, 1e-6);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package agents;
+
+import forecast.HoltWinters;
+import journal.EventLog;
+import messages.BatteryState;
+import messages.Phase;
+import messages.PriceCurve;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConsumerLogicTest {
+
+    /** messages of consumer */
+    private static class Sent implements ConsumerLogic.Outbox {
+        final List<Double> offers = new ArrayList<>();
+        final List<double[]> requests = new ArrayList<>(); // quantity, price, version, period
+
+        @Override
+        public void offer(long period, String provider, double demand){
+            offers.add(demand);
+        }
+
+        @Override
+        public void requestMedium(long period, double quantity, double price, long version){
+            requests.add(new double[]{quantity, price, version, period});
+        }
+    }
+
+    private final Sent sent = new Sent();
+    private final ConsumerLogic logic = new ConsumerLogic("konsument1", "dostawca1", 10,
+            new EventLog("konsument1", LoggerFactory.getLogger("konsument1")), sent);
+
+    /** curve with price below any provider price (providers ask at least 0.01) */
+    private static PriceCurve cheap(long version, double maxDraw){
+        return new PriceCurve(version, BatteryState.SEND_MEDIUM, 0, 0, maxDraw);
+    }
+
+    @Test
+    public void unsuppliedOfferGoesToNextOne(){
+        logic.phase(Phase.PREDICT, 1, true);
+        logic.phase(Phase.CLEANUP, 1, true); // building didn't supply period 1
+        logic.phase(Phase.PREDICT, 2, true);
+
+        assertEquals(10, sent.offers.get(0), 1e-9);
+        assertEquals(20, sent.offers.get(1), 1e-9);
+    }
+
+    @Test
+    public void noOfferWithoutBuilding(){
+        logic.phase(Phase.PREDICT, 1, false);
+        assertTrue(sent.offers.isEmpty());
+    }
+
+    @Test
+    public void shortageFromCheapBatteryIsCappedByMaxDraw(){
+        logic.curve(cheap(3, 2.5));
+        logic.phase(Phase.PREDICT, 1, true);
+        logic.supplied(1, 6);
+
+        assertEquals(1, sent.requests.size());
+        assertEquals(2.5, sent.requests.get(0)[0], 1e-9);
+        assertEquals(3, sent.requests.get(0)[2], 0);
+    }
+
+    @Test
+    public void refusedRequestIsPricedByNewCurve(){
+        logic.curve(cheap(0, 100));
+        logic.phase(Phase.PREDICT, 1, true);
+        logic.supplied(1, 6);
+        logic.refused(cheap(1, 100));
+
+        assertEquals(2, sent.requests.size());
+        assertEquals(4, sent.requests.get(1)[0], 1e-9);
+        assertEquals(1, sent.requests.get(1)[2], 0);
+        assertEquals(1, sent.requests.get(1)[3], 0);
+    }
+
+    /** with pipelined clock next period starts before shortage of previous one is requested */
+    @Test
+    public void shortageIsRequestedForItsPeriod(){
+        logic.curve(cheap(0, 100));
+        logic.phase(Phase.PREDICT, 1, true);
+        logic.phase(Phase.PREDICT, 2, true);
+        logic.supplied(1, 6);
+
+        assertEquals(1, sent.requests.size());
+        assertEquals(4, sent.requests.get(0)[0], 1e-9);
+        assertEquals(1, sent.requests.get(0)[3], 0);
+    }
+
+    @Test
+    public void expensiveBatteryIsNotAsked(){
+        logic.curve(new PriceCurve(0, BatteryState.REQUEST_MEDIUM, 2, 2, 100));
+        logic.phase(Phase.PREDICT, 1, true);
+        logic.supplied(1, 6);
+
+        assertTrue(sent.requests.isEmpty());
+    }
+
+    /** charging expected by forecast is part of offer, charging that comes takes that share first */
+    @Test
+    public void chargingCoveredByForecastIsNotOfferedTwice(){
+        HoltWinters forecast = new HoltWinters();
+
+        logic.phase(Phase.PREDICT, 1, true);
+        logic.charging(5); // not forecast yet, goes to next offer
+        logic.supplied(1, 10);
+        logic.phase(Phase.CLEANUP, 1, true);
+
+        logic.phase(Phase.PREDICT, 2, true);
+        forecast.observe(15);
+        double predicted = Math.max(10, forecast.forecast(10));
+        assertTrue(predicted > 10);
+        assertEquals(5 + predicted, sent.offers.get(1), 1e-9);
+
+        logic.charging(predicted - 10); // exactly what forecast expected
+        logic.supplied(2, sent.offers.get(1));
+        logic.phase(Phase.CLEANUP, 2, true);
+
+        logic.phase(Phase.PREDICT, 3, true);
+        forecast.observe(predicted);
+        assertEquals(Math.max(10, forecast.forecast(10)), sent.offers.get(2), 1e-9);
+    }
+}
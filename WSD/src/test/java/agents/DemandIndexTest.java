@@ -0,0 +1,84 @@
+package agents;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DemandIndexTest {
+
+    /** excess counted by walking all offers, as building did before the index */
+    private static double linearExcess(double actualProduction, int consumersCount, List<Double> demands, double reserved){
+        double consumerSupply = actualProduction/consumersCount;
+        double excess = 0;
+        for(double d : demands){
+            if(d <= consumerSupply){
+                excess += consumerSupply - d;
+            }
+        }
+        return excess - reserved;
+    }
+
+    @Test
+    public void excessOfEmptyIndexIsZero(){
+        DemandIndex index = new DemandIndex();
+        assertEquals(0, index.excess(5), 0);
+        index.add(3);
+        assertEquals(0, index.excess(Double.NaN), 0);
+    }
+
+    /** demand equal to share counts (with zero excess), replaced demand stops counting */
+    @Test
+    public void replacedDemandStopsCounting(){
+        DemandIndex index = new DemandIndex();
+        index.add(2);
+        index.add(5);
+        index.add(9);
+        assertEquals(3, index.excess(5), 0);
+
+        index.replace(2, 7);
+        assertEquals(3, index.size());
+        assertEquals(0, index.excess(5), 0);
+        assertEquals(4, index.excess(8), 0);
+
+        index.clear();
+        index.add(4);
+        assertEquals(1, index.excess(5), 0); // replacements of previous period are gone
+    }
+
+    @Test
+    public void excessMatchesLinearWalk(){
+        Random random = new Random(42);
+        DemandIndex index = new DemandIndex();
+        List<Double> demands = new ArrayList<>();
+
+        for(int step = 0; step < 20000; ++step){
+            int op = random.nextInt(100);
+            if(op < 60){
+                double demand = random.nextBoolean() ? random.nextInt(20) : random.nextDouble() * 20; // ties and shares equal to demands
+                index.add(demand);
+                demands.add(demand);
+            } else if(op < 85 && !demands.isEmpty()){ // forecast replaced by late offer
+                int i = random.nextInt(demands.size());
+                double replacement = random.nextBoolean() ? random.nextInt(20) : random.nextDouble() * 20;
+                index.replace(demands.get(i), replacement);
+                demands.set(i, replacement);
+            } else if(op < 87){
+                index.clear();
+                demands.clear();
+            }
+
+            assertEquals(demands.size(), index.size());
+            for(int q = 0; q < 3; ++q){
+                int consumers = demands.size() + random.nextInt(3) + 1;
+                double production = random.nextBoolean() ? random.nextInt(20) * consumers : random.nextDouble() * 20 * consumers;
+                double reserved = random.nextDouble() * 5;
+                assertEquals(linearExcess(production, consumers, demands, reserved),
+                        BuildingRules.getExcess(production, consumers, index, reserved), 1e-6);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package agents;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DoubleAuctionTest {
+
+    @Test
+    public void bidIsFilledByCheapestAsks(){
+        DoubleAuction auction = new DoubleAuction();
+        int bid = auction.order(true, 10, 0.8);
+        int cheap = auction.order(false, 4, 0.2);
+        int middle = auction.order(false, 3, 0.5);
+        int expensive = auction.order(false, 5, 0.9);
+
+        auction.clear();
+
+        assertEquals(7, auction.allocated(bid), 1e-9); // partial fill of bid
+        assertEquals(4, auction.allocated(cheap), 1e-9);
+        assertEquals(3, auction.allocated(middle), 1e-9);
+        assertEquals(0, auction.allocated(expensive), 1e-9);
+        assertEquals((0.8 + 0.5) / 2, auction.getClearingPrice(), 1e-9);
+    }
+
+    @Test
+    public void askIsSplitBetweenBids(){
+        DoubleAuction auction = new DoubleAuction();
+        int ask = auction.order(false, 10, 0.1);
+        int high = auction.order(true, 3, 0.9);
+        int low = auction.order(true, 4, 0.5);
+        int tooLow = auction.order(true, 6, 0.05);
+
+        auction.clear();
+
+        assertEquals(7, auction.allocated(ask), 1e-9); // partial fill of ask
+        assertEquals(3, auction.allocated(high), 1e-9);
+        assertEquals(4, auction.allocated(low), 1e-9);
+        assertEquals(0, auction.allocated(tooLow), 1e-9);
+        assertTrue(auction.isBid(high));
+        assertFalse(auction.isBid(ask));
+    }
+
+    @Test
+    public void lastBidIsFilledPartially(){
+        DoubleAuction auction = new DoubleAuction();
+        int first = auction.order(true, 5, 0.9);
+        int second = auction.order(true, 5, 0.7);
+        int ask = auction.order(false, 8, 0.3);
+
+        auction.clear();
+
+        assertEquals(5, auction.allocated(first), 1e-9);
+        assertEquals(3, auction.allocated(second), 1e-9);
+        assertEquals(8, auction.allocated(ask), 1e-9);
+    }
+
+    @Test
+    public void nothingIsTradedWhenBidsAreBelowAsks(){
+        DoubleAuction auction = new DoubleAuction();
+        int bid = auction.order(true, 5, 0.2);
+        int ask = auction.order(false, 5, 0.4);
+        int empty = auction.order(true, 0, 1);
+
+        assertEquals(0, auction.clear(), 0);
+        assertEquals(0, auction.allocated(bid), 0);
+        assertEquals(0, auction.allocated(ask), 0);
+        assertEquals(0, auction.allocated(empty), 0);
+        assertEquals(3, auction.size());
+    }
+
+    @Test
+    public void resetForgetsOrders(){
+        DoubleAuction auction = new DoubleAuction();
+        auction.order(true, 5, 0.9);
+        auction.order(false, 5, 0.1);
+        auction.clear();
+        auction.reset();
+
+        assertEquals(0, auction.size());
+        assertEquals(0, auction.getClearingPrice(), 0);
+        int bid = auction.order(true, 2, 0.9);
+        auction.order(false, 1, 0.1);
+        auction.clear();
+        assertEquals(1, auction.allocated(bid), 1e-9);
+    }
+}
@@ -0,0 +1,120 @@
+package checkpoint;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+
+    private Path directory, file;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("checkpoint");
+        file = directory.resolve("stan");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for(Path f : files){
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /** record in layout of class doc */
+    private static void record(DataOutputStream out, byte kind, long period, String agent, double value, double value2) throws IOException {
+        out.writeByte(kind);
+        out.writeLong(period);
+        out.writeUTF(agent);
+        out.writeDouble(value);
+        out.writeDouble(value2);
+    }
+
+    private static int recordLength(String agent){
+        return 1 + 8 + 2 + agent.length() + 8 + 8;
+    }
+
+    @Test
+    public void missingFileRestoresNothing() throws IOException {
+        Checkpoint checkpoint = new Checkpoint(file);
+        assertNull(checkpoint.snapshot("budynek1"));
+        assertEquals(0, checkpoint.latestPeriod());
+        checkpoint.close();
+    }
+
+    /** crash while writing leaves part of last record, it is skipped and earlier records are restored */
+    @Test
+    public void tornLastRecordIsSkipped() throws IOException {
+        try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            record(out, Checkpoint.BATTERY, 4, "akumulator1", 0.6, 0);
+            record(out, Checkpoint.BATTERY, 5, "akumulator1", 0.7, 0);
+            out.writeByte(Checkpoint.BATTERY); // torn record of period 6
+            out.writeLong(6);
+            out.writeUTF("akumulator1");
+            out.writeInt(0);
+        }
+
+        Checkpoint checkpoint = new Checkpoint(file);
+        assertArrayEquals(new double[]{0.7, 0}, checkpoint.snapshot("akumulator1"), 0);
+        assertEquals(5, checkpoint.latestPeriod());
+        checkpoint.close();
+
+        assertEquals(recordLength("akumulator1"), Files.size(file)); // compaction dropped torn bytes as well
+    }
+
+    /** latest period of each agent wins regardless of order of records, compacted file gives the same snapshots and
+     * records appended after it are read on next start */
+    @Test
+    public void latestSnapshotSurvivesCompaction() throws IOException {
+        try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            record(out, Checkpoint.BUILDING, 1, "budynek1", 10, 0);
+            record(out, Checkpoint.CONSUMER, 2, "konsument1", 1.5, 0.5);
+            record(out, Checkpoint.BUILDING, 3, "budynek1", 12, 0);
+            record(out, Checkpoint.CONSUMER, 1, "konsument1", 9, 9); // late writer of older period
+            record(out, Checkpoint.BUILDING, 2, "budynek1", 11, 0);
+        }
+
+        Checkpoint checkpoint = new Checkpoint(file);
+        assertArrayEquals(new double[]{12, 0}, checkpoint.snapshot("budynek1"), 0);
+        assertArrayEquals(new double[]{1.5, 0.5}, checkpoint.snapshot("konsument1"), 0);
+        assertEquals(3, checkpoint.latestPeriod());
+        checkpoint.append(Checkpoint.CONSUMER, 4, "konsument1", 2.5, 0);
+        checkpoint.close();
+
+        assertEquals(recordLength("budynek1") + recordLength("konsument1") + recordLength("konsument1"), Files.size(file));
+
+        checkpoint = new Checkpoint(file);
+        assertArrayEquals(new double[]{12, 0}, checkpoint.snapshot("budynek1"), 0);
+        assertArrayEquals(new double[]{2.5, 0}, checkpoint.snapshot("konsument1"), 0);
+        assertNull(checkpoint.snapshot("akumulator1"));
+        assertEquals(4, checkpoint.latestPeriod());
+        checkpoint.close();
+
+        assertEquals(recordLength("budynek1") + recordLength("konsument1"), Files.size(file));
+    }
+
+    /** clock continues from latest period of any agent, even when other agents saved earlier ones */
+    @Test
+    public void restoredPeriodIsLatestOfAllAgents() throws IOException {
+        try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            record(out, Checkpoint.BATTERY, 7, "akumulator1", 0.5, 0);
+            record(out, Checkpoint.BUILDING, 9, "budynek1", 3, 0);
+            record(out, Checkpoint.CONSUMER, 8, "konsument1", 0, 0);
+        }
+
+        Checkpoint checkpoint = new Checkpoint(file);
+        assertEquals(9, checkpoint.latestPeriod());
+        checkpoint.close();
+    }
+}
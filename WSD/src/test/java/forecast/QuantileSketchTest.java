@@ -0,0 +1,68 @@
+package forecast;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+    @Test
+    public void fewValuesGiveNearestValue(){
+        QuantileSketch sketch = new QuantileSketch(0.5);
+        assertFalse(sketch.isReady());
+        assertEquals(0, sketch.getQuantile(), 0);
+
+        sketch.add(30);
+        sketch.add(10);
+        sketch.add(20);
+        assertFalse(sketch.isReady());
+        assertEquals(20, sketch.getQuantile(), 0);
+    }
+
+    @Test
+    public void firstFiveValuesAreMarkers(){
+        QuantileSketch sketch = new QuantileSketch(0.5);
+        for(double v : new double[]{5, 1, 4, 2, 3}){
+            sketch.add(v);
+        }
+        assertTrue(sketch.isReady());
+        assertEquals(5, sketch.getCount());
+        assertEquals(3, sketch.getQuantile(), 0); // middle marker of sorted values
+    }
+
+    @Test
+    public void markersFollowShiftOfValues(){
+        QuantileSketch sketch = new QuantileSketch(0.9);
+        for(int i = 0; i < 1000; ++i){
+            sketch.add(i % 100);
+        }
+        for(int i = 0; i < 100000; ++i){ // new values are ten times larger
+            sketch.add(1000 + i % 1000);
+        }
+        assertEquals(1900, sketch.getQuantile(), 19);
+    }
+
+    /** skewed (log-normal) offer arrival times, estimate stays within 0.5% of exact quantile (1% in the tail) */
+    @Test
+    public void estimateIsCloseToExactQuantile(){
+        for(int seed = 1; seed <= 3; ++seed){
+            for(double quantile : new double[]{0.5, 0.9, 0.99}){
+                Random random = new Random(seed);
+                QuantileSketch sketch = new QuantileSketch(quantile);
+                double[] values = new double[100000];
+                for(int i = 0; i < values.length; ++i){
+                    values[i] = 20 + Math.exp(random.nextGaussian() * 0.8) * 30;
+                    sketch.add(values[i]);
+                }
+                Arrays.sort(values);
+                double exact = values[(int) (quantile * (values.length - 1))];
+
+                double error = Math.abs(sketch.getQuantile() - exact) / exact;
+                assertTrue("quantile " + quantile + " of seed " + seed + " error " + error, error < (quantile < 0.99 ? 0.005 : 0.01));
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package messages;
+
+import jade.core.AID;
+import jade.lang.acl.ACLMessage;
+import jade.util.leap.Iterator;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/** round trips go through the form selected by wsd.codec (binary by default), pom runs this test again with
+ * wsd.codec=string */
+public class MessageCodecTest {
+
+    private static ACLMessage message(StatusType ontology){
+        ACLMessage msg = new ACLMessage(ACLMessage.INFORM);
+        msg.setOntology(ontology.toString());
+        return msg;
+    }
+
+    private static void assertForm(ACLMessage msg){
+        assertEquals(MessageCodec.BINARY, msg.hasByteSequenceContent());
+        assertTrue(MessageCodec.hasContent(msg));
+    }
+
+    @Test
+    public void quantityRoundTrip(){
+        ACLMessage msg = message(StatusType.SUPPLY);
+        MessageCodec.setQuantity(msg, 2.5);
+
+        assertForm(msg);
+        assertEquals(2.5, MessageCodec.quantity(msg), 0);
+    }
+
+    @Test
+    public void offerRoundTrip(){
+        ACLMessage msg = message(StatusType.OFFER);
+        MessageCodec.setOffer(msg, "dostawcaĄ", 3.25);
+
+        assertForm(msg);
+        assertEquals("dostawcaĄ", MessageCodec.provider(msg));
+        assertEquals(3.25, MessageCodec.quantity(msg), 0);
+    }
+
+    @Test
+    public void mediumRoundTrip(){
+        for(boolean returned : new boolean[]{false, true}){
+            ACLMessage msg = message(StatusType.MEDIUM_NEEDED);
+            MessageCodec.setMedium(msg, 4.5, returned, 0.75);
+
+            assertForm(msg);
+            assertEquals(4.5, MessageCodec.quantity(msg), 0);
+            assertEquals(returned, MessageCodec.isReturned(msg));
+            assertEquals(0.75, MessageCodec.price(msg), 0);
+        }
+    }
+
+    @Test
+    public void requestRoundTrip(){
+        ACLMessage msg = message(StatusType.REQUEST_MEDIUM);
+        MessageCodec.setRequest(msg, 1.5, 0.3);
+        MessageCodec.setVersion(msg, 7);
+
+        assertForm(msg);
+        assertEquals(1.5, MessageCodec.quantity(msg), 0);
+        assertEquals(0.3, MessageCodec.price(msg), 0);
+        assertEquals(7, MessageCodec.version(msg));
+        assertEquals(-1, MessageCodec.version(message(StatusType.REQUEST_MEDIUM)));
+    }
+
+    @Test
+    public void orderRoundTrip(){
+        for(boolean bid : new boolean[]{false, true}){
+            ACLMessage msg = message(StatusType.MARKET_ORDER);
+            MessageCodec.setOrder(msg, 6, bid, 0.4);
+
+            assertForm(msg);
+            assertEquals(6, MessageCodec.quantity(msg), 0);
+            assertEquals(bid, MessageCodec.isBid(msg));
+            assertEquals(0.4, MessageCodec.price(msg), 0);
+        }
+    }
+
+    @Test
+    public void summaryRoundTrip(){
+        Map<String, Double> demand = new HashMap<>();
+        demand.put("dostawca1", 2.0);
+        demand.put("dostawca2", 0.5);
+        ACLMessage msg = message(StatusType.SUMMARY);
+        MessageCodec.setSummary(msg, new Summary(12, -1.5, 30, demand));
+
+        assertForm(msg);
+        Summary summary = MessageCodec.summary(msg);
+        assertEquals(12, summary.getPeriod());
+        assertEquals(-1.5, summary.getNet(), 0);
+        assertEquals(30, summary.getHeadroom(), 0);
+        assertEquals(demand, summary.getProviderDemand());
+    }
+
+    @Test
+    public void summaryWithoutProvidersRoundTrip(){
+        ACLMessage msg = message(StatusType.SUMMARY);
+        MessageCodec.setSummary(msg, new Summary(3));
+
+        assertTrue(MessageCodec.summary(msg).getProviderDemand().isEmpty());
+    }
+
+    @Test
+    public void reportRoundTrip(){
+        ACLMessage msg = message(StatusType.DISPATCH);
+        MessageCodec.setReport(msg, new BatteryReport(5, "osiedle1", 2.5, 0.6, 100));
+
+        assertForm(msg);
+        BatteryReport report = MessageCodec.report(msg);
+        assertEquals(5, report.getPeriod());
+        assertEquals("osiedle1", report.getEstateId());
+        assertEquals(2.5, report.getNet(), 0);
+        assertEquals(0.6, report.getCharge(), 0);
+        assertEquals(100, report.getCapacity(), 0);
+    }
+
+    @Test
+    public void curveRoundTrip(){
+        for(BatteryState state : BatteryState.values()){
+            ACLMessage msg = message(StatusType.GET_PRICE);
+            MessageCodec.setCurve(msg, new PriceCurve(9, state, 0.2, 0.4, 5));
+
+            assertForm(msg);
+            PriceCurve curve = MessageCodec.curve(msg);
+            assertEquals(9, curve.getVersion());
+            assertEquals(state, curve.getState());
+            assertEquals(0.2, curve.getPriceLB(), 0);
+            assertEquals(0.4, curve.getPriceUB(), 0);
+            assertEquals(5, curve.getMaxDraw(), 0);
+        }
+    }
+
+    @Test
+    public void periodOfMessage(){
+        ACLMessage msg = message(StatusType.SUPPLY);
+        assertEquals(4, MessageCodec.period(msg, 4)); // untagged message belongs to current period
+
+        MessageCodec.setPeriod(msg, 3);
+        assertEquals(3, MessageCodec.period(msg, 4));
+    }
+
+    /** content sent by agents before binary codec (and with wsd.codec=string) */
+    @Test
+    public void decodesOldStringContent(){
+        ACLMessage msg = message(StatusType.SUPPLY);
+        msg.setContent("2.5");
+        assertEquals(2.5, MessageCodec.quantity(msg), 0);
+
+        msg = message(StatusType.OFFER);
+        msg.setContent("dostawca1;3.0");
+        assertEquals("dostawca1", MessageCodec.provider(msg));
+        assertEquals(3.0, MessageCodec.quantity(msg), 0);
+
+        msg = message(StatusType.MEDIUM_NEEDED);
+        msg.setContent("4.0;true;0.5");
+        assertEquals(4.0, MessageCodec.quantity(msg), 0);
+        assertTrue(MessageCodec.isReturned(msg));
+        assertEquals(0.5, MessageCodec.price(msg), 0);
+
+        msg = message(StatusType.REQUEST_MEDIUM);
+        msg.setContent("1.0;0.25");
+        assertEquals(1.0, MessageCodec.quantity(msg), 0);
+        assertEquals(0.25, MessageCodec.price(msg), 0);
+
+        msg = message(StatusType.MARKET_ALLOCATION);
+        msg.setContent("6.0;false;0.4");
+        assertFalse(MessageCodec.isBid(msg));
+        assertEquals(0.4, MessageCodec.price(msg), 0);
+
+        msg = message(StatusType.SUMMARY);
+        msg.setContent("7;1.5;20.0;dostawca1;2.0");
+        Summary summary = MessageCodec.summary(msg);
+        assertEquals(7, summary.getPeriod());
+        assertEquals(2.0, summary.getProviderDemand().get("dostawca1"), 0);
+
+        msg = message(StatusType.DISPATCH);
+        msg.setContent("2;osiedle1;-1.0;0.5;50.0");
+        BatteryReport report = MessageCodec.report(msg);
+        assertEquals("osiedle1", report.getEstateId());
+        assertEquals(-1.0, report.getNet(), 0);
+
+        msg = message(StatusType.GET_PRICE);
+        msg.setContent("1;STORE_MEDIUM;0.1;0.3;5.0");
+        assertEquals(BatteryState.STORE_MEDIUM, MessageCodec.curve(msg).getState());
+    }
+
+    @Test
+    public void agentIsAddressedDirectly(){
+        AID consumer = new AID("konsument1", AID.ISLOCALNAME);
+        ACLMessage msg = message(StatusType.SUPPLY);
+        MessageCodec.addReceiver(msg, consumer);
+
+        Iterator receivers = msg.getAllReceiver();
+        assertEquals(consumer, receivers.next());
+        assertFalse(receivers.hasNext());
+        assertNull(MessageCodec.actor(msg));
+
+        msg.setSender(consumer);
+        assertEquals(consumer, MessageCodec.sender(msg));
+    }
+
+    /** message to actor goes to it's bridge, reply of bridge names actor, so that bridge#actor is the same key both ways */
+    @Test
+    public void actorIsAddressedThroughBridge(){
+        AID actor = new AID("most1#konsument7", AID.ISLOCALNAME);
+        ACLMessage msg = message(StatusType.SUPPLY);
+        MessageCodec.addReceiver(msg, actor);
+
+        Iterator receivers = msg.getAllReceiver();
+        assertEquals(new AID("most1", AID.ISLOCALNAME), receivers.next());
+        assertFalse(receivers.hasNext());
+        assertEquals("konsument7", MessageCodec.actor(msg));
+
+        ACLMessage reply = message(StatusType.OFFER);
+        reply.setSender(new AID("most1", AID.ISLOCALNAME));
+        MessageCodec.setActor(reply, "konsument7");
+        assertEquals(actor, MessageCodec.sender(reply));
+    }
+}
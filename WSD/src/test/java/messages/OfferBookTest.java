@@ -0,0 +1,148 @@
+package messages;
+
+import jade.core.AID;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OfferBookTest {
+
+    private final AID a = new AID("a", AID.ISGUID), b = new AID("b", AID.ISGUID), c = new AID("c", AID.ISGUID);
+
+    @Test
+    public void findsOfferOfAgent(){
+        OfferBook book = new OfferBook();
+        book.add(a, "dostawca", 5, 0.1);
+        book.add(b, "dostawca", 7, 0.2);
+
+        assertEquals(1, book.find(b));
+        assertEquals(b, book.aid(1));
+        assertEquals(7, book.demand(1), 0);
+        assertEquals(-1, book.find(c));
+        assertEquals(12, book.totalDemand(), 0);
+    }
+
+    /** last row moves to removed one, handle of it's agent has to point to new row */
+    @Test
+    public void removeMovesLastRow(){
+        OfferBook book = new OfferBook();
+        book.add(a, null, 1, 0.1);
+        book.add(b, null, 2, 0.2);
+        book.add(c, null, 3, 0.3);
+
+        book.remove(0);
+
+        assertEquals(2, book.size());
+        assertEquals(0, book.find(c));
+        assertEquals(3, book.demand(book.find(c)), 0);
+        assertEquals(1, book.find(b));
+        assertEquals(-1, book.find(a));
+    }
+
+    /** rows of the same agent share handle - removing indexed row points handle to other row of agent */
+    @Test
+    public void removeKeepsOtherRowsOfAgent(){
+        OfferBook book = new OfferBook();
+        book.add(a, null, 1, 0.1);
+        book.add(b, null, 2, 0.2);
+        book.add(a, null, 3, 0.3);
+
+        book.remove(0); // indexed row of a, a's other row is last and moves to 0
+
+        assertEquals(2, book.size());
+        assertEquals(0, book.find(a));
+        assertEquals(3, book.demand(book.find(a)), 0);
+        assertEquals(1, book.find(b));
+
+        book.add(b, null, 4, 0.4);
+        book.remove(1); // indexed row of b, b's other row (last) moves to 1
+
+        assertEquals(1, book.find(b));
+        assertEquals(4, book.demand(book.find(b)), 0);
+
+        book.remove(a);
+        assertEquals(-1, book.find(a));
+        assertEquals(1, book.size());
+        assertEquals(0, book.find(b));
+    }
+
+    @Test
+    public void clearKeepsHandles(){
+        OfferBook book = new OfferBook();
+        book.add(a, null, 1, 0.1);
+        book.add(b, null, 2, 0.2);
+        book.clear();
+
+        assertTrue(book.isEmpty());
+        assertEquals(-1, book.find(a));
+
+        book.add(b, null, 3, 0.3);
+        assertEquals(0, book.find(b));
+        assertEquals(-1, book.find(a));
+    }
+
+    @Test
+    public void rowsSortedByPrice(){
+        OfferBook book = new OfferBook();
+        Random random = new Random(1);
+        for(int i = 0; i < 1000; ++i){
+            book.add(new AID("budynek" + i, AID.ISGUID), null, 1, random.nextDouble());
+        }
+
+        int[] byPrice = book.byPrice();
+        for(int i = 1; i < book.size(); ++i){
+            assertTrue(book.price(byPrice[i - 1]) <= book.price(byPrice[i]));
+        }
+    }
+
+    /** random adds and removes compared with list of offers */
+    @Test
+    public void matchesListOfOffers(){
+        Random random = new Random(3);
+        OfferBook book = new OfferBook();
+        List<Offer> offers = new ArrayList<>();
+        AID[] agents = new AID[40];
+        for(int i = 0; i < agents.length; ++i){
+            agents[i] = new AID("agent" + i, AID.ISGUID);
+        }
+
+        for(int step = 0; step < 100000; ++step){
+            AID agent = agents[random.nextInt(agents.length)];
+            int operation = random.nextInt(10);
+            if(operation < 5){
+                double price = random.nextDouble();
+                book.add(agent, null, price * 2, price);
+                offers.add(new Offer(agent, null, price * 2, price));
+            } else if(operation < 8){
+                int row = book.find(agent);
+                assertEquals(offers.stream().anyMatch(o -> o.getAid().equals(agent)), row >= 0);
+                if(row >= 0){
+                    assertEquals(agent, book.aid(row));
+                    double price = book.price(row);
+                    book.remove(row);
+                    boolean removed = false;
+                    for(Iterator<Offer> o = offers.iterator(); o.hasNext() && !removed; ){
+                        Offer offer = o.next();
+                        if(offer.getAid().equals(agent) && offer.getPrice() == price){
+                            o.remove();
+                            removed = true;
+                        }
+                    }
+                    assertTrue(removed);
+                }
+            } else if(random.nextInt(50) == 0){
+                book.clear();
+                offers.clear();
+            } else {
+                book.remove(agent);
+                offers.removeIf(o -> o.getAid().equals(agent));
+            }
+            assertEquals(offers.size(), book.size());
+        }
+    }
+}
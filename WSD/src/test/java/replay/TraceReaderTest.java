@@ -0,0 +1,86 @@
+package replay;
+
+import journal.Event;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class TraceReaderTest {
+
+    private final TraceReader reader = new TraceReader(new BufferedReader(new StringReader("")));
+
+    private static void assertEvent(TraceEvent e, String agent, Event event, String peer, String ref, double value, double value2){
+        assertNotNull(e);
+        assertEquals(agent, e.getAgent());
+        assertEquals(event, e.getEvent());
+        assertEquals(peer, e.getPeer());
+        assertEquals(ref, e.getRef());
+        assertEquals(value, e.getValue(), 0);
+        assertEquals(value2, e.getValue2(), 0);
+    }
+
+    /** lines of daneTestowe logs (log4j.properties layout) */
+    @Test
+    public void parsesRecordedLines(){
+        assertEvent(reader.parse("2018-12-05 20:54:15.332 INFO  budynek3: received offer from konsument6 - dostawca1;16.0"),
+                "budynek3", Event.OFFER_RECEIVED, "konsument6", "dostawca1", 16.0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:07.391 INFO  budynek3: accepting consumer - konsument6"),
+                "budynek3", Event.CONSUMER_ACCEPTED, "konsument6", null, 0, 0);
+        assertEvent(reader.parse("2018-12-05 20:55:14.975 INFO  budynek1: canceling consumer - konsument2"),
+                "budynek1", Event.CONSUMER_CANCELED, "konsument2", null, 0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:06.052 INFO  budynek1: registering battery - akumulator1"),
+                "budynek1", Event.BATTERY_REGISTERED, "akumulator1", null, 0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:13.985 INFO  budynek1: current battery capacity - 0.6628887842613324 (SEND_MEDIUM)"),
+                "budynek1", Event.BATTERY_CAPACITY, null, "SEND_MEDIUM", 0.6628887842613324, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:15.422 INFO  budynek3: reserving medium for budynek1 - 8.0"),
+                "budynek3", Event.MEDIUM_RESERVED, "budynek1", null, 8.0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:15.422 INFO  budynek1: budynek3 send medium - 8.0, price - 0.3054717065266573"),
+                "budynek1", Event.MEDIUM_OFFERED, "budynek3", null, 8.0, 0.3054717065266573);
+        assertEvent(reader.parse("2018-12-05 20:54:15.442 INFO  budynek3: budynek1 returned medium - 4.5"),
+                "budynek3", Event.MEDIUM_RETURNED, "budynek1", null, 4.5, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:20.443 INFO  budynek3: medium sent to consumers"),
+                "budynek3", Event.MEDIUM_SENT, null, null, 0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:20.443 INFO  konsument6: received supply, current demand - 0.0"),
+                "konsument6", Event.SUPPLY_RECEIVED, null, null, 0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:20.462 INFO  akumulator1: charging up - 0.02"),
+                "akumulator1", Event.CHARGING, null, null, 0.02, 0);
+        assertEvent(reader.parse("2019-01-08 17:20:14.388 INFO  konsument1: need more medium for car charging - 10.0"),
+                "konsument1", Event.CHARGING_DEMAND, null, null, 10.0, 0);
+        assertEvent(reader.parse("2018-12-05 20:54:20.444 INFO  konsument6: need 0.0 medium from dostawca1"),
+                "konsument6", Event.PROVIDER_NEEDED, null, "dostawca1", 0, 0);
+    }
+
+    /** text of each event replay reads, as agents log it (Event.format), gives back it's fields */
+    @Test
+    public void parsesFormattedEvents(){
+        for(Event event : TraceReader.events()){
+            String peer = "most1#konsument7", ref = event == Event.BATTERY_CAPACITY ? "REQUEST_MEDIUM" : "dostawca2";
+            double value = -2.5E-5, value2 = 0.3054717065266573;
+            String message = event.format(peer, ref, value, value2);
+
+            TraceEvent e = reader.parse("2019-01-08 17:20:14.388 " + (event.isWarning() ? "WARN " : "INFO ") + " budynek2: " + message);
+            assertEvent(e, "budynek2", event, message.contains(peer) ? peer : null, message.contains(ref) ? ref : null,
+                    message.contains(String.valueOf(value)) ? value : 0, message.contains(String.valueOf(value2)) ? value2 : 0);
+        }
+    }
+
+    @Test
+    public void timeOfLineHasMilliseconds(){
+        TraceEvent first = reader.parse("2018-12-05 20:54:15.332 INFO  budynek3: medium sent to consumers");
+        TraceEvent second = reader.parse("2018-12-05 20:54:16.005 INFO  budynek3: medium sent to consumers");
+        assertEquals(673, second.getTime() - first.getTime());
+    }
+
+    /** lines of JADE, broken lines and messages of events replay doesn't need */
+    @Test
+    public void skipsOtherLines(){
+        assertNull(reader.parse("gru 05, 2018 8:54:04 PM jade.core.Runtime beginContainer"));
+        assertNull(reader.parse("2018-12-05 20:54:15.332 INFO  budynek3"));
+        assertNull(reader.parse("2018-12-05 20:54:15.332 INFO  budynek3: preparing supply plan"));
+        assertNull(reader.parse("2018-12-05 20:54:15.332 INFO  akumulator1: reserving medium for my building"));
+        assertNull(reader.parse("2018-12-05 20:54:15.3"));
+    }
+}
@@ -0,0 +1,118 @@
+package settlement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SettlementJournalTest {
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("settlement");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for(Path f : files){
+                Files.delete(f);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void recordsAreReadInOrder() throws IOException {
+        SettlementJournal journal = new SettlementJournal(directory, 4);
+        int building = journal.name("budynek1"), consumer = journal.name("konsument1");
+        for(int p = 1; p <= 10; ++p){
+            journal.append(Transfer.SUPPLY, p, building, consumer, p, 0.5);
+        }
+        journal.close();
+
+        long[] expected = {1};
+        long transfers = SettlementReader.scan(directory, (period, kind, from, to, quantity, price) -> {
+            assertEquals(expected[0]++, period);
+            assertEquals(Transfer.SUPPLY, kind);
+            assertEquals(building, from);
+            assertEquals(consumer, to);
+            assertEquals(period, quantity, 0);
+            assertEquals(0.5, price, 0);
+        });
+        assertEquals(10, transfers);
+        assertEquals(3, segments()); // 4 + 4 + 2 records
+    }
+
+    /** writers race for slots behind end of segment, one of them creates next segment and no record is lost */
+    @Test
+    public void concurrentWritersDontLoseRecords() throws Exception {
+        SettlementJournal journal = new SettlementJournal(directory, 10000);
+        int threads = 8, records = 250000;
+        int[] ids = new int[100];
+        for(int i = 0; i < ids.length; ++i){
+            ids[i] = journal.name("agent-" + i);
+        }
+
+        Thread[] writers = new Thread[threads];
+        for(int t = 0; t < threads; ++t){
+            int writer = t;
+            writers[t] = new Thread(() -> {
+                for(int i = 0; i < records; ++i){
+                    journal.append(Transfer.values()[i % Transfer.values().length], i, ids[writer], ids[i % ids.length], 1, 0.5);
+                }
+            });
+            writers[t].start();
+        }
+        for(Thread w : writers){
+            w.join();
+        }
+        journal.close();
+
+        double[] total = new double[1];
+        long transfers = SettlementReader.scan(directory, (period, kind, from, to, quantity, price) -> total[0] += quantity);
+        assertEquals(threads * records, transfers);
+        assertEquals(threads * records, total[0], 0);
+        assertEquals(0, journal.getLost());
+        assertEquals(threads * records / 10000, segments());
+    }
+
+    /** new run appends new segment, names keep their ids */
+    @Test
+    public void restartKeepsSegmentsAndNames() throws IOException {
+        SettlementJournal first = new SettlementJournal(directory, 100);
+        int building = first.name("budynek1");
+        first.append(Transfer.CHARGE, 1, building, first.name("akumulator1"), 3, 0);
+        first.close();
+
+        SettlementJournal second = new SettlementJournal(directory, 100);
+        assertEquals(building, second.name("budynek1"));
+        second.append(Transfer.SUPPLY, 2, building, second.name("konsument1"), 2, 0);
+        second.close();
+
+        assertEquals(2, segments());
+        assertEquals(2, SettlementReader.scan(directory, (period, kind, from, to, quantity, price) -> {}));
+        Map<Integer, String> names = SettlementReader.names(directory);
+        assertEquals(3, names.size());
+        assertEquals("budynek1", names.get(building));
+    }
+
+    private int segments() throws IOException {
+        int segments = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SettlementJournal.SUFFIX)) {
+            for(Path ignored : files){
+                ++segments;
+            }
+        }
+        return segments;
+    }
+}